@@ -0,0 +1,105 @@
+/*
+Synthetic templates and magnitude traces for the benchmarks.
+
+Templates of any length and number are built from smooth random shapes, and the trace is noise
+with template shaped motions inserted, so that windows regularly pass the correlation threshold
+and the range check, adaptation and window clearing are part of the measured cost.
+
+ */
+
+package com.example.detectionbenchmarks;
+
+import com.example.detectionengine.DetectorConfig;
+
+import java.util.Random;
+
+final class BenchmarkData {
+
+    static final int TRACE_SAMPLES = 4096;
+    static final long SAMPLE_PERIOD_NANOS = 20_000_000L;
+
+    private BenchmarkData() {
+    }
+
+    static DetectorConfig config(int templatePoints, int templateCount) {
+        Random random = new Random(templatePoints * 31L + templateCount);
+        double[][] templates = new double[templateCount][templatePoints];
+        String[] names = new String[templateCount];
+        for (int t = 0; t < templateCount; t++) {
+            double frequency = 1 + random.nextInt(3);
+            double phase = random.nextDouble() * 2 * Math.PI;
+            for (int i = 0; i < templatePoints; i++) {
+                templates[t][i] = 0.1 * Math.sin(2 * Math.PI * frequency * i / templatePoints + phase)
+                        + 0.01 * random.nextGaussian();
+            }
+            names[t] = "Template " + t;
+        }
+        return new DetectorConfig(names, templates, templatePoints, 0.7,
+                DetectorConfig.DerivativeMode.SCALED_BY_DT);
+    }
+
+    //the config with random per-axis templates for the given channels
+    static DetectorConfig channelConfig(int templatePoints, int templateCount, DetectorConfig.Channels channels) {
+        Random random = new Random(templatePoints * 37L + templateCount);
+        double[][][] axisTemplates = new double[templateCount][channels.getAxes()][templatePoints];
+        for (int t = 0; t < templateCount; t++) {
+            for (int a = 0; a < channels.getAxes(); a++) {
+                double frequency = 1 + random.nextInt(3);
+                double phase = random.nextDouble() * 2 * Math.PI;
+                for (int i = 0; i < templatePoints; i++) {
+                    axisTemplates[t][a][i] = 0.1 * Math.sin(2 * Math.PI * frequency * i / templatePoints + phase);
+                }
+            }
+        }
+        return config(templatePoints, templateCount).setChannels(channels, axisTemplates);
+    }
+
+    //axis columns of a device moved around at random, accelerometer with gravity on z
+    static float[][] channelSamples(int axes) {
+        Random random = new Random(19);
+        float[][] samples = new float[axes][TRACE_SAMPLES];
+        for (int a = 0; a < axes; a++) {
+            double frequency = 0.5 + random.nextDouble() * 2;
+            for (int i = 0; i < TRACE_SAMPLES; i++) {
+                double t = i * SAMPLE_PERIOD_NANOS / 1e9;
+                samples[a][i] = (float) (Math.sin(2 * Math.PI * frequency * t) + 0.05 * random.nextGaussian()
+                        + (a == 2 ? 9.8 : 0));
+            }
+        }
+        return samples;
+    }
+
+    static float[] magnitudes(DetectorConfig config) {
+        Random random = new Random(17);
+        float[] magnitudes = new float[TRACE_SAMPLES];
+        double dt = SAMPLE_PERIOD_NANOS / 1e9;
+        float magnitude = 0f;
+        int template = 0;
+        int position = -1;
+        for (int i = 0; i < TRACE_SAMPLES; i++) {
+            if (position < 0 && random.nextInt(2 * config.getTemplatePoints()) == 0) {
+                template = random.nextInt(config.getTemplateCount());
+                position = 0;
+            }
+            float delta = (float) (random.nextGaussian() * 0.05);
+            if (position >= 0) {
+                delta = delta + (float) (10 * config.getTemplate(template)[position] / dt);
+                position = position + 1;
+                if (position == config.getTemplatePoints()) {
+                    position = -1;
+                }
+            }
+            magnitude = (magnitude + delta) * 0.98f;
+            magnitudes[i] = magnitude;
+        }
+        return magnitudes;
+    }
+
+    static long[] timestamps(long start) {
+        long[] timestamps = new long[TRACE_SAMPLES];
+        for (int i = 0; i < TRACE_SAMPLES; i++) {
+            timestamps[i] = start + i * SAMPLE_PERIOD_NANOS;
+        }
+        return timestamps;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+Cost per sample of running step, shake and gesture detection together: three DetectionEngines
+each with its own front end against one FanOutPipeline sharing the magnitude and the front ends.
+One operation is one sample.
+
+ */
+
+package com.example.detectionbenchmarks;
+
+import com.example.detectionengine.DetectionEngine;
+import com.example.detectionengine.DetectorConfig;
+import com.example.detectionengine.FanOutPipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanOutBenchmark {
+
+    private float[] xyz;
+    private long[] timestamps;
+    private long time;
+    private DetectionEngine[] engines;
+    private FanOutPipeline pipeline;
+
+    @Setup
+    public void setUp() {
+        float[] magnitudes = BenchmarkData.magnitudes(DetectorConfig.step());
+        timestamps = BenchmarkData.timestamps(0L);
+        //the magnitude along z on top of gravity
+        xyz = new float[3 * BenchmarkData.TRACE_SAMPLES];
+        for (int i = 0; i < BenchmarkData.TRACE_SAMPLES; i++) {
+            xyz[3 * i + 2] = magnitudes[i] + 9.8f;
+        }
+        DetectorConfig[] configs = {DetectorConfig.step(), DetectorConfig.shake(), DetectorConfig.gesture()};
+        engines  = new DetectionEngine[configs.length];
+        pipeline = new FanOutPipeline();
+        for (int d = 0; d < configs.length; d++) {
+            engines[d] = new DetectionEngine(configs[d]);
+            engines[d].setDetectorThreshold(0.05);
+            DetectionEngine shared = new DetectionEngine(configs[d]);
+            shared.setDetectorThreshold(0.05);
+            pipeline.addDetector(configs[d].getTemplateName(0), shared);
+        }
+    }
+
+    private long[] nextTimestamps() {
+        for (int i = 0; i < BenchmarkData.TRACE_SAMPLES; i++) {
+            timestamps[i] = time + i * BenchmarkData.SAMPLE_PERIOD_NANOS;
+        }
+        time = time + BenchmarkData.TRACE_SAMPLES * BenchmarkData.SAMPLE_PERIOD_NANOS;
+        return timestamps;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.TRACE_SAMPLES)
+    public int separateEngines() {
+        long[] batchTimestamps = nextTimestamps();
+        int detections = 0;
+        for (DetectionEngine engine : engines) {
+            detections = detections + engine.processBatch(xyz, batchTimestamps, BenchmarkData.TRACE_SAMPLES);
+        }
+        return detections;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.TRACE_SAMPLES)
+    public int fanOutPipeline() {
+        return pipeline.processBatch(xyz, nextTimestamps(), BenchmarkData.TRACE_SAMPLES, null);
+    }
+}
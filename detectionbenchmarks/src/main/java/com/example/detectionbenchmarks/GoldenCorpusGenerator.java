@@ -0,0 +1,141 @@
+/*
+Writes the golden corpus of detectionengine: step, shake and gesture traces with the detections
+the original MainActivity logic (LegacyPipeline) makes on them.
+
+    gradle goldenCorpus            writes to ../detectionengine/src/test/resources/golden
+
+For every entry of the corpus there is a <name>.csv trace in the format the apps write, a
+<name>.expected file with one "sampleIndex,event_time,templateIndex" line per detection (the
+output format of TraceReplay) and a line "<name>.csv <detector> <detectorThreshold>" in
+corpus.txt. GoldenCorpusTest replays every trace through the engine and requires exactly the
+expected detections, so every optimization of the engine can be checked against the original logic.
+
+The traces are generated from fixed seeds: motions shaped like the templates, performed at
+varying tempo and strength, between resting phases, with sensor noise and irregular sample
+intervals (including a few repeated timestamps, as delivered from the sensor FIFO).
+
+ */
+
+package com.example.detectionbenchmarks;
+
+import com.example.detectionengine.DetectorConfig;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class GoldenCorpusGenerator {
+
+    private static final String[][] CORPUS = {
+            //name, detector, detector threshold, seed
+            {"step_walk", "step", "0.05", "1"},
+            {"step_noisy", "step", "0.15", "2"},
+            {"shake", "shake", "5.0", "3"},
+            {"gesture", "gesture", "0.05", "5"},
+    };
+
+    private static final int SAMPLES = 3000;
+
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : "golden");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        StringBuilder manifest = new StringBuilder("# trace detector detectorThreshold\n");
+        for (String[] entry : CORPUS) {
+            DetectorConfig config = config(entry[1]);
+            double detectorThreshold = Double.parseDouble(entry[2]);
+            double noise = entry[0].endsWith("noisy") ? 0.6 : 0.2;
+            Random random = new Random(Long.parseLong(entry[3]));
+            float[] magnitudes = new float[SAMPLES];
+            long[] timestamps = new long[SAMPLES];
+            generate(config, noise, random, magnitudes, timestamps);
+
+            StringBuilder trace = new StringBuilder();
+            StringBuilder expected = new StringBuilder();
+            LegacyPipeline legacy = new LegacyPipeline(config, detectorThreshold);
+            for (int i = 0; i < SAMPLES; i++) {
+                trace.append(String.valueOf(magnitudes[i])).append(',').append(timestamps[i]).append('\n');
+                int detected = legacy.process(magnitudes[i], timestamps[i]);
+                if (detected >= 0) {
+                    expected.append(i).append(',').append(timestamps[i]).append(',').append(detected).append('\n');
+                }
+            }
+            write(new File(directory, entry[0] + ".csv"), trace);
+            write(new File(directory, entry[0] + ".expected"), expected);
+            manifest.append(entry[0]).append(".csv ").append(entry[1]).append(' ').append(entry[2]).append('\n');
+            System.out.println(entry[0] + ": " + legacy.getDetectionCount() + " detections");
+        }
+        write(new File(directory, "corpus.txt"), manifest);
+    }
+
+    private static DetectorConfig config(String detector) {
+        switch (detector) {
+            case "step":
+                return DetectorConfig.step();
+            case "shake":
+                return DetectorConfig.shake();
+            default:
+                return DetectorConfig.gesture();
+        }
+    }
+
+    //resting phases and template shaped motions at 0.8x to 1.25x the template tempo
+    private static void generate(DetectorConfig config, double noise, Random random,
+                                 float[] magnitudes, long[] timestamps) {
+        boolean jerk = config.getDerivativeMode() == DetectorConfig.DerivativeMode.DIVIDED_BY_DT;
+        long time = 1_000_000_000L + random.nextInt(1_000_000_000);
+        float magnitude = 0f;
+        double[] motion = null;
+        int position = 0;
+        double gain = 0;
+        double dt = 0.02;
+        for (int i = 0; i < SAMPLES; i++) {
+            //about 20 ms between samples, sometimes the same timestamp twice
+            if (random.nextInt(500) != 0) {
+                time = time + 14_000_000 + random.nextInt(12_000_000);
+            }
+            if (motion == null && random.nextInt(3 * config.getTemplatePoints()) == 0) {
+                double[] template = config.getTemplate(random.nextInt(config.getTemplateCount()));
+                double tempo = 0.8 + 0.45 * random.nextDouble();
+                motion = stretch(template, config.getTemplatePoints(), tempo);
+                position = 0;
+                gain = 0.5 + random.nextDouble();
+            }
+            float delta = (float) (random.nextGaussian() * noise * dt);
+            if (motion != null) {
+                delta = delta + (float) (jerk ? gain * 0.5 * motion[position] * dt : gain * 20 * motion[position] / dt);
+                position = position + 1;
+                if (position == motion.length) {
+                    motion = null;
+                }
+            }
+            magnitude = (magnitude + delta) * 0.98f;
+            magnitudes[i] = magnitude;
+            timestamps[i] = time;
+        }
+    }
+
+    //the first points of the template resampled to round(points / tempo) points
+    private static double[] stretch(double[] template, int points, double tempo) {
+        int length = Math.max(2, (int) Math.round(points / tempo));
+        double[] stretched = new double[length];
+        for (int i = 0; i < length; i++) {
+            double position = i * (points - 1) / (double) (length - 1);
+            int index = Math.min((int) position, points - 2);
+            double fraction = position - index;
+            stretched[i] = template[index] * (1 - fraction) + template[index + 1] * fraction;
+        }
+        return stretched;
+    }
+
+    private static void write(File file, CharSequence content) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.append(content);
+        }
+    }
+}
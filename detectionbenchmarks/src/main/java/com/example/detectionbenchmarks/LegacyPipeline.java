@@ -0,0 +1,219 @@
+/*
+The detection logic of the original MainActivity.onSensorChanged(), without the Android parts.
+
+Boxed ArrayDeque windows, the window copied into a fresh Double[] for every template,
+correlationCoefficient() rescanning the window, rangeSpeed() with Collections.min/max and the
+in-place template adaptation are kept as they were, so the benchmarks have the cost of the
+original code as a baseline. The gesture app logic (best of several templates) is generalized to
+any number of templates.
+
+ */
+
+package com.example.detectionbenchmarks;
+
+import com.example.detectionengine.DetectorConfig;
+import com.example.detectionengine.FilterChain;
+import com.example.detectionengine.MovingAverageFilter;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class LegacyPipeline {
+
+    private final DetectorConfig config;
+    private final Double[][] templates;
+    private final double templateCorrelationThreshold;
+    private double detectorThreshold;
+    private int countSensorData = 0;
+    private int countDetections = 0;
+
+    //store information about incoming sensor data
+    int numElements;
+    int templatePoints;
+    ArrayDeque accDeque;
+    ArrayDeque timeDeque;
+    ArrayDeque speedDeque;
+    ArrayDeque speedTemplateDeque;
+    double currSpeed;
+
+    @SuppressWarnings("unchecked")
+    public LegacyPipeline(DetectorConfig config, double detectorThreshold) {
+        this.config                       = config;
+        this.detectorThreshold            = detectorThreshold;
+        this.templateCorrelationThreshold = config.getCorrelationThreshold();
+        this.numElements                  = smoothingPoints(config);
+        this.templatePoints               = config.getTemplatePoints();
+        this.templates                    = new Double[config.getTemplateCount()][];
+        for (int t = 0; t < templates.length; t++) {
+            double[] template = config.getTemplate(t);
+            templates[t] = new Double[template.length];
+            for (int i = 0; i < template.length; i++) {
+                templates[t][i] = template[i];
+            }
+        }
+
+        accDeque           = new ArrayDeque<Double>(numElements);
+        timeDeque          = new ArrayDeque<Long>(numElements);
+        speedDeque         = new ArrayDeque<Double>(numElements);
+        speedTemplateDeque = new ArrayDeque<Double>(templatePoints);
+        for (int i = 0; i < numElements; i++) {
+            accDeque.add(0.0);
+            timeDeque.add(0L);
+            speedDeque.add(0.0);
+        }
+        for (int i = 0; i < templatePoints; i++) {
+            speedTemplateDeque.add(0.0);
+        }
+    }
+
+    //length of the moving average, the only smoothing of the original apps
+    private static int smoothingPoints(DetectorConfig config) {
+        FilterChain filters = config.newFilterChain();
+        if (filters.size() != 1 || !(filters.getStage(0) instanceof MovingAverageFilter)) {
+            throw new IllegalArgumentException("The original apps smooth with one moving average");
+        }
+        return ((MovingAverageFilter) filters.getStage(0)).size();
+    }
+
+    //adapted from https://www.geeksforgeeks.org/program-find-correlation-coefficient/
+    static double correlationCoefficient(Double X[], Double Y[])
+    {
+        double sum_X = 0, sum_Y = 0, sum_XY = 0;
+        double squareSum_X = 0, squareSum_Y = 0;
+        int n = X.length;
+
+        for (int i = 0; i < n; i++)
+        {
+            sum_X = sum_X + X[i];
+            sum_Y = sum_Y + Y[i];
+            sum_XY = sum_XY + X[i] * Y[i];
+            squareSum_X = squareSum_X + X[i] * X[i];
+            squareSum_Y = squareSum_Y + Y[i] * Y[i];
+        }
+
+        double corr = (double)(n * sum_XY - sum_X * sum_Y)
+                / Math.sqrt((n * squareSum_X - sum_X * sum_X)
+                * (n * squareSum_Y - sum_Y * sum_Y));
+
+        return corr;
+    }
+
+    Double[] speedTemplate() {
+        Object[] speedTemplateObj = speedTemplateDeque.toArray();
+        Double[] speedTemplate     = new Double[speedTemplateDeque.size()];
+        for(int i=0;i<speedTemplateDeque.size();i++){
+            speedTemplate[i] = (Double) (speedTemplateObj[i]);
+        }
+        return speedTemplate;
+    }
+
+    //function to compute correlation
+    public double computeCorrelation(int templateIndex) {
+        Double[] speedTemplate = speedTemplate();
+        return correlationCoefficient(speedTemplate, templates[templateIndex]);
+    }
+
+    public double rangeSpeed() {
+        Double[] speedTemplate = speedTemplate();
+        double minSpeed = Collections.min(Arrays.asList(speedTemplate));
+        double maxSpeed = Collections.max(Arrays.asList(speedTemplate));
+        return maxSpeed - minSpeed;
+    }
+
+    //derivative and moving average, returns speedSmooth
+    @SuppressWarnings("unchecked")
+    public double smoothSpeed(float acc_mag_abs, long event_time) {
+        countSensorData = countSensorData + 1;
+        if(countSensorData==1){
+            currSpeed = 0.0;
+        }
+        else {
+            double pastAcc = (double) accDeque.getLast();
+            long pastTime = (long) timeDeque.getLast();
+            double timeFactor = ((event_time - pastTime) / (Math.pow(10, 9)));
+            if (config.getDerivativeMode() == DetectorConfig.DerivativeMode.SCALED_BY_DT) {
+                currSpeed = (acc_mag_abs - pastAcc) * timeFactor;
+            }
+            else {
+                currSpeed = (acc_mag_abs - pastAcc) / timeFactor;
+            }
+        }
+
+        accDeque.add((double)(acc_mag_abs));
+        timeDeque.add(event_time);
+        speedDeque.add(currSpeed);
+        accDeque.removeFirst();
+        timeDeque.removeFirst();
+        speedDeque.removeFirst();
+
+        Object[] speedObj = speedDeque.toArray();
+        double speedSum = 0;
+        for(int i=0;i<numElements;i++){
+            double speed = (double) speedObj[i];
+            speedSum = speedSum + speed;
+        }
+        return speedSum/numElements;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void addToWindow(double speedSmooth) {
+        speedTemplateDeque.add(speedSmooth);
+        speedTemplateDeque.removeFirst();
+    }
+
+    //adds the window to a template and clears the window
+    @SuppressWarnings("unchecked")
+    public void adaptTemplate(int templateIndex) {
+        Double[] speedTemplate = speedTemplate();
+        for (int i=0;i<templatePoints;i++) {
+            templates[templateIndex][i] = templates[templateIndex][i] + 0.2*speedTemplate[i];
+        }
+        for(int i=0;i<templatePoints;i++){
+            speedTemplateDeque.add(0.0);
+            speedTemplateDeque.removeFirst();
+        }
+    }
+
+    //one sample through the whole pipeline, returns the detected template or -1
+    @SuppressWarnings("unchecked")
+    public int process(float acc_mag_abs, long event_time) {
+        double speedSmooth = smoothSpeed(acc_mag_abs, event_time);
+        addToWindow(speedSmooth);
+
+        Double[] allCorrelation = new Double[templates.length];
+        for (int t = 0; t < templates.length; t++) {
+            allCorrelation[t] = computeCorrelation(t);
+        }
+        double maxCorrelation = Collections.max(Arrays.asList(allCorrelation));
+
+        int detected = -1;
+        if(maxCorrelation > templateCorrelationThreshold){
+            double currentSpeedRange = rangeSpeed();
+            if(currentSpeedRange < detectorThreshold) {
+                detected = -1;
+            }
+            else {
+                detected = templates.length - 1;
+                for (int t = 0; t < templates.length - 1 && detected == templates.length - 1; t++) {
+                    boolean best = true;
+                    for (int o = 0; o < templates.length; o++) {
+                        if (o != t && !(allCorrelation[t] > allCorrelation[o])) {
+                            best = false;
+                        }
+                    }
+                    if (best) {
+                        detected = t;
+                    }
+                }
+                countDetections = countDetections + 1;
+                adaptTemplate(detected);
+            }
+        }
+        return detected;
+    }
+
+    public int getDetectionCount() {
+        return countDetections;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+Cost per sample of the whole detection pipeline: the original onSensorChanged() logic against
+the DetectionEngine and the FFT based BatchDetector, for different template lengths and numbers
+of templates. One operation is one sample.
+
+ */
+
+package com.example.detectionbenchmarks;
+
+import com.example.detectionengine.BatchDetector;
+import com.example.detectionengine.DetectionEngine;
+import com.example.detectionengine.DetectorConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+
+    @Param({"10", "14", "35", "128"})
+    int templatePoints;
+
+    @Param({"1", "3", "10"})
+    int templateCount;
+
+    private DetectorConfig config;
+    private float[] magnitudes;
+    private long[] timestamps;
+    private long time;
+    private LegacyPipeline legacy;
+    private DetectionEngine engine;
+    private DetectionEngine dtwEngine;
+    private DetectionEngine multiScaleEngine;
+    private DetectionEngine multiChannelEngine;
+    private float[][] channelSamples;
+    private long[] channelTimestamps;
+
+    @Setup
+    public void setUp() {
+        config     = BenchmarkData.config(templatePoints, templateCount);
+        magnitudes = BenchmarkData.magnitudes(config);
+        timestamps = BenchmarkData.timestamps(0L);
+        legacy     = new LegacyPipeline(config, 0.05);
+        engine     = new DetectionEngine(config);
+        engine.setDetectorThreshold(0.05);
+        dtwEngine  = new DetectionEngine(BenchmarkData.config(templatePoints, templateCount)
+                .setMatchingMode(DetectorConfig.MatchingMode.DTW));
+        dtwEngine.setDetectorThreshold(0.05);
+        multiScaleEngine = new DetectionEngine(BenchmarkData.config(templatePoints, templateCount)
+                .setTimeScales(0.7, 0.85, 1.0, 1.2, 1.4));
+        multiScaleEngine.setDetectorThreshold(0.05);
+        multiChannelEngine = new DetectionEngine(BenchmarkData.channelConfig(templatePoints, templateCount,
+                DetectorConfig.Channels.ACCELEROMETER_GYROSCOPE));
+        multiChannelEngine.setDetectorThreshold(0.05);
+        channelSamples    = BenchmarkData.channelSamples(DetectorConfig.Channels.ACCELEROMETER_GYROSCOPE.getAxes());
+        channelTimestamps = new long[BenchmarkData.TRACE_SAMPLES];
+    }
+
+    //the trace is replayed with increasing timestamps, so the pipelines see one long stream
+    private long nextTraceStart() {
+        long start = time;
+        time = time + BenchmarkData.TRACE_SAMPLES * BenchmarkData.SAMPLE_PERIOD_NANOS;
+        return start;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.TRACE_SAMPLES)
+    public int legacyPipeline() {
+        long start = nextTraceStart();
+        int detections = 0;
+        for (int i = 0; i < BenchmarkData.TRACE_SAMPLES; i++) {
+            if (legacy.process(magnitudes[i], start + timestamps[i]) >= 0) {
+                detections++;
+            }
+        }
+        return detections;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.TRACE_SAMPLES)
+    public int detectionEngine() {
+        long start = nextTraceStart();
+        int detections = 0;
+        for (int i = 0; i < BenchmarkData.TRACE_SAMPLES; i++) {
+            if (engine.processMagnitude(magnitudes[i], start + timestamps[i]) != DetectionEngine.NO_DETECTION) {
+                detections++;
+            }
+        }
+        return detections;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.TRACE_SAMPLES)
+    public int dtwDetectionEngine() {
+        long start = nextTraceStart();
+        int detections = 0;
+        for (int i = 0; i < BenchmarkData.TRACE_SAMPLES; i++) {
+            if (dtwEngine.processMagnitude(magnitudes[i], start + timestamps[i]) != DetectionEngine.NO_DETECTION) {
+                detections++;
+            }
+        }
+        return detections;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.TRACE_SAMPLES)
+    public int multiScaleDetectionEngine() {
+        long start = nextTraceStart();
+        int detections = 0;
+        for (int i = 0; i < BenchmarkData.TRACE_SAMPLES; i++) {
+            if (multiScaleEngine.processMagnitude(magnitudes[i], start + timestamps[i]) != DetectionEngine.NO_DETECTION) {
+                detections++;
+            }
+        }
+        return detections;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.TRACE_SAMPLES)
+    //accelerometer and gyroscope axes besides the magnitude
+    public int multiChannelDetectionEngine() {
+        long start = nextTraceStart();
+        for (int i = 0; i < BenchmarkData.TRACE_SAMPLES; i++) {
+            channelTimestamps[i] = start + timestamps[i];
+        }
+        return multiChannelEngine.processChannels(channelSamples, channelTimestamps, BenchmarkData.TRACE_SAMPLES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.TRACE_SAMPLES)
+    //whole trace rescored by a fresh detector per invocation
+    public int batchDetector() {
+        return new BatchDetector(config).detect(magnitudes, timestamps, BenchmarkData.TRACE_SAMPLES, 0.05).size();
+    }
+}
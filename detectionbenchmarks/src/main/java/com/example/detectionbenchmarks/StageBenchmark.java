@@ -0,0 +1,199 @@
+/*
+Cost per sample of the single pipeline stages, original implementation against replacement:
+
+    smoothing:   derivative and 3 point moving average (boxed deques / SignalFrontEnd)
+    correlation: window against every template (Double[] rebuild + correlationCoefficient() per
+                 template / WindowStatistics + TemplateBank), also with early abandoning against
+                 the correlation threshold
+    range:       window range (Collections.min/max / SlidingRange)
+    adaptation:  template update and window clearing after a detection
+
+One operation is one sample (one adaptation for the adaptation stage).
+
+ */
+
+package com.example.detectionbenchmarks;
+
+import com.example.detectionengine.DetectorConfig;
+import com.example.detectionengine.SignalFrontEnd;
+import com.example.detectionengine.SlidingRange;
+import com.example.detectionengine.TemplateBank;
+import com.example.detectionengine.WindowStatistics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StageBenchmark {
+
+    @Param({"10", "14", "35", "128"})
+    int templatePoints;
+
+    @Param({"1", "3", "10"})
+    int templateCount;
+
+    private DetectorConfig config;
+    private float[] magnitudes;
+    private long[] timestamps;
+    private double[] speeds;
+    private long time;
+
+    private LegacyPipeline legacy;
+    private SignalFrontEnd frontEnd;
+    private WindowStatistics stats;
+    private TemplateBank templateBank;
+    private TemplateBank abandoningBank;
+    private SlidingRange range;
+    private double[][] templates;
+    private double[] scores;
+
+    @Setup
+    public void setUp() {
+        config     = BenchmarkData.config(templatePoints, templateCount);
+        magnitudes = BenchmarkData.magnitudes(config);
+        timestamps = BenchmarkData.timestamps(0L);
+        SignalFrontEnd speedEstimator = new SignalFrontEnd(config);
+        speeds = new double[BenchmarkData.TRACE_SAMPLES];
+        for (int i = 0; i < speeds.length; i++) {
+            speeds[i] = speedEstimator.process(magnitudes[i], timestamps[i]);
+        }
+
+        legacy    = new LegacyPipeline(config, 0.05);
+        frontEnd  = new SignalFrontEnd(config);
+        stats     = new WindowStatistics(templatePoints);
+        range     = new SlidingRange(templatePoints);
+        templates = new double[templateCount][];
+        for (int t = 0; t < templateCount; t++) {
+            templates[t] = config.getTemplate(t);
+        }
+        templateBank   = new TemplateBank(templates, templatePoints);
+        abandoningBank = new TemplateBank(templates, templatePoints, config.getCorrelationThreshold());
+        scores         = new double[templateCount];
+    }
+
+    private long nextTraceStart() {
+        long start = time;
+        time = time + BenchmarkData.TRACE_SAMPLES * BenchmarkData.SAMPLE_PERIOD_NANOS;
+        return start;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.TRACE_SAMPLES)
+    public double legacySmoothing() {
+        long start = nextTraceStart();
+        double sum = 0;
+        for (int i = 0; i < BenchmarkData.TRACE_SAMPLES; i++) {
+            sum = sum + legacy.smoothSpeed(magnitudes[i], start + timestamps[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.TRACE_SAMPLES)
+    public double frontEndSmoothing() {
+        long start = nextTraceStart();
+        double sum = 0;
+        for (int i = 0; i < BenchmarkData.TRACE_SAMPLES; i++) {
+            sum = sum + frontEnd.process(magnitudes[i], start + timestamps[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.TRACE_SAMPLES)
+    public double legacyCorrelation() {
+        double sum = 0;
+        for (int i = 0; i < BenchmarkData.TRACE_SAMPLES; i++) {
+            legacy.addToWindow(speeds[i]);
+            for (int t = 0; t < templateCount; t++) {
+                sum = sum + legacy.computeCorrelation(t);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.TRACE_SAMPLES)
+    public double templateBankCorrelation() {
+        double sum = 0;
+        for (int i = 0; i < BenchmarkData.TRACE_SAMPLES; i++) {
+            stats.add(speeds[i]);
+            templateBank.score(stats, scores);
+            for (int t = 0; t < templateCount; t++) {
+                sum = sum + scores[t];
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.TRACE_SAMPLES)
+    public double abandoningCorrelation() {
+        double sum = 0;
+        for (int i = 0; i < BenchmarkData.TRACE_SAMPLES; i++) {
+            stats.add(speeds[i]);
+            abandoningBank.score(stats, scores);
+            for (int t = 0; t < templateCount; t++) {
+                sum = sum + scores[t];
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.TRACE_SAMPLES)
+    public double legacyRange() {
+        double sum = 0;
+        for (int i = 0; i < BenchmarkData.TRACE_SAMPLES; i++) {
+            legacy.addToWindow(speeds[i]);
+            sum = sum + legacy.rangeSpeed();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.TRACE_SAMPLES)
+    public double slidingRange() {
+        double sum = 0;
+        for (int i = 0; i < BenchmarkData.TRACE_SAMPLES; i++) {
+            range.add(speeds[i]);
+            sum = sum + range.getRange();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void legacyAdaptation() {
+        legacy.adaptTemplate(0);
+    }
+
+    //what the engine does after a detection
+    @Benchmark
+    public void templateBankAdaptation() {
+        double[] window = stats.getWindow().array();
+        int offset = stats.getWindow().offset();
+        double[] template = templates[0];
+        for (int i = 0; i < templatePoints; i++) {
+            template[i] = template[i] + config.getAdaptationRate() * window[offset + i];
+        }
+        templateBank.setTemplate(0, template);
+        stats.clear();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+Cost per sample of matching a growing vocabulary of templates: every template correlated
+(TemplateBank) against the pruned search of TemplateIndex, which keeps the 3 best matches.
+The traces contain motions of random templates of the vocabulary between noise, as in the other
+benchmarks. One operation is one sample.
+
+ */
+
+package com.example.detectionbenchmarks;
+
+import com.example.detectionengine.DetectorConfig;
+import com.example.detectionengine.SignalFrontEnd;
+import com.example.detectionengine.TemplateBank;
+import com.example.detectionengine.TemplateIndex;
+import com.example.detectionengine.WindowStatistics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VocabularyBenchmark {
+
+    @Param({"35"})
+    int templatePoints;
+
+    @Param({"3", "30", "100", "300", "1000"})
+    int templateCount;
+
+    private double[] speeds;
+    private WindowStatistics stats;
+    private TemplateBank templateBank;
+    private TemplateIndex templateIndex;
+    private double[] scores;
+
+    @Setup
+    public void setUp() {
+        DetectorConfig config = BenchmarkData.config(templatePoints, templateCount);
+        float[] magnitudes = BenchmarkData.magnitudes(config);
+        long[] timestamps = BenchmarkData.timestamps(0L);
+        SignalFrontEnd frontEnd = new SignalFrontEnd(config);
+        speeds = new double[BenchmarkData.TRACE_SAMPLES];
+        for (int i = 0; i < speeds.length; i++) {
+            speeds[i] = frontEnd.process(magnitudes[i], timestamps[i]);
+        }
+
+        double[][] templates = new double[templateCount][];
+        for (int t = 0; t < templateCount; t++) {
+            templates[t] = config.getTemplate(t);
+        }
+        stats         = new WindowStatistics(templatePoints);
+        templateBank  = new TemplateBank(templates, templatePoints);
+        templateIndex = new TemplateIndex(templates, templatePoints, TemplateIndex.defaultSegments(templatePoints),
+                config.getCorrelationThreshold(), 3);
+        scores        = new double[templateCount];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.TRACE_SAMPLES)
+    public double templateBank() {
+        double sum = 0;
+        for (int i = 0; i < BenchmarkData.TRACE_SAMPLES; i++) {
+            stats.add(speeds[i]);
+            templateBank.score(stats, scores);
+            sum = sum + scores[0];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.TRACE_SAMPLES)
+    public double templateIndex() {
+        double sum = 0;
+        for (int i = 0; i < BenchmarkData.TRACE_SAMPLES; i++) {
+            stats.add(speeds[i]);
+            templateIndex.score(stats, scores);
+            sum = sum + scores[0] + templateIndex.getMatchCount();
+        }
+        return sum;
+    }
+}
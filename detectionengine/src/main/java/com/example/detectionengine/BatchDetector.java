@@ -0,0 +1,185 @@
+/*
+Offline detection over a whole recorded trace, using FFT cross-correlation.
+
+The recorded magnitudes go through the same SignalFrontEnd as in the streaming engine. The cross
+terms sum(window[i] * template[i]) of all window positions are then computed block by block with
+overlap-save FFT cross-correlation, O(log blockSize) per position and template instead of
+O(templatePoints). The window sums and ranges come from the same WindowStatistics the engine uses.
+
+To report exactly the detections of the streaming DetectionEngine, the FFT scores are only used to
+reject windows: a window whose FFT score is below the correlation threshold by more than the
+rounding error bound of the FFT is skipped, every other window is rescored with the exact
+TemplateBank and decided with the streaming rules. The rounding error of an FFT cross term scales
+with the energy of the whole FFT block, not of the window, so the bound uses the block's square
+sum: a quiet window next to large spikes of the same block is rescored rather than rejected. After a detection the template is adapted and
+the window cleared as in the engine, so the FFT block is recomputed from the next sample on.
+
+The FFT only computes correlations, detectors with DTW matching are run through the streaming
+engine, as are multi-scale detectors, detectors with a peak lookahead or refractory period, and
+resampled detectors, whose windows do not line up with the recorded samples.
+Multi-channel detectors need the axes, which a magnitude trace does not have.
+
+ */
+
+package com.example.detectionengine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchDetector {
+
+    //relative error bound of an FFT dot product against the direct sum, very conservative
+    private static final double FFT_DOT_ERROR = 1e-10;
+
+    private final DetectorConfig config;
+
+    public BatchDetector(DetectorConfig config) {
+        this.config = config;
+    }
+
+    public List<Detection> detect(RecordedTrace trace, double detectorThreshold) {
+        return detect(trace.getMagnitudes(), trace.getTimestamps(), trace.size(), detectorThreshold);
+    }
+
+    public List<Detection> detect(float[] magnitudes, long[] timestamps, int count, double detectorThreshold) {
+        if (config.isMultiChannel()) {
+            throw new IllegalArgumentException("A magnitude trace has no axes for a multi-channel detector");
+        }
+        if (config.getMatchingMode() != DetectorConfig.MatchingMode.CORRELATION || config.isMultiScale()
+                || config.getPeakLookahead() > 0 || config.getRefractoryPeriod() > 0 || config.isResampled()) {
+            return TraceReplay.replay(config, detectorThreshold, new RecordedTrace(magnitudes, timestamps, count));
+        }
+        int n = config.getTemplatePoints();
+        int templateCount = config.getTemplateCount();
+        double correlationThreshold = config.getCorrelationThreshold();
+
+        //front end over the whole trace
+        double[] speed = new double[count];
+        SignalFrontEnd frontEnd = new SignalFrontEnd(config);
+        for (int i = 0; i < count; i++) {
+            speed[i] = frontEnd.process(magnitudes[i], timestamps[i]);
+        }
+
+        double[][] templates = new double[templateCount][];
+        for (int t = 0; t < templateCount; t++) {
+            templates[t] = config.getTemplate(t);
+        }
+        TemplateBank templateBank = new TemplateBank(templates, n);
+        WindowStatistics stats = new WindowStatistics(n);
+        double[] scores = new double[templateCount];
+
+        Fft fft = new Fft(Integer.highestOneBit(Math.max(64, 4 * n) - 1) << 1);
+        int fftSize = fft.size();
+        int blockSize = fftSize - n + 1;
+        double[][] templateRe = new double[templateCount][fftSize];
+        double[][] templateIm = new double[templateCount][fftSize];
+        double[] sum_Y = new double[templateCount];
+        double[] squareSum_Y = new double[templateCount];
+        double[] templateVariance = new double[templateCount];
+        for (int t = 0; t < templateCount; t++) {
+            transformTemplate(fft, templates[t], n, templateRe[t], templateIm[t]);
+            sum_Y[t]            = sum(templates[t], n, false);
+            squareSum_Y[t]      = sum(templates[t], n, true);
+            templateVariance[t] = n * squareSum_Y[t] - sum_Y[t] * sum_Y[t];
+        }
+
+        double[] re = new double[fftSize];
+        double[] im = new double[fftSize];
+        double[] productRe = new double[fftSize];
+        double[] productIm = new double[fftSize];
+        double[][] dots = new double[templateCount][blockSize];
+        int blockStart = 0;
+        int blockEnd = 0;        //no block computed yet
+        double blockSquareSum = 0;
+        int segmentStart = 0;    //the window holds zeros before this sample
+
+        List<Detection> detections = new ArrayList<>();
+        for (int j = 0; j < count; j++) {
+            if (j >= blockEnd) {
+                blockStart = j;
+                blockEnd   = Math.min(count, j + blockSize);
+                blockSquareSum = crossCorrelate(fft, speed, count, segmentStart, blockStart, n, re, im,
+                        productRe, productIm, templateRe, templateIm, dots);
+            }
+            stats.add(speed[j]);
+
+            //reject windows the FFT scores clearly keep below the threshold
+            double sum_X = stats.getSum();
+            double windowVariance = n * stats.getSquareSum() - sum_X * sum_X;
+            boolean candidate = false;
+            for (int t = 0; t < templateCount && !candidate; t++) {
+                double denominator = Math.sqrt(windowVariance * templateVariance[t]);
+                double score = (n * dots[t][j - blockStart] - sum_X * sum_Y[t]) / denominator;
+                double error = n * FFT_DOT_ERROR * Math.sqrt(blockSquareSum * squareSum_Y[t]) / denominator;
+                //negated so that NaN scores are rescored exactly
+                candidate = !(score < correlationThreshold - error);
+            }
+            if (!candidate) {
+                continue;
+            }
+
+            //exact scores and the decision of the streaming engine
+            templateBank.score(stats, scores);
+            double maxCorrelation = DetectionEngine.maxCorrelation(scores);
+            if (maxCorrelation > correlationThreshold && !(stats.getRange() < detectorThreshold)) {
+                int detected = DetectionEngine.bestTemplate(scores);
+                detections.add(new Detection(j, timestamps[j], detected, maxCorrelation));
+
+                DetectionEngine.adaptTemplate(config, templates, templateBank, detected, stats);
+                transformTemplate(fft, templates[detected], n, templateRe[detected], templateIm[detected]);
+                sum_Y[detected]            = sum(templates[detected], n, false);
+                squareSum_Y[detected]      = sum(templates[detected], n, true);
+                templateVariance[detected] = n * squareSum_Y[detected] - sum_Y[detected] * sum_Y[detected];
+
+                //the cleared window and the new template invalidate the rest of the block
+                segmentStart = j + 1;
+                blockEnd     = j + 1;
+            }
+        }
+        return detections;
+    }
+
+    //FFT of the first n template points, zero padded
+    private static void transformTemplate(Fft fft, double[] template, int n, double[] re, double[] im) {
+        for (int i = 0; i < fft.size(); i++) {
+            re[i] = i < n ? template[i] : 0.0;
+            im[i] = 0.0;
+        }
+        fft.forward(re, im);
+    }
+
+    //cross terms of the windows ending at blockStart .. blockStart + dots[0].length - 1, returns the
+    //square sum of the block
+    private static double crossCorrelate(Fft fft, double[] speed, int count, int segmentStart, int blockStart,
+                                       int n, double[] re, double[] im, double[] productRe, double[] productIm,
+                                       double[][] templateRe, double[][] templateIm, double[][] dots) {
+        int first = blockStart - n + 1;
+        double squareSum = 0;
+        for (int q = 0; q < fft.size(); q++) {
+            int index = first + q;
+            re[q] = index >= segmentStart && index >= 0 && index < count ? speed[index] : 0.0;
+            im[q] = 0.0;
+            squareSum = squareSum + re[q] * re[q];
+        }
+        fft.forward(re, im);
+
+        for (int t = 0; t < templateRe.length; t++) {
+            //X * conj(T) gives the cross-correlation
+            for (int q = 0; q < fft.size(); q++) {
+                productRe[q] = re[q] * templateRe[t][q] + im[q] * templateIm[t][q];
+                productIm[q] = im[q] * templateRe[t][q] - re[q] * templateIm[t][q];
+            }
+            fft.inverse(productRe, productIm);
+            System.arraycopy(productRe, 0, dots[t], 0, dots[t].length);
+        }
+        return squareSum;
+    }
+
+    private static double sum(double[] values, int n, boolean squares) {
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum = sum + (squares ? values[i] * values[i] : values[i]);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+Second order IIR filter section (biquad), in transposed direct form II:
+
+    y = b0 * x + z1
+    z1 = b1 * x - a1 * y + z2
+    z2 = b2 * x - a2 * y
+
+The coefficients of the low-pass, high-pass and band-pass factories are those of the Audio EQ
+Cookbook (R. Bristow-Johnson) for the given sample rate. They are only exact for evenly spaced
+samples, so IIR stages are meant for resampled detectors (see DetectorConfig.setResampling()).
+Several sections can be chained for steeper filters.
+
+ */
+
+package com.example.detectionengine;
+
+public class Biquad implements SignalFilter {
+
+    private final double b0, b1, b2, a1, a2;
+    private double z1 = 0;
+    private double z2 = 0;
+
+    //coefficients normalized to a0 = 1
+    public Biquad(double b0, double b1, double b2, double a1, double a2) {
+        this.b0 = b0;
+        this.b1 = b1;
+        this.b2 = b2;
+        this.a1 = a1;
+        this.a2 = a2;
+    }
+
+    //q = 1 / sqrt(2) gives a Butterworth response
+    public static Biquad lowPass(double sampleRateHz, double cutoffHz, double q) {
+        double cos = Math.cos(omega(sampleRateHz, cutoffHz));
+        double alpha = alpha(sampleRateHz, cutoffHz, q);
+        double a0 = 1 + alpha;
+        return new Biquad((1 - cos) / 2 / a0, (1 - cos) / a0, (1 - cos) / 2 / a0,
+                -2 * cos / a0, (1 - alpha) / a0);
+    }
+
+    public static Biquad highPass(double sampleRateHz, double cutoffHz, double q) {
+        double cos = Math.cos(omega(sampleRateHz, cutoffHz));
+        double alpha = alpha(sampleRateHz, cutoffHz, q);
+        double a0 = 1 + alpha;
+        return new Biquad((1 + cos) / 2 / a0, -(1 + cos) / a0, (1 + cos) / 2 / a0,
+                -2 * cos / a0, (1 - alpha) / a0);
+    }
+
+    //gain 1 at the center frequency, the bandwidth is centerHz / q
+    public static Biquad bandPass(double sampleRateHz, double centerHz, double q) {
+        double cos = Math.cos(omega(sampleRateHz, centerHz));
+        double alpha = alpha(sampleRateHz, centerHz, q);
+        double a0 = 1 + alpha;
+        return new Biquad(alpha / a0, 0.0, -alpha / a0, -2 * cos / a0, (1 - alpha) / a0);
+    }
+
+    private static double omega(double sampleRateHz, double frequencyHz) {
+        if (!(frequencyHz > 0 && frequencyHz < sampleRateHz / 2)) {
+            throw new IllegalArgumentException("Frequency must be between 0 and half the sample rate");
+        }
+        return 2 * Math.PI * frequencyHz / sampleRateHz;
+    }
+
+    private static double alpha(double sampleRateHz, double frequencyHz, double q) {
+        if (!(q > 0)) {
+            throw new IllegalArgumentException("Q must be positive");
+        }
+        return Math.sin(omega(sampleRateHz, frequencyHz)) / (2 * q);
+    }
+
+    @Override
+    public double filter(double value) {
+        double y = b0 * value + z1;
+        z1 = b1 * value - a1 * y + z2;
+        z2 = b2 * value - a2 * y;
+        return y;
+    }
+
+    @Override
+    public void reset() {
+        z1 = 0;
+        z2 = 0;
+    }
+
+    @Override
+    public int stateSize() {
+        return 2;
+    }
+
+    @Override
+    public void saveState(double[] state, int offset) {
+        state[offset]     = z1;
+        state[offset + 1] = z2;
+    }
+
+    @Override
+    public void restoreState(double[] state, int offset) {
+        z1 = state[offset];
+        z2 = state[offset + 1];
+    }
+
+    @Override
+    public Biquad copy() {
+        return new Biquad(b0, b1, b2, a1, a2);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+Front end for the axes of a multi-channel detector (see DetectorConfig.Channels).
+
+Every axis gets the same derivative and filter chain as the magnitude in SignalFrontEnd. The
+samples are read from per-axis columns (samples[axis][index], struct of arrays) and the time
+step of a sample is computed once for all axes.
+
+ */
+
+package com.example.detectionengine;
+
+public class ChannelFrontEnd {
+
+    private final DetectorConfig.DerivativeMode derivativeMode;
+    private final FilterChain[] filters;
+    private final double[] pastValues;
+    private int countSensorData = 0;
+    private long pastTime;
+
+    public ChannelFrontEnd(DetectorConfig config, int axes) {
+        this.derivativeMode = config.getDerivativeMode();
+        this.filters        = new FilterChain[axes];
+        this.pastValues     = new double[axes];
+        for (int a = 0; a < axes; a++) {
+            filters[a] = config.newFilterChain();
+        }
+    }
+
+    //writes the smoothed derivative of every axis after adding samples[axis][index] into out
+    public void process(float[][] samples, int index, long timestampNanos, double[] out) {
+        countSensorData = countSensorData + 1;
+
+        double gain;
+        if (countSensorData == 1) {
+            gain = 0.0;
+        }
+        else {
+            double timeFactor = ((timestampNanos - pastTime) / 1e9);
+            gain = derivativeMode == DetectorConfig.DerivativeMode.SCALED_BY_DT ? timeFactor : 1 / timeFactor;
+        }
+        for (int a = 0; a < pastValues.length; a++) {
+            double value = samples[a][index];
+            //a first sample has no derivative, also for a non-finite value
+            double currSpeed = countSensorData == 1 ? 0.0 : (value - pastValues[a]) * gain;
+            pastValues[a] = value;
+            out[a] = filters[a].filter(currSpeed);
+        }
+        pastTime = timestampNanos;
+    }
+
+    //the next sample is handled as the first one of a session, the filter history is kept
+    public void reset() {
+        countSensorData = 0;
+    }
+
+    public int getAxes() {
+        return pastValues.length;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+Correlation matching of the magnitude and the axes of a multi-channel detector.
+
+A template has one signal for the magnitude (the template of the single channel detectors, which
+is adapted on detection) and one for every axis (fixed, see DetectorConfig.setChannels()). The
+score of a template is the correlation of all its channels, one after the other, with the windows
+of the same channels, with the formula of TemplateBank over N = channels * n points. So it stays
+on the scale of the correlation coefficient and the correlation threshold of the detector applies
+as before. Every channel weighs with its energy: the axes the motion happens along decide, an axis
+that stays still in both the window and the template adds nothing, and a motion along another axis
+than the template's only correlates through the magnitude.
+
+As in TemplateBank, every channel keeps its templates interleaved point by point in one primitive
+matrix, so each window value is read once and multiplied with one contiguous row; the window sums
+of a channel come from its WindowStatistics and are shared by all templates, the template sums
+are cached. The axis windows are filled by the engine before score() is called.
+
+ */
+
+package com.example.detectionengine;
+
+public class ChannelTemplateBank implements TemplateMatcher {
+
+    private final int n;
+    private final int templateCount;
+    private final int channels;
+    private final WindowStatistics[] axisWindows;
+    private final double[][] matrix;            //per channel, matrix[c][i * templateCount + t]
+    private final double[][] channelSum;        //per channel and template
+    private final double[][] channelSquareSum;
+    private final double[] sum_Y;               //over all channels
+    private final double[] templateVariance;    //N * squareSum_Y - sum_Y * sum_Y
+    private final double[] sum_XY;
+
+    //axisTemplates[t][a] is the signal of axis a in template t, axisWindows[a] its window
+    public ChannelTemplateBank(double[][] templates, double[][][] axisTemplates, int n,
+                               WindowStatistics[] axisWindows) {
+        if (axisTemplates.length != templates.length) {
+            throw new IllegalArgumentException("Every template needs the signals of all axes");
+        }
+        this.n                = n;
+        this.templateCount    = templates.length;
+        this.channels         = axisWindows.length + 1;
+        this.axisWindows      = axisWindows;
+        this.matrix           = new double[channels][n * templateCount];
+        this.channelSum       = new double[channels][templateCount];
+        this.channelSquareSum = new double[channels][templateCount];
+        this.sum_Y            = new double[templateCount];
+        this.templateVariance = new double[templateCount];
+        this.sum_XY           = new double[templateCount];
+        for (int t = 0; t < templateCount; t++) {
+            if (axisTemplates[t].length != axisWindows.length) {
+                throw new IllegalArgumentException("Every template needs the signals of all axes");
+            }
+            for (int a = 0; a < axisWindows.length; a++) {
+                setChannel(a + 1, t, axisTemplates[t][a]);
+            }
+            setTemplate(t, templates[t]);
+        }
+    }
+
+    //replaces the magnitude signal of a template
+    @Override
+    public void setTemplate(int index, double[] template) {
+        setChannel(0, index, template);
+    }
+
+    private void setChannel(int channel, int index, double[] template) {
+        double sum = 0, squareSum = 0;
+        double[] rows = matrix[channel];
+        for (int i = 0; i < n; i++) {
+            rows[i * templateCount + index] = template[i];
+            sum       = sum + template[i];
+            squareSum = squareSum + template[i] * template[i];
+        }
+        channelSum[channel][index]       = sum;
+        channelSquareSum[channel][index] = squareSum;
+
+        double totalSum = 0, totalSquareSum = 0;
+        for (int c = 0; c < channels; c++) {
+            totalSum       = totalSum + channelSum[c][index];
+            totalSquareSum = totalSquareSum + channelSquareSum[c][index];
+        }
+        sum_Y[index]            = totalSum;
+        templateVariance[index] = channels * n * totalSquareSum - totalSum * totalSum;
+    }
+
+    //writes the correlation of all channel windows with every template into scores, stats is the
+    //window of the magnitude
+    @Override
+    public void score(WindowStatistics stats, double[] scores) {
+        for (int t = 0; t < templateCount; t++) {
+            sum_XY[t] = 0;
+        }
+        double sum_X = 0, squareSum_X = 0;
+        for (int c = 0; c < channels; c++) {
+            WindowStatistics channelStats = c == 0 ? stats : axisWindows[c - 1];
+            DoubleRingBuffer window = channelStats.getWindow();
+            double[] data = window.array();
+            int offset = window.offset();
+            double[] rows = matrix[c];
+            for (int i = 0; i < n; i++) {
+                double x = data[offset + i];
+                int row = i * templateCount;
+                for (int t = 0; t < templateCount; t++) {
+                    sum_XY[t] = sum_XY[t] + x * rows[row + t];
+                }
+            }
+            sum_X       = sum_X + channelStats.getSum();
+            squareSum_X = squareSum_X + channelStats.getSquareSum();
+        }
+
+        int points = channels * n;
+        double windowVariance = points * squareSum_X - sum_X * sum_X;
+        for (int t = 0; t < templateCount; t++) {
+            scores[t] = (points * sum_XY[t] - sum_X * sum_Y[t])
+                    / Math.sqrt(windowVariance * templateVariance[t]);
+        }
+    }
+
+    @Override
+    public int getWindowPoints(int templateIndex) {
+        return n;
+    }
+
+    public int getChannelCount() {
+        return channels;
+    }
+}
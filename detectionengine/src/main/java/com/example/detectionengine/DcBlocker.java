@@ -0,0 +1,66 @@
+/*
+Removes the constant offset (DC) of a signal with a one-pole high-pass filter:
+
+    y = x - previous x + pole * previous y
+
+The pole sets how quickly the offset is followed, the cutoff frequency is about
+(1 - pole) * sampleRate / (2 pi). A pole close to 1 keeps slow motions, e.g. 0.995.
+
+ */
+
+package com.example.detectionengine;
+
+public class DcBlocker implements SignalFilter {
+
+    private final double pole;
+    private double previousInput = 0;
+    private double previousOutput = 0;
+
+    public DcBlocker(double pole) {
+        if (!(pole > 0 && pole < 1)) {
+            throw new IllegalArgumentException("Pole must be between 0 and 1");
+        }
+        this.pole = pole;
+    }
+
+    //pole for a cutoff frequency at the given sample rate
+    public static DcBlocker withCutoff(double sampleRateHz, double cutoffHz) {
+        return new DcBlocker(Math.exp(-2 * Math.PI * cutoffHz / sampleRateHz));
+    }
+
+    @Override
+    public double filter(double value) {
+        double y = value - previousInput + pole * previousOutput;
+        previousInput  = value;
+        previousOutput = y;
+        return y;
+    }
+
+    @Override
+    public void reset() {
+        previousInput  = 0;
+        previousOutput = 0;
+    }
+
+    @Override
+    public int stateSize() {
+        return 2;
+    }
+
+    @Override
+    public void saveState(double[] state, int offset) {
+        state[offset]     = previousInput;
+        state[offset + 1] = previousOutput;
+    }
+
+    @Override
+    public void restoreState(double[] state, int offset) {
+        previousInput  = state[offset];
+        previousOutput = state[offset + 1];
+    }
+
+    @Override
+    public DcBlocker copy() {
+        return new DcBlocker(pole);
+    }
+}
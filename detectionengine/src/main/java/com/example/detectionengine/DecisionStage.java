@@ -0,0 +1,142 @@
+/*
+Decides when a window that passes the correlation and range checks counts as a detection.
+
+The apps counted a detection at the first sample whose window passed, and then cleared the window,
+so the following windows were mostly zeros and still had to be scored. Two settings of the
+detector change that (both 0 by default, which is the behaviour of the apps):
+
+    peak lookahead:     a passing window only becomes a candidate. The candidate is replaced by
+                        every later passing window with a higher correlation, and detected once
+                        lookahead samples have passed without a better one. The detection is the
+                        local maximum of the score instead of the first threshold crossing, at the
+                        cost of lookahead samples of latency. A candidate waits at most one window
+                        length after the first crossing.
+    refractory period:  after a detection the next samples are locked out: the engine only adds
+                        them to the window and does not run the matcher at all. The window is not
+                        cleared, so after the lockout it holds real samples again; a refractory
+                        period of at least the template length never shows the detected motion
+                        twice.
+
+The window of a candidate is copied when it becomes the candidate, as the live window moves on
+during the lookahead. Without a lookahead the live window is used.
+
+ */
+
+package com.example.detectionengine;
+
+public class DecisionStage {
+
+    private final int lookahead;
+    private final int refractoryPeriod;
+    private final int maxWait;
+    private final double[] candidateWindow;
+
+    private int lockout = 0;
+    private int candidate = DetectionEngine.NO_DETECTION;
+    private double candidateScore;
+    private int candidatePoints;
+    private int candidateAge;
+    private int sinceFirstCrossing;
+
+    //window of the latest detection
+    private double[] detectedWindow;
+    private int detectedOffset;
+    private int detectedPoints;
+    private double detectedScore;
+
+    //windowCapacity is the length of the longest window that is matched
+    public DecisionStage(int lookahead, int refractoryPeriod, int windowCapacity) {
+        if (lookahead < 0 || refractoryPeriod < 0) {
+            throw new IllegalArgumentException("Lookahead and refractory period must not be negative");
+        }
+        this.lookahead        = lookahead;
+        this.refractoryPeriod = refractoryPeriod;
+        this.maxWait          = Math.max(lookahead, windowCapacity);
+        this.candidateWindow  = new double[lookahead > 0 ? windowCapacity : 0];
+    }
+
+    //true if the current sample is in the refractory period and the matcher is skipped
+    public boolean isLockedOut() {
+        if (lockout > 0) {
+            lockout = lockout - 1;
+            return true;
+        }
+        return false;
+    }
+
+    //decision for the scores of the current window: passes is true if the best template exceeds
+    //the correlation threshold and the window its range threshold. Returns the detected template
+    //or NO_DETECTION; the window of a detection is available from the getters afterwards.
+    public int decide(boolean passes, double score, int template, int windowPoints, DoubleRingBuffer window) {
+        if (lookahead == 0) {
+            if (!passes) {
+                return DetectionEngine.NO_DETECTION;
+            }
+            detectedWindow = window.array();
+            detectedOffset = window.offset() + window.capacity() - windowPoints;
+            detectedPoints = windowPoints;
+            detectedScore  = score;
+            lockout        = refractoryPeriod;
+            return template;
+        }
+
+        if (candidate != DetectionEngine.NO_DETECTION) {
+            sinceFirstCrossing = sinceFirstCrossing + 1;
+        }
+        if (passes && (candidate == DetectionEngine.NO_DETECTION || score > candidateScore)) {
+            if (candidate == DetectionEngine.NO_DETECTION) {
+                sinceFirstCrossing = 0;
+            }
+            candidate       = template;
+            candidateScore  = score;
+            candidatePoints = windowPoints;
+            candidateAge    = 0;
+            System.arraycopy(window.array(), window.offset() + window.capacity() - windowPoints,
+                    candidateWindow, 0, windowPoints);
+        }
+        else if (candidate != DetectionEngine.NO_DETECTION) {
+            candidateAge = candidateAge + 1;
+        }
+        if (candidate == DetectionEngine.NO_DETECTION
+                || (candidateAge < lookahead && sinceFirstCrossing < maxWait)) {
+            return DetectionEngine.NO_DETECTION;
+        }
+
+        int detected = candidate;
+        candidate      = DetectionEngine.NO_DETECTION;
+        detectedWindow = candidateWindow;
+        detectedOffset = 0;
+        detectedPoints = candidatePoints;
+        detectedScore  = candidateScore;
+        lockout        = refractoryPeriod;
+        return detected;
+    }
+
+    //drops a pending candidate and ends the lockout
+    public void reset() {
+        lockout   = 0;
+        candidate = DetectionEngine.NO_DETECTION;
+    }
+
+    public boolean hasCandidate() {
+        return candidate != DetectionEngine.NO_DETECTION;
+    }
+
+    //array holding the window of the latest detection, from getDetectedOffset()
+    public double[] getDetectedWindow() {
+        return detectedWindow;
+    }
+
+    public int getDetectedOffset() {
+        return detectedOffset;
+    }
+
+    public int getDetectedPoints() {
+        return detectedPoints;
+    }
+
+    //score of the template at the detected window
+    public double getDetectedScore() {
+        return detectedScore;
+    }
+}
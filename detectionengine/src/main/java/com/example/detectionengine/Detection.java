@@ -0,0 +1,59 @@
+/*
+One detection of a template in a recorded or replayed signal.
+
+ */
+
+package com.example.detectionengine;
+
+public class Detection {
+
+    private final int sampleIndex;
+    private final long timestampNanos;
+    private final int templateIndex;
+    private final double correlation;
+
+    public Detection(int sampleIndex, long timestampNanos, int templateIndex, double correlation) {
+        this.sampleIndex    = sampleIndex;
+        this.timestampNanos = timestampNanos;
+        this.templateIndex  = templateIndex;
+        this.correlation    = correlation;
+    }
+
+    //index of the sample the detection was made at
+    public int getSampleIndex() {
+        return sampleIndex;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getTemplateIndex() {
+        return templateIndex;
+    }
+
+    //correlation of the detected template
+    public double getCorrelation() {
+        return correlation;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Detection)) {
+            return false;
+        }
+        Detection other = (Detection) o;
+        return sampleIndex == other.sampleIndex && timestampNanos == other.timestampNanos
+                && templateIndex == other.templateIndex;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * sampleIndex + (int) (timestampNanos ^ (timestampNanos >>> 32))) + templateIndex;
+    }
+
+    @Override
+    public String toString() {
+        return sampleIndex + "," + timestampNanos + "," + templateIndex;
+    }
+}
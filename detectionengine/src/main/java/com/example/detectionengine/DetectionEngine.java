@@ -0,0 +1,649 @@
+/*
+Streaming template matching engine shared by the step, shake and gesture detector apps.
+
+Every accelerometer sample goes through the same pipeline:
+    magnitude of the acceleration minus gravity,
+    optionally resampled to a fixed sample period (see Resampler), every resampled value then
+    runs through the rest of the pipeline,
+    derivative of the magnitude (speed or jerk surrogate, see DetectorConfig.DerivativeMode),
+    moving average filter,
+    correlation (or DTW, see DetectorConfig.MatchingMode) of the latest template window against
+    every template, optionally at several time scales (see TemplatePyramid) or pruned by an
+    index for large vocabularies (see TemplateIndex),
+    range check of the window against the detector threshold (to avoid detections from noise),
+    decision: at once, or at the local maximum of the score within a lookahead, with an optional
+    refractory period in which the matcher is skipped (see DecisionStage).
+A multi-channel detector (see DetectorConfig.Channels) also runs the x, y and z axes of the
+accelerometer (and of the gyroscope) through their own derivative and filters into per-axis
+windows, and the matcher scores all channels (see ChannelTemplateBank). Its samples are given to
+processChannels() as one primitive column per axis; accelerometer-only detectors also take them
+from process() and processBatch().
+When a window is detected, the matching template is adapted towards it (a window of another time
+scale is first interpolated to the template length) and the window is cleared. An engine created
+with a TemplateAdapter hands the window to the adaptation thread instead and picks up the adapted
+templates from the snapshots it publishes.
+
+The engine has no Android dependencies, so it can be run and profiled on a plain JVM.
+All windows are primitive ring buffers that are read in place, so a sample does not allocate.
+The adapted templates, the threshold and the warm front end and window can be saved to a
+DetectorState and restored from it after a restart (see TemplateStore).
+With PipelineMetrics set, the time of every stage is recorded per sample, with an enabled
+TraceRecorder set, the state of every sample (see TraceRecorder).
+
+ */
+
+package com.example.detectionengine;
+
+public class DetectionEngine {
+
+    public static final int NO_DETECTION = -1;
+
+    private final DetectorConfig config;
+    private final double[][] templates;
+    private final int templatePoints;
+    private final double[] correlations;
+    private double detectorThreshold;
+
+    //store information about incoming sensor data
+    private final SignalFrontEnd frontEnd;
+    private final WindowStatistics speedTemplateWindow;
+    private final TemplateMatcher matcher;
+    private final DecisionStage decision;
+    private final Resampler resampler;
+    private final ChannelFrontEnd axisFrontEnd;
+    private final WindowStatistics[] axisWindows;
+    private final double[] axisValues;
+    private final float[][] axisSample; //columns of one sample for process()
+    private int inputDetection;
+    private final TemplateAdapter adapter;
+    private TemplateSnapshot appliedSnapshot;
+    private PipelineMetrics metrics;
+    private TraceRecorder traceRecorder;
+    private boolean frontEndShared = false;
+    private DetectorState warmStart; //applied at the next sample, see restoreState()
+    private long warmStartMaxGapNanos;
+
+    private int detectionCount = 0;
+    private float lastMagnitude;
+    private double lastSpeedSmooth;
+    private double lastCorrelation;
+    private int lastDetection = NO_DETECTION;
+    private int lastDetectedTemplate = NO_DETECTION;
+    private double lastDetectedScale = 1.0;
+
+    public DetectionEngine(DetectorConfig config) {
+        this(config, null);
+    }
+
+    //templates are adapted on the thread of the adapter, see TemplateAdapter
+    public DetectionEngine(TemplateAdapter adapter) {
+        this(adapter.getConfig(), adapter);
+    }
+
+    private DetectionEngine(DetectorConfig config, TemplateAdapter adapter) {
+        this.config         = config;
+        this.templatePoints = config.getTemplatePoints();
+        this.templates      = new double[config.getTemplateCount()][];
+        this.adapter        = adapter;
+        if (adapter != null) {
+            //published arrays, only read
+            appliedSnapshot = adapter.current();
+            for (int i = 0; i < templates.length; i++) {
+                templates[i] = appliedSnapshot.template(i);
+            }
+        }
+        else {
+            for (int i = 0; i < templates.length; i++) {
+                templates[i] = config.getTemplate(i);
+            }
+        }
+        int axes = config.getChannels().getAxes();
+        if (axes > 0 && (config.getMatchingMode() != DetectorConfig.MatchingMode.CORRELATION
+                || config.isMultiScale() || config.isResampled())) {
+            throw new IllegalArgumentException("Multi-channel detectors match by correlation at the recorded scale, without resampling");
+        }
+        this.axisFrontEnd        = axes > 0 ? new ChannelFrontEnd(config, axes) : null;
+        this.axisWindows         = new WindowStatistics[axes];
+        this.axisValues          = new double[axes];
+        this.axisSample          = new float[axes][1];
+        double[][][] axisTemplates = new double[templates.length][axes][];
+        for (int a = 0; a < axes; a++) {
+            axisWindows[a] = new WindowStatistics(templatePoints);
+            for (int t = 0; t < templates.length; t++) {
+                axisTemplates[t][a] = config.getAxisTemplate(t, a);
+            }
+        }
+        this.correlations        = new double[templates.length];
+        this.matcher             = axes > 0 ? new ChannelTemplateBank(templates, axisTemplates, templatePoints, axisWindows)
+                : matcher(config, templates);
+        this.frontEnd            = new SignalFrontEnd(config);
+        this.speedTemplateWindow = matcher instanceof TemplatePyramid
+                ? ((TemplatePyramid) matcher).newWindow() : new WindowStatistics(templatePoints);
+        this.decision            = new DecisionStage(config.getPeakLookahead(), config.getRefractoryPeriod(),
+                speedTemplateWindow.size());
+        this.resampler           = !config.isResampled() ? null
+                : new Resampler(config.getResamplingPeriodNanos(), config.getInterpolation(), new Resampler.Output() {
+                    @Override
+                    public void sample(double value, long timestampNanos) {
+                        long start = now();
+                        double currSpeed = frontEnd.derivativeUniform(value);
+                        long derived = lap(PipelineMetrics.Stage.DERIVATIVE, start);
+                        double speedSmooth = frontEnd.smooth(currSpeed);
+                        lap(PipelineMetrics.Stage.SMOOTHING, derived);
+                        int detected = detect(speedSmooth, timestampNanos);
+                        if (detected != NO_DETECTION) {
+                            inputDetection = detected;
+                        }
+                    }
+
+                    @Override
+                    public void restart() {
+                        //the first sample after the pause gets a derivative of zero
+                        frontEnd.reset();
+                    }
+                });
+    }
+
+    public DetectorConfig getConfig() {
+        return config;
+    }
+
+    //minimum range of the template window for a correlated window to count as a detection
+    public void setDetectorThreshold(double detectorThreshold) {
+        this.detectorThreshold = detectorThreshold;
+    }
+
+    public double getDetectorThreshold() {
+        return detectorThreshold;
+    }
+
+    //records the time of the stages of every sample, null to stop
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    //records the state of every sample while the recorder is enabled, null to stop
+    public void setTraceRecorder(TraceRecorder traceRecorder) {
+        this.traceRecorder = traceRecorder;
+    }
+
+    //starts a new detection session: the next sample is handled as the first one and the
+    //detection count starts again from zero. Adapted templates are kept.
+    public void reset() {
+        frontEnd.reset();
+        if (axisFrontEnd != null) {
+            axisFrontEnd.reset();
+        }
+        decision.reset();
+        if (resampler != null) {
+            resampler.reset();
+        }
+        warmStart            = null;
+        detectionCount       = 0;
+        lastDetection        = NO_DETECTION;
+        lastDetectedTemplate = NO_DETECTION;
+        lastDetectedScale    = 1.0;
+    }
+
+    //the next sample is handled as the first one after a gap (e.g. when a SamplingRateController
+    //resumes after an idle phase): no derivative across the gap and no pending candidate. The
+    //detection count, the window and the templates are kept.
+    public void resume() {
+        warmStart = null;
+        frontEnd.reset();
+        if (axisFrontEnd != null) {
+            axisFrontEnd.reset();
+        }
+        decision.reset();
+        if (resampler != null) {
+            resampler.reset();
+        }
+    }
+
+    //processes one accelerometer sample, returns the index of the detected template or NO_DETECTION
+    public int process(float x, float y, float z, long timestampNanos) {
+        return processAccelerometer(x, y, z, SignalFrontEnd.magnitude(x, y, z), timestampNanos);
+    }
+
+    private int processAccelerometer(float x, float y, float z, float accMagAbs, long timestampNanos) {
+        if (axisFrontEnd == null) {
+            return processMagnitude(accMagAbs, timestampNanos);
+        }
+        if (axisSample.length != 3) {
+            throw new IllegalStateException("The gyroscope axes are missing, see processChannels()");
+        }
+        axisSample[0][0] = x;
+        axisSample[1][0] = y;
+        axisSample[2][0] = z;
+        return processChannels(axisSample, 0, accMagAbs, timestampNanos);
+    }
+
+    //processes count samples delivered together (e.g. from the sensor FIFO), xyz holds x, y, z of
+    //every sample one after the other. Returns the number of detections in the batch; the results
+    //are the same as calling process() for every sample.
+    public int processBatch(float[] xyz, long[] timestamps, int count) {
+        return processBatch(xyz, timestamps, count, null);
+    }
+
+    //as above, also stores the magnitude of every sample in magnitudes (e.g. for logging)
+    public int processBatch(float[] xyz, long[] timestamps, int count, float[] magnitudes) {
+        int countBefore = detectionCount;
+        for (int i = 0, j = 0; i < count; i++, j += 3) {
+            float accMagAbs = SignalFrontEnd.magnitude(xyz[j], xyz[j + 1], xyz[j + 2]);
+            if (magnitudes != null) {
+                magnitudes[i] = accMagAbs;
+            }
+            processAccelerometer(xyz[j], xyz[j + 1], xyz[j + 2], accMagAbs, timestamps[i]);
+        }
+        return detectionCount - countBefore;
+    }
+
+    //processes count samples of a multi-channel detector, samples[axis][i] is axis (accelerometer
+    //x, y, z, then gyroscope x, y, z) of sample i. Returns the number of detections.
+    public int processChannels(float[][] samples, long[] timestamps, int count) {
+        if (samples.length != axisWindows.length || axisFrontEnd == null) {
+            throw new IllegalArgumentException("Expected " + axisWindows.length + " axes");
+        }
+        int countBefore = detectionCount;
+        for (int i = 0; i < count; i++) {
+            float accMagAbs = SignalFrontEnd.magnitude(samples[0][i], samples[1][i], samples[2][i]);
+            processChannels(samples, i, accMagAbs, timestamps[i]);
+        }
+        return detectionCount - countBefore;
+    }
+
+    private int processChannels(float[][] samples, int index, float accMagAbs, long timestampNanos) {
+        lastMagnitude = accMagAbs;
+        axisFrontEnd.process(samples, index, timestampNanos, axisValues);
+        for (int a = 0; a < axisWindows.length; a++) {
+            axisWindows[a].add(axisValues[a]);
+        }
+        return detect(frontEndProcess(accMagAbs, timestampNanos), timestampNanos);
+    }
+
+    //processes one sample of the accelerometer magnitude without gravity (as written to the data logs).
+    //A resampled detector returns the last detection among the resampled values up to this sample.
+    public int processMagnitude(float accMagAbs, long timestampNanos) {
+        if (axisFrontEnd != null) {
+            throw new IllegalStateException("A multi-channel detector needs the axes, see processChannels()");
+        }
+        lastMagnitude = accMagAbs;
+        if (warmStart != null) {
+            applyWarmStart(timestampNanos);
+        }
+        if (resampler == null) {
+            return detect(frontEndProcess(accMagAbs, timestampNanos), timestampNanos);
+        }
+        inputDetection = NO_DETECTION;
+        resampler.add(accMagAbs, timestampNanos);
+        lastDetection = inputDetection;
+        return lastDetection;
+    }
+
+    private double frontEndProcess(float accMagAbs, long timestampNanos) {
+        if (metrics == null) {
+            return frontEnd.process(accMagAbs, timestampNanos);
+        }
+        long start = System.nanoTime();
+        double currSpeed = frontEnd.derivative(accMagAbs, timestampNanos);
+        long derived = lap(PipelineMetrics.Stage.DERIVATIVE, start);
+        double speedSmooth = frontEnd.smooth(currSpeed);
+        lap(PipelineMetrics.Stage.SMOOTHING, derived);
+        return speedSmooth;
+    }
+
+    //time for the metrics, 0 without metrics
+    private long now() {
+        return metrics != null ? System.nanoTime() : 0;
+    }
+
+    //records the time since start for the stage, returns the current time (0 without metrics)
+    private long lap(PipelineMetrics.Stage stage, long start) {
+        if (metrics == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        metrics.record(stage, now - start);
+        return now;
+    }
+
+    //processes one sample whose smoothed derivative was computed by a front end shared with other
+    //detectors (see FanOutPipeline), the engine's own front end is not used
+    int processShared(float accMagAbs, double speedSmooth, long timestampNanos) {
+        if (!frontEndShared) {
+            shareFrontEnd();
+        }
+        lastMagnitude = accMagAbs;
+        return detect(speedSmooth, timestampNanos);
+    }
+
+    //called when the engine joins a FanOutPipeline that computes its front end: a warm state can
+    //no longer be taken over, the window fills again from the shared front end
+    void shareFrontEnd() {
+        frontEndShared = true;
+        warmStart      = null;
+    }
+
+    //matching and decision for one smoothed derivative value
+    private int detect(double speedSmooth, long timestampNanos) {
+        lastSpeedSmooth = speedSmooth;
+
+        speedTemplateWindow.add(speedSmooth);
+
+        lastDetection = NO_DETECTION;
+        if (decision.isLockedOut()) {
+            trace(timestampNanos, false, NO_DETECTION);
+            return lastDetection;
+        }
+        if (adapter != null) {
+            TemplateSnapshot snapshot = adapter.current();
+            if (snapshot != appliedSnapshot) {
+                applySnapshot(snapshot);
+            }
+        }
+        long start = now();
+        matcher.score(speedTemplateWindow, correlations);
+        double maxCorrelation = maxCorrelation(correlations);
+        lastCorrelation = maxCorrelation;
+        long scored = lap(PipelineMetrics.Stage.CORRELATION, start);
+
+        boolean passes = false;
+        int best = NO_DETECTION;
+        int windowPoints = templatePoints;
+        if (maxCorrelation > config.getCorrelationThreshold()) {
+            best = bestTemplate(correlations);
+            windowPoints = matcher.getWindowPoints(best);
+            double currentSpeedRange = speedTemplateWindow.getRange(windowPoints);
+            //written as a negated comparison so that a NaN range behaves as in the apps
+            passes = !(currentSpeedRange < detectorThreshold);
+            lap(PipelineMetrics.Stage.RANGE_CHECK, scored);
+        }
+
+        int detected = decision.decide(passes, maxCorrelation, best, windowPoints, speedTemplateWindow.getWindow());
+        trace(timestampNanos, true, detected);
+        if (detected != NO_DETECTION) {
+            lastDetection        = detected;
+            lastDetectedTemplate = lastDetection;
+            lastDetectedScale    = (double) decision.getDetectedPoints() / templatePoints;
+            detectionCount       = detectionCount + 1;
+
+            long adaptation = now();
+            if (adapter == null) {
+                adaptTemplate(config, templates, matcher, detected, decision.getDetectedWindow(),
+                        decision.getDetectedOffset(), decision.getDetectedPoints());
+            }
+            else {
+                adapter.submit(detected, decision.getDetectedWindow(), decision.getDetectedOffset(),
+                        decision.getDetectedPoints());
+            }
+            //the refractory period replaces clearing the window
+            if (config.getRefractoryPeriod() == 0) {
+                speedTemplateWindow.clear();
+                for (WindowStatistics axisWindow : axisWindows) {
+                    axisWindow.clear();
+                }
+            }
+            lap(PipelineMetrics.Stage.ADAPTATION, adaptation);
+        }
+        return lastDetection;
+    }
+
+    //records the sample before a detection clears the window, scored is false during the
+    //refractory period
+    private void trace(long timestampNanos, boolean scored, int detected) {
+        TraceRecorder recorder = traceRecorder;
+        if (recorder == null || !recorder.isEnabled()) {
+            return;
+        }
+        double score = scored ? lastCorrelation : Double.NaN;
+        int bestTemplate = scored ? bestTemplate(correlations) : NO_DETECTION;
+        //the window matched by the best template, which is shorter or longer than the template
+        //at another time scale, the whole window during the refractory period
+        int points = scored ? matcher.getWindowPoints(bestTemplate) : speedTemplateWindow.size();
+        recorder.record(timestampNanos, lastMagnitude, lastSpeedSmooth, speedTemplateWindow.getSum(points) / points,
+                speedTemplateWindow.getRange(points), score, bestTemplate, detected);
+    }
+
+    //state of this engine, sized for saveState()
+    public DetectorState newState() {
+        int[] templateLengths = new int[templates.length];
+        for (int t = 0; t < templates.length; t++) {
+            templateLengths[t] = templates[t].length;
+        }
+        return new DetectorState(templateLengths, warmStartSize(), speedTemplateWindow.size());
+    }
+
+    //size of the front end state, 0 if the engine cannot be warm started: its front end is not the
+    //one that produced the window (resampled, multi-channel or shared in a FanOutPipeline)
+    private int warmStartSize() {
+        return resampler != null || axisFrontEnd != null ? 0 : frontEnd.stateSize();
+    }
+
+    //copies the templates, threshold and warm state into state (from newState()), does not allocate
+    public void saveState(DetectorState state) {
+        checkLayout(state);
+        TemplateSnapshot snapshot = adapter != null ? adapter.current() : null;
+        for (int t = 0; t < templates.length; t++) {
+            double[] template = snapshot != null ? snapshot.template(t) : templates[t];
+            System.arraycopy(template, 0, state.templates[t], 0, template.length);
+        }
+        state.templateVersion   = snapshot != null ? snapshot.getVersion() : 0;
+        state.detectorThreshold = detectorThreshold;
+        state.warm              = false;
+        if (state.frontEnd.length > 0 && !frontEndShared) {
+            frontEnd.saveState(state.frontEnd, 0);
+            DoubleRingBuffer window = speedTemplateWindow.getWindow();
+            System.arraycopy(window.array(), window.offset(), state.window, 0, window.capacity());
+            state.warm           = state.frontEnd[0] != 0;
+            state.timestampNanos = frontEnd.getPastTime();
+        }
+    }
+
+    //takes over the templates and threshold of a saved state and starts a new session. The front
+    //end and window of a warm state are taken over at the next sample if that is at most
+    //maxGapNanos after the saved one (e.g. after the activity was recreated), otherwise the window
+    //fills again; the state must not be changed until then. An engine that shares its front end in
+    //a FanOutPipeline only takes over the templates and threshold. Returns true if the warm state
+    //is kept for the next sample.
+    public boolean restoreState(DetectorState state, long maxGapNanos) {
+        checkLayout(state);
+        reset();
+        detectorThreshold = state.detectorThreshold;
+        if (adapter != null) {
+            adapter.restore(state.templates, state.templateVersion);
+            applySnapshot(adapter.current());
+        }
+        else {
+            for (int t = 0; t < templates.length; t++) {
+                System.arraycopy(state.templates[t], 0, templates[t], 0, templates[t].length);
+                matcher.setTemplate(t, templates[t]);
+            }
+        }
+        if (!state.warm || state.frontEnd.length == 0 || frontEndShared) {
+            return false;
+        }
+        warmStart            = state;
+        warmStartMaxGapNanos = maxGapNanos;
+        return true;
+    }
+
+    private void applyWarmStart(long timestampNanos) {
+        DetectorState state = warmStart;
+        warmStart = null;
+        long gap = timestampNanos - state.timestampNanos;
+        if (gap > 0 && gap <= warmStartMaxGapNanos) {
+            frontEnd.restoreState(state.frontEnd, 0, state.timestampNanos);
+            speedTemplateWindow.clear();
+            for (double value : state.window) {
+                speedTemplateWindow.add(value);
+            }
+        }
+    }
+
+    private void checkLayout(DetectorState state) {
+        boolean matches = state.templates.length == templates.length && state.frontEnd.length == warmStartSize()
+                && state.window.length == speedTemplateWindow.size();
+        for (int t = 0; matches && t < templates.length; t++) {
+            matches = state.templates[t].length == templates[t].length;
+        }
+        if (!matches) {
+            throw new IllegalArgumentException("The state was not made for this detector");
+        }
+    }
+
+    //takes over the templates that changed since the last applied snapshot
+    private void applySnapshot(TemplateSnapshot snapshot) {
+        for (int t = 0; t < templates.length; t++) {
+            double[] template = snapshot.template(t);
+            if (template != templates[t]) {
+                templates[t] = template;
+                matcher.setTemplate(t, template);
+            }
+        }
+        appliedSnapshot = snapshot;
+    }
+
+    //matcher of the configured matching mode for the first templatePoints values of the templates
+    static TemplateMatcher matcher(DetectorConfig config, double[][] templates) {
+        if (config.getMatchingMode() == DetectorConfig.MatchingMode.DTW) {
+            return new DtwMatcher(templates, config.getTemplatePoints(), config.getWarpingBand(),
+                    config.getCorrelationThreshold());
+        }
+        if (config.getMatchingMode() == DetectorConfig.MatchingMode.INDEXED) {
+            return new TemplateIndex(templates, config.getTemplatePoints(), config.getIndexSegments(),
+                    config.getCorrelationThreshold(), config.getTopMatches());
+        }
+        if (config.isMultiScale()) {
+            return new TemplatePyramid(templates, config.getTemplatePoints(), config.getTimeScales());
+        }
+        if (config.isEarlyAbandoning()) {
+            return new TemplateBank(templates, config.getTemplatePoints(), config.getCorrelationThreshold());
+        }
+        return new TemplateBank(templates, config.getTemplatePoints());
+    }
+
+    //maximum over all templates, a NaN correlation wins as with Collections.max
+    static double maxCorrelation(double[] correlations) {
+        double max = correlations[0];
+        for (int t = 1; t < correlations.length; t++) {
+            if (Double.compare(correlations[t], max) > 0) {
+                max = correlations[t];
+            }
+        }
+        return max;
+    }
+
+    //the template that correlates strictly better than all others, the last one on ties
+    static int bestTemplate(double[] correlations) {
+        for (int t = 0; t < correlations.length - 1; t++) {
+            boolean best = true;
+            for (int o = 0; o < correlations.length; o++) {
+                if (o != t && !(correlations[t] > correlations[o])) {
+                    best = false;
+                    break;
+                }
+            }
+            if (best) {
+                return t;
+            }
+        }
+        return correlations.length - 1;
+    }
+
+    //adds the detected window to its template and clears the window so that the same motion
+    //is not detected twice
+    static void adaptTemplate(DetectorConfig config, double[][] templates, TemplateMatcher matcher,
+                              int detected, WindowStatistics speedTemplateWindow) {
+        DoubleRingBuffer speedWindow = speedTemplateWindow.getWindow();
+        int windowPoints = matcher.getWindowPoints(detected);
+        adaptTemplate(config, templates, matcher, detected, speedWindow.array(),
+                speedWindow.offset() + speedWindow.capacity() - windowPoints, windowPoints);
+        speedTemplateWindow.clear();
+    }
+
+    //adds the window values window[offset .. offset + windowPoints) to the detected template, they
+    //are interpolated to the template points first if the window was matched at another time scale
+    static void adaptTemplate(DetectorConfig config, double[][] templates, TemplateMatcher matcher,
+                              int detected, double[] window, int offset, int windowPoints) {
+        double[] template = templates[detected];
+        int n = config.getTemplatePoints();
+        for (int i = 0; i < n; i++) {
+            double x = TemplatePyramid.interpolate(window, offset, windowPoints, i, n);
+            template[i] = template[i] + config.getAdaptationRate() * x;
+        }
+        matcher.setTemplate(detected, template);
+    }
+
+    public int getDetectionCount() {
+        return detectionCount;
+    }
+
+    //result of the latest sample
+    public int getLastDetection() {
+        return lastDetection;
+    }
+
+    //template of the most recent detection of the session, NO_DETECTION if there was none yet
+    public int getLastDetectedTemplate() {
+        return lastDetectedTemplate;
+    }
+
+    //duration of the most recent detection relative to its template, 1 unless matched at another
+    //time scale
+    public double getLastDetectedScale() {
+        return lastDetectedScale;
+    }
+
+    //version of the templates in use, 0 without a TemplateAdapter
+    public long getTemplateVersion() {
+        return appliedSnapshot != null ? appliedSnapshot.getVersion() : 0;
+    }
+
+    public float getLastMagnitude() {
+        return lastMagnitude;
+    }
+
+    public double getLastSpeedSmooth() {
+        return lastSpeedSmooth;
+    }
+
+    //highest template correlation of the latest sample that was matched (not updated during the
+    //refractory period); with early abandoning only an upper bound if no template passed
+    public double getLastCorrelation() {
+        return lastCorrelation;
+    }
+
+    public double getCorrelation(int templateIndex) {
+        return correlations[templateIndex];
+    }
+
+    //number of best templates above the correlation threshold at the latest matched sample, best
+    //first, only kept by indexed detectors (0 otherwise)
+    public int getTopMatchCount() {
+        return matcher instanceof TemplateIndex ? ((TemplateIndex) matcher).getMatchCount() : 0;
+    }
+
+    public int getTopMatch(int rank) {
+        return topMatches().getMatch(rank);
+    }
+
+    public double getTopMatchScore(int rank) {
+        return topMatches().getMatchScore(rank);
+    }
+
+    private TemplateIndex topMatches() {
+        if (!(matcher instanceof TemplateIndex)) {
+            throw new IllegalStateException("Only indexed detectors keep the top matches");
+        }
+        return (TemplateIndex) matcher;
+    }
+
+    public String getTemplateName(int templateIndex) {
+        return config.getTemplateName(templateIndex);
+    }
+
+    //current (adapted) template, copied
+    public double[] getTemplate(int templateIndex) {
+        return templates[templateIndex].clone();
+    }
+}
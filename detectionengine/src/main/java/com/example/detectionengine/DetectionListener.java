@@ -0,0 +1,15 @@
+/*
+Receives the detections of the detectors of a FanOutPipeline.
+
+Called on the thread that processes the samples, right after the detecting sample, so an
+implementation should only hand the result on (e.g. into a DetectionSnapshot).
+
+ */
+
+package com.example.detectionengine;
+
+public interface DetectionListener {
+
+    //detector is the index the detector was added at, engine its engine for further results
+    void onDetection(int detector, String name, DetectionEngine engine, int templateIndex, long timestampNanos);
+}
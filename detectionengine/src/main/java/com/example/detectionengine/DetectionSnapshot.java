@@ -0,0 +1,101 @@
+/*
+Latest state of a detector, handed from the sensor processing thread to the UI thread.
+
+The processing thread publishes after every sample; the UI copies the snapshot once per display
+frame. requestFrame() only returns true for the first sample after the last frameDone(), so the
+processing thread schedules at most one UI update per frame however fast samples arrive.
+
+Since the UI only sees one snapshot per frame, a detection is shown by comparing
+getDetectionCount() with the count of the previous frame instead of looking at the last sample.
+
+ */
+
+package com.example.detectionengine;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class DetectionSnapshot {
+
+    private final AtomicBoolean framePending = new AtomicBoolean(false);
+
+    private float x;
+    private float y;
+    private float z;
+    private long timestampNanos;
+    private int detectionCount;
+    private int lastDetectedTemplate = DetectionEngine.NO_DETECTION;
+    private double correlation;
+
+    //called by the processing thread after engine.process() or engine.processBatch()
+    public synchronized void publish(float x, float y, float z, long timestampNanos, DetectionEngine engine) {
+        this.x                    = x;
+        this.y                    = y;
+        this.z                    = z;
+        this.timestampNanos       = timestampNanos;
+        this.detectionCount       = engine.getDetectionCount();
+        this.correlation          = engine.getLastCorrelation();
+        this.lastDetectedTemplate = engine.getLastDetectedTemplate();
+    }
+
+    public synchronized void clear() {
+        x                    = 0f;
+        y                    = 0f;
+        z                    = 0f;
+        timestampNanos       = 0L;
+        detectionCount       = 0;
+        correlation          = 0.0;
+        lastDetectedTemplate = DetectionEngine.NO_DETECTION;
+    }
+
+    //consistent copy for the UI thread
+    public synchronized void copyTo(DetectionSnapshot target) {
+        synchronized (target) {
+            target.x                    = x;
+            target.y                    = y;
+            target.z                    = z;
+            target.timestampNanos       = timestampNanos;
+            target.detectionCount       = detectionCount;
+            target.correlation          = correlation;
+            target.lastDetectedTemplate = lastDetectedTemplate;
+        }
+    }
+
+    //true if the caller has to schedule a UI update, false if one is already pending
+    public boolean requestFrame() {
+        return framePending.compareAndSet(false, true);
+    }
+
+    //called by the UI when it has taken the snapshot of the current frame
+    public void frameDone() {
+        framePending.set(false);
+    }
+
+    public synchronized float getX() {
+        return x;
+    }
+
+    public synchronized float getY() {
+        return y;
+    }
+
+    public synchronized float getZ() {
+        return z;
+    }
+
+    public synchronized long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public synchronized int getDetectionCount() {
+        return detectionCount;
+    }
+
+    //template of the most recent detection, NO_DETECTION if there was none yet
+    public synchronized int getLastDetectedTemplate() {
+        return lastDetectedTemplate;
+    }
+
+    public synchronized double getCorrelation() {
+        return correlation;
+    }
+}
@@ -0,0 +1,446 @@
+/*
+Configuration of one template matching detector.
+
+A detector is described by its templates (one per detectable pattern), the number of template
+points that are matched against the incoming signal, the correlation threshold a window has to
+exceed, and the way the derivative of the accelerometer magnitude is formed. The step and gesture
+apps scale the magnitude difference by the time step (speed surrogate), while the shake app divides
+by it (jerk surrogate).
+
+Windows are matched by correlation as in the original apps (MatchingMode.CORRELATION) or by
+dynamic time warping within a band of warpingBand points (MatchingMode.DTW, see DtwMatcher).
+Detectors with a large vocabulary of templates match by correlation through an index that prunes
+most templates by lower bounds and keeps the topMatches best ones (MatchingMode.INDEXED, see
+TemplateIndex). With early abandoning set, correlation matching at the recorded scale stops scoring a
+template as soon as it can no longer exceed the threshold or the best template, with the same
+decisions (see TemplateBank).
+
+With several time scales set, correlation matching compares every template stretched or squeezed
+to each scale (see TemplatePyramid), so motions done slower or faster than recorded still match.
+
+A passing window is detected at once unless a peak lookahead is set, and matching goes on at the
+next sample unless a refractory period is set (see DecisionStage).
+
+The derivative is smoothed by a chain of filters (see FilterChain), by default the 3 point moving
+average of the apps.
+
+With a resampling period set, the magnitude is first resampled to that fixed period (see
+Resampler) and the derivative uses the fixed time step instead of the step between two events.
+
+A multi-channel detector also matches the x, y and z axes of the accelerometer (and optionally of
+the gyroscope) against per-axis templates, see ChannelTemplateBank. The axes go through the same
+derivative and filters as the magnitude.
+
+The presets below hold the templates that were recorded for the three apps.
+
+ */
+
+package com.example.detectionengine;
+
+public class DetectorConfig {
+
+    public enum DerivativeMode {
+        SCALED_BY_DT,   //(acc - pastAcc) * dt, used by step and gesture detection
+        DIVIDED_BY_DT   //(acc - pastAcc) / dt, used by shake detection
+    }
+
+    public enum MatchingMode {
+        CORRELATION,    //correlation of the fixed-length window, as in the apps
+        DTW,            //dynamic time warping, tolerates changes of tempo
+        INDEXED         //correlation, pruned by a TemplateIndex, for hundreds of templates
+    }
+
+    public enum Interpolation {
+        LINEAR,         //between the two inputs around a resampled timestamp
+        CUBIC           //cubic Hermite curve, smoother but one input interval later
+    }
+
+    public enum Channels {
+        MAGNITUDE(0),                   //only the magnitude, as in the apps
+        ACCELEROMETER(3),               //also the x, y and z axes of the accelerometer
+        ACCELEROMETER_GYROSCOPE(6);     //also the x, y and z axes of the accelerometer and the gyroscope
+
+        private final int axes;
+
+        Channels(int axes) {
+            this.axes = axes;
+        }
+
+        //number of axes matched besides the magnitude
+        public int getAxes() {
+            return axes;
+        }
+    }
+
+    private final String[] templateNames;
+    private final double[][] templates;
+    private final int templatePoints;
+    private final double correlationThreshold;
+    private final DerivativeMode derivativeMode;
+    private SignalFilter[] filters = {new MovingAverageFilter(3)};
+    private double adaptationRate = 0.2;
+    private MatchingMode matchingMode = MatchingMode.CORRELATION;
+    private int warpingBand = -1;
+    private int indexSegments = -1;
+    private int topMatches = 3;
+    private boolean earlyAbandoning = false;
+    private double[] timeScales = {1.0};
+    private int peakLookahead = 0;
+    private int refractoryPeriod = 0;
+    private long resamplingPeriodNanos = 0;
+    private Interpolation interpolation = Interpolation.LINEAR;
+    private Channels channels = Channels.MAGNITUDE;
+    private double[][][] axisTemplates = new double[0][][];
+
+    public DetectorConfig(String[] templateNames, double[][] templates, int templatePoints,
+                          double correlationThreshold, DerivativeMode derivativeMode) {
+        if (templateNames.length != templates.length || templates.length == 0) {
+            throw new IllegalArgumentException("Every template needs exactly one name");
+        }
+        if (templatePoints < 2) {
+            throw new IllegalArgumentException("At least two template points are needed");
+        }
+        for (double[] template : templates) {
+            if (template.length < templatePoints) {
+                throw new IllegalArgumentException("Template is shorter than " + templatePoints + " points");
+            }
+        }
+        this.templateNames        = templateNames.clone();
+        this.templates            = new double[templates.length][];
+        for (int i = 0; i < templates.length; i++) {
+            this.templates[i] = templates[i].clone();
+        }
+        this.templatePoints       = templatePoints;
+        this.correlationThreshold = correlationThreshold;
+        this.derivativeMode       = derivativeMode;
+    }
+
+    //number of derivative values averaged by the moving average filter, replaces the filter chain
+    //by that moving average
+    public DetectorConfig setSmoothingPoints(int smoothingPoints) {
+        if (smoothingPoints < 1) {
+            throw new IllegalArgumentException("Smoothing needs at least one point");
+        }
+        this.filters = new SignalFilter[]{new MovingAverageFilter(smoothingPoints)};
+        return this;
+    }
+
+    //stages applied to the derivative in order, every engine uses its own copies
+    public DetectorConfig setFilters(SignalFilter... filters) {
+        this.filters = filters.clone();
+        return this;
+    }
+
+    //weight of a detected window when it is added to the matching template
+    public DetectorConfig setAdaptationRate(double adaptationRate) {
+        this.adaptationRate = adaptationRate;
+        return this;
+    }
+
+    public DetectorConfig setMatchingMode(MatchingMode matchingMode) {
+        checkEarlyAbandoning(earlyAbandoning, matchingMode, timeScales, channels);
+        this.matchingMode = matchingMode;
+        return this;
+    }
+
+    //maximum shift in points between window and template for DTW matching (Sakoe-Chiba band)
+    public DetectorConfig setWarpingBand(int warpingBand) {
+        if (warpingBand < 0) {
+            throw new IllegalArgumentException("Warping band must not be negative");
+        }
+        this.warpingBand = warpingBand;
+        return this;
+    }
+
+    //number of segments the templates are summarized in for indexed matching, fewer prune less
+    //but cost less per template (see TemplateIndex)
+    public DetectorConfig setIndexSegments(int indexSegments) {
+        if (indexSegments < 1 || indexSegments > templatePoints) {
+            throw new IllegalArgumentException("Index segments must be between 1 and the template points");
+        }
+        this.indexSegments = indexSegments;
+        return this;
+    }
+
+    //number of best templates above the correlation threshold kept per sample by indexed matching
+    public DetectorConfig setTopMatches(int topMatches) {
+        if (topMatches < 1) {
+            throw new IllegalArgumentException("At least one match must be kept");
+        }
+        this.topMatches = topMatches;
+        return this;
+    }
+
+    //abandons the correlation of templates that cannot pass, for large banks and long templates
+    //where most windows are noise; the scores of rejected windows are then only upper bounds.
+    //Only for correlation matching of the magnitude at the recorded scale
+    public DetectorConfig setEarlyAbandoning(boolean earlyAbandoning) {
+        checkEarlyAbandoning(earlyAbandoning, matchingMode, timeScales, channels);
+        this.earlyAbandoning = earlyAbandoning;
+        return this;
+    }
+
+    //durations of the motion relative to the template that are matched, e.g. 0.7 to 1.4, for
+    //correlation matching (DTW warps the template instead)
+    public DetectorConfig setTimeScales(double... timeScales) {
+        if (timeScales.length == 0) {
+            throw new IllegalArgumentException("At least one time scale is needed");
+        }
+        for (double scale : timeScales) {
+            if (!(scale > 0)) {
+                throw new IllegalArgumentException("Time scales must be positive");
+            }
+        }
+        checkEarlyAbandoning(earlyAbandoning, matchingMode, timeScales, channels);
+        this.timeScales = timeScales.clone();
+        return this;
+    }
+
+    //samples a passing window waits for a better scoring one before it is detected
+    public DetectorConfig setPeakLookahead(int samples) {
+        if (samples < 0) {
+            throw new IllegalArgumentException("Lookahead must not be negative");
+        }
+        this.peakLookahead = samples;
+        return this;
+    }
+
+    //samples after a detection that are not matched, instead of clearing the window
+    public DetectorConfig setRefractoryPeriod(int samples) {
+        if (samples < 0) {
+            throw new IllegalArgumentException("Refractory period must not be negative");
+        }
+        this.refractoryPeriod = samples;
+        return this;
+    }
+
+    //resamples the magnitude to one sample every periodNanos before the derivative, 0 to use the
+    //event timestamps as the apps did
+    public DetectorConfig setResampling(long periodNanos, Interpolation interpolation) {
+        if (periodNanos < 0) {
+            throw new IllegalArgumentException("Sample period must not be negative");
+        }
+        this.resamplingPeriodNanos = periodNanos;
+        this.interpolation         = interpolation;
+        return this;
+    }
+
+    //matches the given axes besides the magnitude, axisTemplates[t][a] is the signal of axis a
+    //(accelerometer x, y, z, then gyroscope x, y, z) for template t, one for every template
+    public DetectorConfig setChannels(Channels channels, double[][]... axisTemplates) {
+        int expected = channels == Channels.MAGNITUDE ? 0 : templates.length;
+        if (axisTemplates.length != expected) {
+            throw new IllegalArgumentException("Expected the axis signals of " + expected + " templates");
+        }
+        double[][][] copies = new double[axisTemplates.length][][];
+        for (int t = 0; t < axisTemplates.length; t++) {
+            if (axisTemplates[t].length != channels.getAxes()) {
+                throw new IllegalArgumentException("Template " + t + " needs " + channels.getAxes() + " axis signals");
+            }
+            copies[t] = new double[channels.getAxes()][];
+            for (int a = 0; a < channels.getAxes(); a++) {
+                if (axisTemplates[t][a].length < templatePoints) {
+                    throw new IllegalArgumentException("Axis template is shorter than " + templatePoints + " points");
+                }
+                copies[t][a] = axisTemplates[t][a].clone();
+            }
+        }
+        checkEarlyAbandoning(earlyAbandoning, matchingMode, timeScales, channels);
+        this.channels      = channels;
+        this.axisTemplates = copies;
+        return this;
+    }
+
+    //early abandoning is done by TemplateBank, the other matchers would silently ignore it; checked
+    //before a setter changes the configuration, so a rejected value is not kept
+    private static void checkEarlyAbandoning(boolean earlyAbandoning, MatchingMode matchingMode,
+                                             double[] timeScales, Channels channels) {
+        if (earlyAbandoning && (matchingMode != MatchingMode.CORRELATION || isMultiScale(matchingMode, timeScales)
+                || channels != Channels.MAGNITUDE)) {
+            throw new IllegalStateException("Early abandoning only applies to correlation matching of the magnitude at the recorded scale");
+        }
+    }
+
+    public int getTemplateCount() {
+        return templates.length;
+    }
+
+    public String getTemplateName(int index) {
+        return templateNames[index];
+    }
+
+    //returns a copy, the engine adapts its own templates
+    public double[] getTemplate(int index) {
+        return templates[index].clone();
+    }
+
+    public int getTemplatePoints() {
+        return templatePoints;
+    }
+
+    public double getCorrelationThreshold() {
+        return correlationThreshold;
+    }
+
+    public DerivativeMode getDerivativeMode() {
+        return derivativeMode;
+    }
+
+    //new chain of the configured filters, without history
+    public FilterChain newFilterChain() {
+        return new FilterChain(filters);
+    }
+
+    //true if the front end of this detector computes the same values as the one of other, so that
+    //detectors can share it (see FanOutPipeline): same derivative, and moving averages of the same
+    //length or the very same filter objects
+    boolean hasSameFrontEnd(DetectorConfig other) {
+        if (derivativeMode != other.derivativeMode || filters.length != other.filters.length
+                || isResampled() || other.isResampled()) {
+            return false;
+        }
+        for (int i = 0; i < filters.length; i++) {
+            SignalFilter filter = filters[i], otherFilter = other.filters[i];
+            boolean sameAverage = filter instanceof MovingAverageFilter && otherFilter instanceof MovingAverageFilter
+                    && ((MovingAverageFilter) filter).size() == ((MovingAverageFilter) otherFilter).size();
+            if (filter != otherFilter && !sameAverage) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //sample rate of resampled detectors, for the coefficients of IIR filters
+    public double getSampleRateHz() {
+        if (!isResampled()) {
+            throw new IllegalStateException("Only resampled detectors have a fixed sample rate");
+        }
+        return 1e9 / resamplingPeriodNanos;
+    }
+
+    public double getAdaptationRate() {
+        return adaptationRate;
+    }
+
+    public MatchingMode getMatchingMode() {
+        return matchingMode;
+    }
+
+    //10% of the template points unless set
+    public int getWarpingBand() {
+        return warpingBand >= 0 ? warpingBand : Math.max(1, (templatePoints + 5) / 10);
+    }
+
+    //one segment per 5 template points unless set
+    public int getIndexSegments() {
+        return indexSegments >= 0 ? indexSegments : TemplateIndex.defaultSegments(templatePoints);
+    }
+
+    public int getTopMatches() {
+        return topMatches;
+    }
+
+    public boolean isEarlyAbandoning() {
+        return earlyAbandoning;
+    }
+
+    public double[] getTimeScales() {
+        return timeScales.clone();
+    }
+
+    //true if templates are correlated at other scales than the recorded one
+    public boolean isMultiScale() {
+        return isMultiScale(matchingMode, timeScales);
+    }
+
+    private static boolean isMultiScale(MatchingMode matchingMode, double[] timeScales) {
+        return matchingMode == MatchingMode.CORRELATION && (timeScales.length > 1 || timeScales[0] != 1.0);
+    }
+
+    public int getPeakLookahead() {
+        return peakLookahead;
+    }
+
+    public int getRefractoryPeriod() {
+        return refractoryPeriod;
+    }
+
+    //0 if the samples are not resampled
+    public long getResamplingPeriodNanos() {
+        return resamplingPeriodNanos;
+    }
+
+    public boolean isResampled() {
+        return resamplingPeriodNanos > 0;
+    }
+
+    public Interpolation getInterpolation() {
+        return interpolation;
+    }
+
+    public Channels getChannels() {
+        return channels;
+    }
+
+    public boolean isMultiChannel() {
+        return channels != Channels.MAGNITUDE;
+    }
+
+    //returns a copy of the signal of one axis of a template
+    public double[] getAxisTemplate(int index, int axis) {
+        return axisTemplates[index][axis].clone();
+    }
+
+    //template recorded for the step detector (only the first 14 points are matched)
+    public static DetectorConfig step() {
+        double[] templateSignal = { -0.124511,-0.14722985, -0.14286704, -0.06707362,
+                -0.05615815,-0.03482528, -0.00217015,  0.04454678,  0.0686863 ,  0.13771749,
+                0.16672203,  0.18137357,  0.05211326, -0.06255626, -0.12578879,-0.077148};
+        return new DetectorConfig(new String[]{"Step"}, new double[][]{templateSignal},
+                14, 0.7, DerivativeMode.SCALED_BY_DT)
+                .setFilters(new MovingAverageFilter(3));
+    }
+
+    //template recorded for the shake detector
+    public static DetectorConfig shake() {
+        double[] templateSignal = {
+                -3.30952551, -97.28523667, -28.46568939,   0.68370311,
+                51.94749017,  38.01577785,  34.54754804, -40.78960607,
+                -90.51392819, -66.43417981};
+        return new DetectorConfig(new String[]{"Shake"}, new double[][]{templateSignal},
+                templateSignal.length, 0.7, DerivativeMode.DIVIDED_BY_DT)
+                .setFilters(new MovingAverageFilter(3));
+    }
+
+    //templates recorded for the gesture detector: circle, square and triangle
+    public static DetectorConfig gesture() {
+        double[] circleTemplate = { 0.00969141,  0.00784496,  0.03088336,  0.04756067,  0.07052619,
+                0.0401853 , -0.00025768, -0.09020558, -0.09975169, -0.10242839,
+                -0.07698634, -0.06279815, -0.04915227, -0.00810394, -0.00379611,
+                0.03359246,  0.03856481,  0.1054514 ,  0.08210032,  0.10108479,
+                0.04927021,  0.06896833,  0.07461435,  0.07900467,  0.05565398,
+                0.01039143, -0.03061315, -0.06472117, -0.10499691, -0.11827443,
+                -0.10608554, -0.08973891, -0.06748583, -0.04535976, -0.00152234};
+
+        double[] squareTemplate = {0.00419627,  0.02140595,  0.04115705,  0.04133982, -0.01444644,
+                -0.03988721, -0.03227397, -0.00207788, -0.02129005, -0.04885056,
+                -0.0631281 , -0.08983067, -0.08167325, -0.0465717 ,  0.07003027,
+                0.13783668,  0.22794434,  0.16446736,  0.1433825 ,  0.01017048,
+                -0.05854553, -0.1328194 , -0.09377081, -0.01036964,  0.06931413,
+                0.04195654,  0.02418591, -0.01900421,  0.00120961, -0.02903992,
+                -0.08193207, -0.12744195, -0.13876107, -0.08331881, -0.04673043};
+
+        double[] triangleTemplate = {-0.04006087, -0.0724415 , -0.00600627,  0.04002379,  0.07363573,
+                0.0448149 ,  0.11911902,  0.12953733,  0.11576079, -0.00614756,
+                -0.0247129 , -0.10136406, -0.09530652, -0.10644339, -0.04243002,
+                -0.00642079,  0.03926032,  0.04981631,  0.07426349,  0.03971873,
+                0.03252332, -0.02726553, -0.02045063, -0.00534629,  0.02029409,
+                0.02553932,  0.03244879,  0.01680453,  0.00226621, -0.05226111,
+                -0.12199557, -0.12398746, -0.08488322, -0.01382969, -0.00752589};
+
+        return new DetectorConfig(new String[]{"Circle", "Square", "Triangle"},
+                new double[][]{circleTemplate, squareTemplate, triangleTemplate},
+                35, 0.75, DerivativeMode.SCALED_BY_DT)
+                .setFilters(new MovingAverageFilter(3));
+    }
+}
@@ -0,0 +1,63 @@
+/*
+State of a DetectionEngine that is kept across restarts of the app (see TemplateStore).
+
+    templates:    the adapted templates (all points, as in the configuration),
+    threshold:    the detector threshold,
+    version:      the template version (see TemplateAdapter),
+    warm state:   the front end (last magnitude and filter history), the template window and the
+                  timestamp of the last sample, so that detection goes on at the next sample
+                  instead of filling the window again.
+
+A state is sized for its engine by DetectionEngine.newState() and filled by saveState() on the
+processing thread without allocating; TemplateStore writes it on its own thread.
+
+ */
+
+package com.example.detectionengine;
+
+public class DetectorState {
+
+    final double[][] templates;
+    final double[] frontEnd;
+    final double[] window;
+    double detectorThreshold;
+    long templateVersion;
+    boolean warm;
+    long timestampNanos;
+
+    DetectorState(int[] templateLengths, int frontEndSize, int windowSize) {
+        this.templates = new double[templateLengths.length][];
+        for (int t = 0; t < templateLengths.length; t++) {
+            templates[t] = new double[templateLengths[t]];
+        }
+        this.frontEnd = new double[frontEndSize];
+        this.window   = new double[windowSize];
+    }
+
+    public int getTemplateCount() {
+        return templates.length;
+    }
+
+    //returns a copy
+    public double[] getTemplate(int index) {
+        return templates[index].clone();
+    }
+
+    public double getDetectorThreshold() {
+        return detectorThreshold;
+    }
+
+    public long getTemplateVersion() {
+        return templateVersion;
+    }
+
+    //true if the front end and window were saved, i.e. the engine had seen a sample
+    public boolean isWarm() {
+        return warm;
+    }
+
+    //time of the last sample the warm state includes
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+}
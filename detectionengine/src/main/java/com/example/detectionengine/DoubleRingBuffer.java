@@ -0,0 +1,67 @@
+/*
+Fixed-capacity circular window of primitive doubles.
+
+Adding a value drops the oldest one, so the buffer always holds exactly capacity values (zeros
+initially). Every value is written twice, at its slot and at slot + capacity, so that the whole
+window is always available as one contiguous range array()[offset() .. offset() + capacity()),
+ordered from oldest to newest. Readers can loop over it by index without copying anything.
+
+ */
+
+package com.example.detectionengine;
+
+public class DoubleRingBuffer {
+
+    private final double[] data;
+    private final int capacity;
+    private int head = 0; //slot of the oldest value
+
+    public DoubleRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.data     = new double[2 * capacity];
+    }
+
+    //appends a value and returns the value that dropped out of the window
+    public double add(double value) {
+        double dropped = data[head];
+        data[head] = value;
+        data[head + capacity] = value;
+        head = head + 1;
+        if (head == capacity) {
+            head = 0;
+        }
+        return dropped;
+    }
+
+    //value at position index, 0 being the oldest
+    public double get(int index) {
+        return data[head + index];
+    }
+
+    public double getLast() {
+        return data[head + capacity - 1];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    //backing array, the window starts at offset()
+    public double[] array() {
+        return data;
+    }
+
+    public int offset() {
+        return head;
+    }
+
+    //sets every value of the window
+    public void fill(double value) {
+        for (int i = 0; i < data.length; i++) {
+            data[i] = value;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+Template matching by dynamic time warping (DTW), for motions done faster or slower than the
+recorded template.
+
+Window and templates are z-normalized (mean 0, standard deviation 1), as the correlation coefficient
+is invariant to offset and scale. For z-normalized series of n points the squared Euclidean
+distance is 2n(1 - correlation), so every DTW distance d is reported as the warped correlation
+1 - d / 2n: without warping (band 0) it is the correlation of TemplateBank, with warping it is at
+least as high, and the correlation threshold of the detector applies unchanged.
+
+The warping path is restricted to a Sakoe-Chiba band of warpingBand points, O(n * band) per
+template instead of O(n^2). Most windows are noise and are rejected before the full DTW:
+    LB_Kim:    the first and last points are always matched to each other, O(1),
+    LB_Keogh:  distance of the window to the envelope of the template within the band, O(n),
+    DTW:       abandoned as soon as a row of the cost matrix plus the LB_Keogh of the remaining
+               rows exceeds the cutoff.
+The cutoff is the distance of the correlation threshold, or the distance of the best template so
+far if that is smaller. A rejected template gets the score of its lower bound, which is an upper
+bound of its real score and below the threshold or the best template, so the detection and the
+best template are exactly those of a full DTW of every template.
+
+ */
+
+package com.example.detectionengine;
+
+public class DtwMatcher implements TemplateMatcher {
+
+    private final int n;
+    private final int band;
+    private final int templateCount;
+    private final double maxDistance;       //distance of a score equal to the correlation threshold
+    private final double[][] templates;     //z-normalized, NaN for a constant template
+    private final double[][] upper;         //envelope of the templates within the band
+    private final double[][] lower;
+    private final double[] window;          //z-normalized window
+    private final double[] lowerBoundTail;  //LB_Keogh of rows i .. n-1
+    private double[] previousRow;
+    private double[] currentRow;
+
+    //the first n values of every template are matched
+    public DtwMatcher(double[][] templates, int n, int band, double correlationThreshold) {
+        this.n              = n;
+        this.band           = Math.min(band, n - 1);
+        this.templateCount  = templates.length;
+        this.maxDistance    = 2 * n * (1 - correlationThreshold);
+        this.templates      = new double[templateCount][n];
+        this.upper          = new double[templateCount][n];
+        this.lower          = new double[templateCount][n];
+        this.window         = new double[n];
+        this.lowerBoundTail = new double[n + 1];
+        this.previousRow    = new double[n];
+        this.currentRow     = new double[n];
+        for (int t = 0; t < templateCount; t++) {
+            setTemplate(t, templates[t]);
+        }
+    }
+
+    @Override
+    public void setTemplate(int index, double[] template) {
+        double sum = 0, squareSum = 0;
+        for (int i = 0; i < n; i++) {
+            sum       = sum + template[i];
+            squareSum = squareSum + template[i] * template[i];
+        }
+        double mean = sum / n;
+        double deviation = Math.sqrt(n * squareSum - sum * sum) / n;
+        double[] normalized = templates[index];
+        for (int i = 0; i < n; i++) {
+            //a constant template has no correlation with anything, as in correlationCoefficient()
+            normalized[i] = deviation > 0 ? (template[i] - mean) / deviation : Double.NaN;
+        }
+        for (int i = 0; i < n; i++) {
+            double max = Double.NEGATIVE_INFINITY, min = Double.POSITIVE_INFINITY;
+            for (int j = Math.max(0, i - band); j <= Math.min(n - 1, i + band); j++) {
+                max = Math.max(max, normalized[j]);
+                min = Math.min(min, normalized[j]);
+            }
+            upper[index][i] = max;
+            lower[index][i] = min;
+        }
+    }
+
+    //writes the warped correlation of the window with every template into scores
+    @Override
+    public void score(WindowStatistics stats, double[] scores) {
+        double sum_X = stats.getSum();
+        double windowVariance = n * stats.getSquareSum() - sum_X * sum_X;
+        //negated so that a NaN variance (infinite window values) gives NaN scores as well
+        if (!(windowVariance > 0)) {
+            for (int t = 0; t < templateCount; t++) {
+                scores[t] = Double.NaN;
+            }
+            return;
+        }
+        double mean = sum_X / n;
+        double deviation = Math.sqrt(windowVariance) / n;
+        double[] data = stats.getWindow().array();
+        int offset = stats.getWindow().offset();
+        for (int i = 0; i < n; i++) {
+            window[i] = (data[offset + i] - mean) / deviation;
+        }
+
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int t = 0; t < templateCount; t++) {
+            if (Double.isNaN(templates[t][0])) {
+                scores[t] = Double.NaN;
+                continue;
+            }
+            double cutoff = Math.min(maxDistance, bestDistance);
+            double distance = lowerBoundKim(templates[t]);
+            if (distance <= cutoff) {
+                distance = lowerBoundKeogh(upper[t], lower[t]);
+                if (distance <= cutoff) {
+                    distance = distance(templates[t], cutoff);
+                    if (distance <= cutoff) {
+                        bestDistance = distance;
+                    }
+                }
+            }
+            scores[t] = 1 - distance / (2 * n);
+        }
+    }
+
+    @Override
+    public int getWindowPoints(int templateIndex) {
+        return n;
+    }
+
+    private double lowerBoundKim(double[] template) {
+        double first = window[0] - template[0];
+        double last = window[n - 1] - template[n - 1];
+        return first * first + last * last;
+    }
+
+    //also fills lowerBoundTail for abandoning the DTW
+    private double lowerBoundKeogh(double[] upper, double[] lower) {
+        lowerBoundTail[n] = 0;
+        for (int i = n - 1; i >= 0; i--) {
+            double x = window[i];
+            double d = 0;
+            if (x > upper[i]) {
+                d = x - upper[i];
+            }
+            else if (x < lower[i]) {
+                d = x - lower[i];
+            }
+            lowerBoundTail[i] = lowerBoundTail[i + 1] + d * d;
+        }
+        return lowerBoundTail[0];
+    }
+
+    //DTW distance within the band, or a lower bound of it above cutoff if abandoned
+    private double distance(double[] template, double cutoff) {
+        double infinity = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < n; j++) {
+            previousRow[j] = infinity;
+            currentRow[j]  = infinity;
+        }
+        for (int i = 0; i < n; i++) {
+            int from = Math.max(0, i - band);
+            int to = Math.min(n - 1, i + band);
+            if (from > 0) {
+                currentRow[from - 1] = infinity;
+            }
+            double rowMin = infinity;
+            for (int j = from; j <= to; j++) {
+                double d = window[i] - template[j];
+                double cost;
+                if (i == 0 && j == 0) {
+                    cost = 0;
+                }
+                else {
+                    cost = previousRow[j];
+                    if (j > 0) {
+                        cost = Math.min(cost, Math.min(previousRow[j - 1], currentRow[j - 1]));
+                    }
+                }
+                cost = cost + d * d;
+                currentRow[j] = cost;
+                rowMin = Math.min(rowMin, cost);
+            }
+            //every later row is passed at least once and costs at least its LB_Keogh part
+            double bound = rowMin + lowerBoundTail[i + 1];
+            if (bound > cutoff) {
+                return bound;
+            }
+            double[] swap = previousRow;
+            previousRow = currentRow;
+            currentRow  = swap;
+        }
+        return previousRow[n - 1];
+    }
+}
@@ -0,0 +1,171 @@
+/*
+Several detectors (e.g. step, shake and gesture) running on one accelerometer stream.
+
+Run side by side, every detector would compute the magnitude of every sample and run it through
+its own derivative and moving average, although step and gesture detection use exactly the same
+ones. The pipeline computes the magnitude once per sample and keeps one SignalFrontEnd for every
+group of detectors with the same front end (see DetectorConfig.hasSameFrontEnd()); each detector
+then only does its own matching and decision on the shared smoothed derivative. The results are
+the same as running every detector on its own.
+
+    FanOutPipeline pipeline = new FanOutPipeline();
+    pipeline.addDetector("Step", stepEngine);
+    pipeline.addDetector("Shake", shakeEngine);
+    pipeline.setListener(listener);
+    pipeline.processBatch(xyz, timestamps, count, magnitudes);
+
+Resampled and multi-channel detectors keep their own front end and get the raw samples.
+Detectors are added before the first sample, the pipeline is used from one thread.
+
+ */
+
+package com.example.detectionengine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FanOutPipeline {
+
+    //in place of a front end index: detectors that get the magnitude or the axes
+    private static final int OWN_FRONT_END = -1;
+    private static final int AXES = -2;
+
+    private final List<String> names = new ArrayList<>();
+    private final List<DetectionEngine> engineList = new ArrayList<>();
+    private final List<SignalFrontEnd> frontEndList = new ArrayList<>();
+    private final List<DetectorConfig> frontEndConfigs = new ArrayList<>();
+    private DetectionEngine[] engines = new DetectionEngine[0];
+    private SignalFrontEnd[] frontEnds = new SignalFrontEnd[0];
+    private int[] frontEndOf = new int[0];
+    private double[] speedSmooth = new double[0];
+    private DetectionListener listener;
+
+    //adds a detector, returns its index. Its own front end is only used if no other detector has
+    //the same one.
+    public int addDetector(String name, DetectionEngine engine) {
+        DetectorConfig config = engine.getConfig();
+        int frontEnd = config.isMultiChannel() ? AXES : OWN_FRONT_END;
+        if (!config.isResampled() && !config.isMultiChannel()) {
+            for (int f = 0; f < frontEndConfigs.size() && frontEnd == OWN_FRONT_END; f++) {
+                if (config.hasSameFrontEnd(frontEndConfigs.get(f))) {
+                    frontEnd = f;
+                }
+            }
+            if (frontEnd == OWN_FRONT_END) {
+                frontEnd = frontEndList.size();
+                frontEndList.add(new SignalFrontEnd(config));
+                frontEndConfigs.add(config);
+            }
+        }
+        if (frontEnd >= 0) {
+            engine.shareFrontEnd();
+        }
+        names.add(name);
+        engineList.add(engine);
+
+        //arrays for the per sample loop
+        int index = engines.length;
+        engines     = engineList.toArray(new DetectionEngine[0]);
+        frontEnds   = frontEndList.toArray(new SignalFrontEnd[0]);
+        speedSmooth = new double[frontEnds.length];
+        int[] groups = new int[index + 1];
+        System.arraycopy(frontEndOf, 0, groups, 0, index);
+        groups[index] = frontEnd;
+        frontEndOf    = groups;
+        return index;
+    }
+
+    public void setListener(DetectionListener listener) {
+        this.listener = listener;
+    }
+
+    //processes one accelerometer sample for all detectors, returns the number of detections
+    public int process(float x, float y, float z, long timestampNanos) {
+        return process(x, y, z, SignalFrontEnd.magnitude(x, y, z), timestampNanos, true);
+    }
+
+    //processes one sample of the magnitude without gravity (e.g. of a recorded trace), not for
+    //multi-channel detectors
+    public int processMagnitude(float accMagAbs, long timestampNanos) {
+        return process(0f, 0f, 0f, accMagAbs, timestampNanos, false);
+    }
+
+    private int process(float x, float y, float z, float accMagAbs, long timestampNanos, boolean hasAxes) {
+        int detections = 0;
+        for (int f = 0; f < frontEnds.length; f++) {
+            speedSmooth[f] = frontEnds[f].process(accMagAbs, timestampNanos);
+        }
+        for (int d = 0; d < engines.length; d++) {
+            int group = frontEndOf[d];
+            int detected;
+            if (group >= 0) {
+                detected = engines[d].processShared(accMagAbs, speedSmooth[group], timestampNanos);
+            }
+            else if (group == OWN_FRONT_END || !hasAxes) {
+                detected = engines[d].processMagnitude(accMagAbs, timestampNanos);
+            }
+            else {
+                detected = engines[d].process(x, y, z, timestampNanos);
+            }
+            if (detected != DetectionEngine.NO_DETECTION) {
+                detections = detections + 1;
+                if (listener != null) {
+                    listener.onDetection(d, names.get(d), engines[d], detected, timestampNanos);
+                }
+            }
+        }
+        return detections;
+    }
+
+    //processes count samples, xyz holds x, y, z of every sample one after the other (as
+    //DetectionEngine.processBatch()), magnitudes receives the magnitudes if not null.
+    //Returns the number of detections of all detectors.
+    public int processBatch(float[] xyz, long[] timestamps, int count, float[] magnitudes) {
+        int detections = 0;
+        for (int i = 0, j = 0; i < count; i++, j += 3) {
+            float accMagAbs = SignalFrontEnd.magnitude(xyz[j], xyz[j + 1], xyz[j + 2]);
+            if (magnitudes != null) {
+                magnitudes[i] = accMagAbs;
+            }
+            detections = detections + process(xyz[j], xyz[j + 1], xyz[j + 2], accMagAbs, timestamps[i], true);
+        }
+        return detections;
+    }
+
+    //starts a new detection session of all detectors, see DetectionEngine.reset()
+    public void reset() {
+        for (SignalFrontEnd frontEnd : frontEnds) {
+            frontEnd.reset();
+        }
+        for (DetectionEngine engine : engines) {
+            engine.reset();
+        }
+    }
+
+    //continues all detectors after a gap in the samples, see DetectionEngine.resume()
+    public void resume() {
+        for (SignalFrontEnd frontEnd : frontEnds) {
+            frontEnd.reset();
+        }
+        for (DetectionEngine engine : engines) {
+            engine.resume();
+        }
+    }
+
+    public int getDetectorCount() {
+        return engines.length;
+    }
+
+    public String getName(int detector) {
+        return names.get(detector);
+    }
+
+    public DetectionEngine getEngine(int detector) {
+        return engines[detector];
+    }
+
+    //number of front ends the pipeline computes per sample for the detectors sharing them
+    public int getFrontEndCount() {
+        return frontEnds.length;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+In-place iterative radix-2 complex FFT of a fixed power of two size.
+
+The bit reversal permutation and the twiddle factors are computed once in the constructor, so a
+transform does not allocate. Real and imaginary parts are kept in separate double arrays.
+
+ */
+
+package com.example.detectionengine;
+
+public class Fft {
+
+    private final int size;
+    private final int[] reversed;
+    private final double[] cos;
+    private final double[] sin;
+
+    public Fft(int size) {
+        if (size < 2 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of two, was " + size);
+        }
+        this.size     = size;
+        this.reversed = new int[size];
+        int bits = Integer.numberOfTrailingZeros(size);
+        for (int i = 0; i < size; i++) {
+            reversed[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        this.cos = new double[size / 2];
+        this.sin = new double[size / 2];
+        for (int i = 0; i < size / 2; i++) {
+            cos[i] = Math.cos(2 * Math.PI * i / size);
+            sin[i] = Math.sin(2 * Math.PI * i / size);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forward(double[] re, double[] im) {
+        transform(re, im, -1);
+    }
+
+    //inverse transform, scaled by 1 / size
+    public void inverse(double[] re, double[] im) {
+        transform(re, im, 1);
+        double scale = 1.0 / size;
+        for (int i = 0; i < size; i++) {
+            re[i] = re[i] * scale;
+            im[i] = im[i] * scale;
+        }
+    }
+
+    private void transform(double[] re, double[] im, int sign) {
+        for (int i = 0; i < size; i++) {
+            int j = reversed[i];
+            if (j > i) {
+                double t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+            }
+        }
+        for (int length = 2; length <= size; length = length * 2) {
+            int half = length / 2;
+            int step = size / length;
+            for (int start = 0; start < size; start = start + length) {
+                for (int k = 0; k < half; k++) {
+                    double wr = cos[k * step];
+                    double wi = sign * sin[k * step];
+                    int a = start + k;
+                    int b = a + half;
+                    double xr = re[b] * wr - im[b] * wi;
+                    double xi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] = re[a] + xr;
+                    im[a] = im[a] + xi;
+                }
+            }
+        }
+    }
+}
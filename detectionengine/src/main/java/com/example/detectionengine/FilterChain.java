@@ -0,0 +1,79 @@
+/*
+Filters applied one after the other to every sample.
+
+The chain replaces the fixed moving average of the apps. It is built from the stages declared in
+DetectorConfig.setFilters():
+    MovingAverageFilter:  mean of the last n samples,
+    Biquad:               second order IIR section (low-pass, high-pass or band-pass),
+    DcBlocker:            removes the constant offset.
+An empty chain passes the samples through unchanged.
+
+ */
+
+package com.example.detectionengine;
+
+public class FilterChain implements SignalFilter {
+
+    private final SignalFilter[] stages;
+
+    //the chain uses copies of the stages
+    public FilterChain(SignalFilter... stages) {
+        this.stages = new SignalFilter[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            this.stages[i] = stages[i].copy();
+        }
+    }
+
+    @Override
+    public double filter(double value) {
+        for (int i = 0; i < stages.length; i++) {
+            value = stages[i].filter(value);
+        }
+        return value;
+    }
+
+    @Override
+    public void reset() {
+        for (SignalFilter stage : stages) {
+            stage.reset();
+        }
+    }
+
+    @Override
+    public FilterChain copy() {
+        return new FilterChain(stages);
+    }
+
+    @Override
+    public int stateSize() {
+        int size = 0;
+        for (SignalFilter stage : stages) {
+            size = size + stage.stateSize();
+        }
+        return size;
+    }
+
+    @Override
+    public void saveState(double[] state, int offset) {
+        for (SignalFilter stage : stages) {
+            stage.saveState(state, offset);
+            offset = offset + stage.stateSize();
+        }
+    }
+
+    @Override
+    public void restoreState(double[] state, int offset) {
+        for (SignalFilter stage : stages) {
+            stage.restoreState(state, offset);
+            offset = offset + stage.stateSize();
+        }
+    }
+
+    public int size() {
+        return stages.length;
+    }
+
+    public SignalFilter getStage(int index) {
+        return stages[index];
+    }
+}
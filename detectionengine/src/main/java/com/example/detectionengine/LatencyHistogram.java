@@ -0,0 +1,107 @@
+/*
+Histogram of durations in nanoseconds with fixed, preallocated buckets, so recording does not
+allocate.
+
+The buckets are log-linear: values below 4 ns get a bucket each, above that every power of two
+is split into 4 buckets of equal width, so a recorded value is known to within 25% from 4 ns up
+to the largest long, in 248 buckets. Count, sum, minimum and maximum are kept exactly.
+
+Not thread safe, PipelineMetrics synchronizes around it.
+
+ */
+
+package com.example.detectionengine;
+
+import java.util.Arrays;
+
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+    static final int BUCKETS = 62 * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count = 0;
+    private long sum = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    //negative durations (e.g. from clocks of different devices) are recorded as 0
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        int bucket = bucket(value);
+        counts[bucket] = counts[bucket] + 1;
+        count = count + 1;
+        sum   = sum + value;
+        min   = Math.min(min, value);
+        max   = Math.max(max, value);
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (msb - 2)) & (SUB_BUCKETS - 1);
+        return (msb - 1) * SUB_BUCKETS + sub;
+    }
+
+    //smallest value of a bucket
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int msb = bucket / SUB_BUCKETS + 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (msb - 2);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum   = 0;
+        min   = Long.MAX_VALUE;
+        max   = Long.MIN_VALUE;
+    }
+
+    public void copyTo(LatencyHistogram target) {
+        System.arraycopy(counts, 0, target.counts, 0, BUCKETS);
+        target.count = count;
+        target.sum   = sum;
+        target.min   = min;
+        target.max   = max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    //0 if nothing was recorded
+    public long getMin() {
+        return count > 0 ? min : 0;
+    }
+
+    public long getMax() {
+        return count > 0 ? max : 0;
+    }
+
+    public double getMean() {
+        return count > 0 ? (double) sum / count : 0;
+    }
+
+    //upper estimate of the given percentile (0 to 100): the upper end of the bucket that holds it,
+    //at most the maximum
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen = seen + counts[b];
+            if (seen >= rank) {
+                long upper = b + 1 < BUCKETS ? lowerBound(b + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(upper, max);
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+Moving average over the last n samples, the smoothing of the original apps.
+
+The window starts with zeros. Short windows (up to DIRECT_SUM_POINTS) are summed directly from the
+oldest to the newest value, which costs no more than a running sum and gives exactly the results of
+the apps' loop. Longer windows keep a running sum, O(1) per sample whatever n is; as in
+WindowStatistics the sum is recomputed once every n samples against rounding errors, and whenever
+a non-finite value leaves the window.
+
+ */
+
+package com.example.detectionengine;
+
+public class MovingAverageFilter implements SignalFilter {
+
+    static final int DIRECT_SUM_POINTS = 4;
+
+    private final int n;
+    private final DoubleRingBuffer window;
+    private double sum = 0;
+    private int samplesSinceResync = 0;
+
+    public MovingAverageFilter(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Moving average needs at least one point");
+        }
+        this.n      = n;
+        this.window = new DoubleRingBuffer(n);
+    }
+
+    @Override
+    public double filter(double value) {
+        double dropped = window.add(value);
+        if (n <= DIRECT_SUM_POINTS) {
+            return directSum() / n;
+        }
+        samplesSinceResync = samplesSinceResync + 1;
+        if (samplesSinceResync == n || Double.isNaN(dropped) || Double.isInfinite(dropped)) {
+            sum                = directSum();
+            samplesSinceResync = 0;
+        }
+        else {
+            sum = sum + value - dropped;
+        }
+        return sum / n;
+    }
+
+    private double directSum() {
+        double[] data = window.array();
+        int offset = window.offset();
+        double newSum = 0;
+        for (int i = 0; i < n; i++) {
+            newSum = newSum + data[offset + i];
+        }
+        return newSum;
+    }
+
+    @Override
+    public void reset() {
+        window.fill(0.0);
+        sum                = 0;
+        samplesSinceResync = 0;
+    }
+
+    @Override
+    public MovingAverageFilter copy() {
+        return new MovingAverageFilter(n);
+    }
+
+    //the last n samples, oldest first
+    @Override
+    public int stateSize() {
+        return n;
+    }
+
+    @Override
+    public void saveState(double[] state, int offset) {
+        System.arraycopy(window.array(), window.offset(), state, offset, n);
+    }
+
+    @Override
+    public void restoreState(double[] state, int offset) {
+        for (int i = 0; i < n; i++) {
+            window.add(state[offset + i]);
+        }
+        sum                = directSum();
+        samplesSinceResync = 0;
+    }
+
+    public int size() {
+        return n;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+Built-in instrumentation of the detection pipeline.
+
+    stage histograms:   time spent per sample in derivative, smoothing, correlation, range
+                        check and adaptation (recorded by a DetectionEngine given to
+                        setMetrics()), and per frame in the UI update and per batch in log I/O
+                        (recorded by the apps),
+    decision latency:   from the timestamp of a sensor event to the time its sample was decided,
+                        both in the sensor timebase (elapsedRealtimeNanos() on Android),
+    sample counters:    samples, duplicate samples (same timestamp as the previous one), late
+                        samples (timestamp before the previous one) and dropped samples (missing
+                        in a gap of more than 1.5 expected periods).
+
+All histograms are LatencyHistograms with fixed buckets, so recording does not allocate. Recording
+and snapshot() are synchronized, so the UI thread can record its stage and any thread can take a
+snapshot while the sensor thread records; the getters are meant for snapshots.
+
+An engine without metrics only pays a null check per stage.
+
+ */
+
+package com.example.detectionengine;
+
+import java.util.Locale;
+
+public class PipelineMetrics {
+
+    public enum Stage {
+        DERIVATIVE,
+        SMOOTHING,
+        CORRELATION,
+        RANGE_CHECK,
+        ADAPTATION,
+        UI,
+        LOG_IO
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGES.length];
+    private final LatencyHistogram decisionLatency = new LatencyHistogram();
+    private long expectedPeriodNanos;
+    private long samples = 0;
+    private long duplicateSamples = 0;
+    private long lateSamples = 0;
+    private long droppedSamples = 0;
+    private long lastTimestamp;
+    private boolean streaming = false; //false until the first sample after a (re)start
+
+    //samples are expected about every expectedPeriodNanos, 0 to not count dropped samples
+    public PipelineMetrics(long expectedPeriodNanos) {
+        if (expectedPeriodNanos < 0) {
+            throw new IllegalArgumentException("Expected period must not be negative");
+        }
+        this.expectedPeriodNanos = expectedPeriodNanos;
+        for (int s = 0; s < stages.length; s++) {
+            stages[s] = new LatencyHistogram();
+        }
+    }
+
+    //e.g. when the sampling rate is changed (see SamplingRateController)
+    public synchronized void setExpectedPeriodNanos(long expectedPeriodNanos) {
+        this.expectedPeriodNanos = expectedPeriodNanos;
+    }
+
+    public synchronized void record(Stage stage, long nanos) {
+        stages[stage.ordinal()].record(nanos);
+    }
+
+    //counts the samples of a batch and records their decision latency, decisionTimeNanos is the
+    //time the last of them was processed
+    public synchronized void endBatch(long[] timestamps, int count, long decisionTimeNanos) {
+        for (int i = 0; i < count; i++) {
+            long timestamp = timestamps[i];
+            if (streaming) {
+                long gap = timestamp - lastTimestamp;
+                if (gap == 0) {
+                    duplicateSamples = duplicateSamples + 1;
+                }
+                else if (gap < 0) {
+                    lateSamples = lateSamples + 1;
+                }
+                else if (expectedPeriodNanos > 0 && 2 * gap > 3 * expectedPeriodNanos) {
+                    droppedSamples = droppedSamples + (gap + expectedPeriodNanos / 2) / expectedPeriodNanos - 1;
+                }
+            }
+            if (!streaming || timestamp > lastTimestamp) {
+                lastTimestamp = timestamp;
+            }
+            streaming = true;
+            samples = samples + 1;
+            decisionLatency.record(decisionTimeNanos - timestamp);
+        }
+    }
+
+    //the next sample starts a new stream, so the gap before it is not counted as dropped samples,
+    //e.g. after a pause or a change of the sampling rate. The recorded values are kept.
+    public synchronized void restart() {
+        streaming = false;
+    }
+
+    public synchronized void reset() {
+        for (LatencyHistogram stage : stages) {
+            stage.reset();
+        }
+        decisionLatency.reset();
+        samples          = 0;
+        duplicateSamples = 0;
+        lateSamples      = 0;
+        droppedSamples   = 0;
+        streaming        = false;
+    }
+
+    //consistent copy of all values, to be read or reported on any thread
+    public synchronized PipelineMetrics snapshot() {
+        PipelineMetrics copy = new PipelineMetrics(expectedPeriodNanos);
+        for (int s = 0; s < stages.length; s++) {
+            stages[s].copyTo(copy.stages[s]);
+        }
+        decisionLatency.copyTo(copy.decisionLatency);
+        copy.samples          = samples;
+        copy.duplicateSamples = duplicateSamples;
+        copy.lateSamples      = lateSamples;
+        copy.droppedSamples   = droppedSamples;
+        copy.lastTimestamp    = lastTimestamp;
+        copy.streaming        = streaming;
+        return copy;
+    }
+
+    public LatencyHistogram getStage(Stage stage) {
+        return stages[stage.ordinal()];
+    }
+
+    public LatencyHistogram getDecisionLatency() {
+        return decisionLatency;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public long getDuplicateSamples() {
+        return duplicateSamples;
+    }
+
+    public long getLateSamples() {
+        return lateSamples;
+    }
+
+    public long getDroppedSamples() {
+        return droppedSamples;
+    }
+
+    //text report of a snapshot, durations in microseconds
+    public String report() {
+        PipelineMetrics snapshot = snapshot();
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "%-16s %10s %10s %10s %10s %10s%n",
+                "stage [us]", "count", "mean", "p50", "p99", "max"));
+        for (Stage stage : STAGES) {
+            appendRow(report, stage.name().toLowerCase(Locale.US), snapshot.getStage(stage));
+        }
+        appendRow(report, "decision latency", snapshot.decisionLatency);
+        report.append(String.format(Locale.US, "samples %d, dropped %d, late %d, duplicate %d%n",
+                snapshot.samples, snapshot.droppedSamples, snapshot.lateSamples, snapshot.duplicateSamples));
+        return report.toString();
+    }
+
+    private static void appendRow(StringBuilder report, String name, LatencyHistogram histogram) {
+        report.append(String.format(Locale.US, "%-16s %10d %10.1f %10.1f %10.1f %10.1f%n", name,
+                histogram.getCount(), histogram.getMean() / 1e3, histogram.getPercentile(50) / 1e3,
+                histogram.getPercentile(99) / 1e3, histogram.getMax() / 1e3));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+Accelerometer magnitude trace as recorded by the apps (data_step.csv, data_shake.csv,
+data_gesture.csv): one "acc_mag_abs,event_time" line per sample.
+
+ */
+
+package com.example.detectionengine;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class RecordedTrace {
+
+    private final float[] magnitudes;
+    private final long[] timestamps;
+    private final int count;
+
+    public RecordedTrace(float[] magnitudes, long[] timestamps, int count) {
+        this.magnitudes = magnitudes;
+        this.timestamps = timestamps;
+        this.count      = count;
+    }
+
+    public static RecordedTrace readCsv(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return readCsv(in);
+        }
+    }
+
+    public static RecordedTrace readCsv(InputStream in) throws IOException {
+        float[] magnitudes = new float[1024];
+        long[] timestamps = new long[1024];
+        int count = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber = lineNumber + 1;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int comma = line.indexOf(',');
+            if (comma < 0) {
+                throw new IOException("Line " + lineNumber + " is not acc_mag_abs,event_time: " + line);
+            }
+            if (count == magnitudes.length) {
+                magnitudes = Arrays.copyOf(magnitudes, 2 * count);
+                timestamps = Arrays.copyOf(timestamps, 2 * count);
+            }
+            try {
+                magnitudes[count] = Float.parseFloat(line.substring(0, comma));
+                timestamps[count] = Long.parseLong(line.substring(comma + 1).trim());
+            }
+            catch (NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + " is not acc_mag_abs,event_time: " + line, e);
+            }
+            count = count + 1;
+        }
+        return new RecordedTrace(magnitudes, timestamps, count);
+    }
+
+    public float[] getMagnitudes() {
+        return magnitudes;
+    }
+
+    public long[] getTimestamps() {
+        return timestamps;
+    }
+
+    public int size() {
+        return count;
+    }
+}
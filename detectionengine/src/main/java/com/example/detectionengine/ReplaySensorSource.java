@@ -0,0 +1,73 @@
+/*
+SensorSource that replays a recorded trace at the requested sampling period.
+
+The trace should be recorded at least at the fastest period that will be requested. Of its samples
+only those are delivered that are at least one period after the previously delivered one, as a
+sensor running at the lower rate would have delivered them. The number of delivered samples shows
+how much work a rate policy saves.
+
+    while (source.next()) {
+        controller.onSample(source.getMagnitude(), source.getTimestampNanos());
+        ...
+    }
+
+ */
+
+package com.example.detectionengine;
+
+public class ReplaySensorSource implements SensorSource {
+
+    private final RecordedTrace trace;
+    private int periodUs;
+    private int index = -1;
+    private long lastDelivered;
+    private long delivered = 0;
+
+    public ReplaySensorSource(RecordedTrace trace) {
+        this.trace = trace;
+    }
+
+    @Override
+    public void setSamplingPeriodUs(int periodUs) {
+        this.periodUs = periodUs;
+    }
+
+    @Override
+    public int getSamplingPeriodUs() {
+        return periodUs;
+    }
+
+    //advances to the next sample due at the current period, false at the end of the trace
+    public boolean next() {
+        long[] timestamps = trace.getTimestamps();
+        long periodNanos = periodUs * 1000L;
+        //a sensor keeps its rate within a few percent, so samples slightly early are taken as due
+        long due = lastDelivered + periodNanos - periodNanos / 8;
+        do {
+            index = index + 1;
+        } while (index < trace.size() && delivered > 0 && timestamps[index] < due);
+        if (index >= trace.size()) {
+            return false;
+        }
+        lastDelivered = timestamps[index];
+        delivered     = delivered + 1;
+        return true;
+    }
+
+    public float getMagnitude() {
+        return trace.getMagnitudes()[index];
+    }
+
+    public long getTimestampNanos() {
+        return trace.getTimestamps()[index];
+    }
+
+    //position of the current sample in the trace
+    public int getIndex() {
+        return index;
+    }
+
+    public long getDeliveredSamples() {
+        return delivered;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+Streaming resampler from the irregular sensor timestamps to a fixed sample period.
+
+Android delivers accelerometer events at roughly, but not exactly, the requested rate, so the
+original apps divided or multiplied every derivative by its own time step. The resampler turns
+the event stream into samples at timestamps first, first + period, first + 2 * period, ... so
+that every later stage can use coefficients computed once for the fixed period.
+
+    LINEAR:  straight line between the two inputs around an output timestamp. An output is
+             emitted as soon as the first input at or after its timestamp arrives, so at most one
+             input interval late.
+    CUBIC:   cubic Hermite curve between the two inputs around an output timestamp, with the
+             slope at each input taken from the parabola through it and its neighbours
+             (one-sided at the ends of a series).
+             Needs the input after the interval, so at most two input intervals late.
+
+An input with a timestamp that is not after the previous one (repeated events) replaces the value
+of the previous input. If the sensor pauses for more than maxGapNanos, the pending interval is
+finished and the resampler starts again at the next input, instead of filling the pause with
+interpolated samples; the output is told with restart(), so that it does not take a derivative
+across the pause. This also bounds the number of outputs of one input.
+
+ */
+
+package com.example.detectionengine;
+
+public class Resampler {
+
+    //receives the resampled values, called from add()
+    public interface Output {
+        void sample(double value, long timestampNanos);
+
+        //the next sample starts a new series after a pause longer than the maximum gap
+        void restart();
+    }
+
+    public static final long DEFAULT_MAX_GAP_NANOS = 1_000_000_000L;
+
+    private final long periodNanos;
+    private final boolean cubic;
+    private final long maxGapNanos;
+    private final Output output;
+
+    //the last four inputs, oldest first, only the last `points` entries are valid
+    private final long[] times = new long[4];
+    private final double[] values = new double[4];
+    private int points = 0;
+    private long nextOutputNanos;
+
+    public Resampler(long periodNanos, DetectorConfig.Interpolation interpolation, Output output) {
+        this(periodNanos, interpolation, DEFAULT_MAX_GAP_NANOS, output);
+    }
+
+    public Resampler(long periodNanos, DetectorConfig.Interpolation interpolation, long maxGapNanos, Output output) {
+        if (periodNanos <= 0) {
+            throw new IllegalArgumentException("Sample period must be positive");
+        }
+        if (maxGapNanos < periodNanos) {
+            throw new IllegalArgumentException("Maximum gap must not be shorter than the sample period");
+        }
+        this.periodNanos = periodNanos;
+        this.cubic       = interpolation == DetectorConfig.Interpolation.CUBIC;
+        this.maxGapNanos = maxGapNanos;
+        this.output      = output;
+    }
+
+    //adds one input sample, the resampled values up to it are passed to the output
+    public void add(double value, long timestampNanos) {
+        if (points > 0) {
+            long last = times[3];
+            if (timestampNanos <= last) {
+                values[3] = value;
+                return;
+            }
+            if (timestampNanos - last > maxGapNanos) {
+                finish();
+                points = 0;
+                output.restart();
+            }
+        }
+
+        for (int i = 0; i < 3; i++) {
+            times[i]  = times[i + 1];
+            values[i] = values[i + 1];
+        }
+        times[3]  = timestampNanos;
+        values[3] = value;
+        points    = Math.min(points + 1, 4);
+
+        if (points == 1) {
+            output.sample(value, timestampNanos);
+            nextOutputNanos = timestampNanos + periodNanos;
+        }
+        else if (!cubic) {
+            emitLinear();
+        }
+        else if (points >= 3) {
+            //the interval before the newest input, its following slope is known now
+            emitCubic(1, points == 3 ? 1 : 0, 3);
+        }
+    }
+
+    //emits the outputs of the last, still pending interval (cubic only), e.g. at the end of a trace
+    public void finish() {
+        if (cubic && points >= 2) {
+            //the interval up to the newest input, with a one-sided slope at its end
+            emitCubic(2, points == 2 ? 2 : 1, 3);
+        }
+    }
+
+    //the next input starts a new series, pending outputs are dropped
+    public void reset() {
+        points = 0;
+    }
+
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    private void emitLinear() {
+        long start = times[2], end = times[3];
+        double startValue = values[2], slope = (values[3] - startValue) / (end - start);
+        while (nextOutputNanos <= end) {
+            output.sample(startValue + slope * (nextOutputNanos - start), nextOutputNanos);
+            nextOutputNanos = nextOutputNanos + periodNanos;
+        }
+    }
+
+    //outputs between inputs start and start + 1, before and after give the slopes at its ends
+    private void emitCubic(int start, int before, int after) {
+        int end = start + 1;
+        long startTime = times[start], endTime = times[end];
+        double h = endTime - startTime;
+        double p0 = values[start], p1 = values[end];
+        double m0 = h * slope(before, start, end);
+        double m1 = h * slope(start, end, after);
+        while (nextOutputNanos <= endTime) {
+            double u = (nextOutputNanos - startTime) / h;
+            double u2 = u * u, u3 = u2 * u;
+            double value = (2 * u3 - 3 * u2 + 1) * p0 + (u3 - 2 * u2 + u) * m0
+                    + (3 * u2 - 2 * u3) * p1 + (u3 - u2) * m1;
+            output.sample(value, nextOutputNanos);
+            nextOutputNanos = nextOutputNanos + periodNanos;
+        }
+    }
+
+    //derivative at input at of the parabola through inputs before, at and after, the slope of the
+    //adjacent interval if before or after is at itself
+    private double slope(int before, int at, int after) {
+        if (before == at) {
+            return (values[after] - values[at]) / (times[after] - times[at]);
+        }
+        if (after == at) {
+            return (values[at] - values[before]) / (times[at] - times[before]);
+        }
+        double h0 = times[at] - times[before], h1 = times[after] - times[at];
+        double s0 = (values[at] - values[before]) / h0, s1 = (values[after] - values[at]) / h1;
+        return (h1 * s0 + h0 * s1) / (h0 + h1);
+    }
+}
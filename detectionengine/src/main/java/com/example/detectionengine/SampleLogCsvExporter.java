@@ -0,0 +1,48 @@
+/*
+Command line tool that converts a binary sample log into the CSV format the apps used to write
+("acc_mag_abs,event_time" per line), for the existing analysis scripts.
+
+    java -cp detectionengine.jar com.example.detectionengine.SampleLogCsvExporter data_step.bin [data_step.csv]
+
+Without an output file the CSV is written to standard output.
+
+ */
+
+package com.example.detectionengine;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+public class SampleLogCsvExporter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: SampleLogCsvExporter <log.bin> [output.csv]");
+            System.exit(2);
+        }
+        RecordedTrace trace = SampleLogFormat.read(new File(args[0]));
+        if (args.length == 2) {
+            try (OutputStream out = new FileOutputStream(args[1])) {
+                export(trace, out);
+            }
+        }
+        else {
+            export(trace, System.out);
+        }
+    }
+
+    public static void export(RecordedTrace trace, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        for (int i = 0; i < trace.size(); i++) {
+            //same formatting as the apps used for data_*.csv
+            writer.write(String.valueOf(trace.getMagnitudes()[i]) + ',' + trace.getTimestamps()[i] + '\n');
+        }
+        writer.flush();
+    }
+}
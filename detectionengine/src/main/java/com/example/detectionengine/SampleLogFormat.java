@@ -0,0 +1,84 @@
+/*
+Binary format of the sample logs written by SampleLogWriter.
+
+    header:  magic "SLOG" (4 bytes), format version (int), record size in bytes (int)
+    records: acc_mag_abs (float), event_time in nanoseconds (long)
+
+All values are big-endian, as written by java.nio.ByteBuffer. A record takes 12 bytes instead of
+the ~25 bytes of a CSV line, and needs no formatting when it is written.
+
+ */
+
+package com.example.detectionengine;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class SampleLogFormat {
+
+    public static final int MAGIC = ('S' << 24) | ('L' << 16) | ('O' << 8) | 'G';
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 12;
+    public static final int RECORD_BYTES = 12;
+
+    private SampleLogFormat() {
+    }
+
+    static void writeHeader(ByteBuffer buffer) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(RECORD_BYTES);
+    }
+
+    public static RecordedTrace read(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in);
+        }
+    }
+
+    //reads a whole log, a record cut off by a crash at the end of the file is ignored
+    public static RecordedTrace read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a sample log");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported sample log version " + version);
+        }
+        int recordBytes = data.readInt();
+        if (recordBytes != RECORD_BYTES) {
+            throw new IOException("Unsupported record size " + recordBytes);
+        }
+
+        float[] magnitudes = new float[1024];
+        long[] timestamps = new long[1024];
+        int count = 0;
+        while (true) {
+            float magnitude;
+            long timestamp;
+            try {
+                magnitude = data.readFloat();
+                timestamp = data.readLong();
+            }
+            catch (EOFException e) {
+                break;
+            }
+            if (count == magnitudes.length) {
+                magnitudes = Arrays.copyOf(magnitudes, 2 * count);
+                timestamps = Arrays.copyOf(timestamps, 2 * count);
+            }
+            magnitudes[count] = magnitude;
+            timestamps[count] = timestamp;
+            count = count + 1;
+        }
+        return new RecordedTrace(magnitudes, timestamps, count);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+Asynchronous binary log of the accelerometer magnitude samples.
+
+The sensor thread appends records to a preallocated direct buffer; full buffers are handed to a
+background writer thread, which writes them to the file in one block and returns them to the pool.
+A buffer is also handed over at the first append once the flush latency has passed since its first
+record was appended. The latency is measured on System.nanoTime(), not on the sample timestamps: a
+FIFO batch delivers seconds of samples in one burst, and handing over a buffer per second of sample
+time would empty the pool within the burst. When samples stop arriving (idle device, sensor
+unregistered), the writer thread takes over the partly filled buffer itself once it waited the
+flush latency for a full one, so at most about twice that much data is lost if the app dies. The
+buffer being filled is passed between the threads by an atomic reference, so neither waits.
+Appending never blocks and never allocates: if the writer falls behind and no buffer is free, the
+sample is dropped and counted.
+
+append() and flush() must be called from one thread (the sensor thread), close() after that thread
+stopped appending. The file format is described in SampleLogFormat.
+
+ */
+
+package com.example.detectionengine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SampleLogWriter {
+
+    public static final int DEFAULT_BUFFER_BYTES = 64 * 1024;
+    public static final int DEFAULT_BUFFER_COUNT = 4;
+    public static final long DEFAULT_FLUSH_LATENCY_NANOS = 1_000_000_000L;
+
+    private static final ByteBuffer END_OF_LOG = ByteBuffer.allocate(0);
+
+    private final FileOutputStream out;
+    private final FileChannel channel;
+    private final BlockingQueue<ByteBuffer> freeBuffers;
+    private final BlockingQueue<ByteBuffer> filledBuffers;
+    private final long flushLatencyNanos;
+    private final Thread writerThread;
+    private volatile IOException writeError;
+
+    //buffer being filled, null while the appending thread writes to it or after the writer thread
+    //took it over
+    private final AtomicReference<ByteBuffer> active = new AtomicReference<>();
+
+    //owned by the appending thread
+    private long activeStartNanos; //System.nanoTime() of the first record of active
+    private long droppedRecords = 0;
+    private boolean closed = false;
+
+    public SampleLogWriter(File file) throws IOException {
+        this(file, DEFAULT_BUFFER_BYTES, DEFAULT_BUFFER_COUNT, DEFAULT_FLUSH_LATENCY_NANOS);
+    }
+
+    public SampleLogWriter(File file, int bufferBytes, int bufferCount, long flushLatencyNanos) throws IOException {
+        if (bufferBytes < SampleLogFormat.RECORD_BYTES || bufferCount < 2) {
+            throw new IllegalArgumentException("Need at least two buffers of one record");
+        }
+        if (flushLatencyNanos <= 0) {
+            throw new IllegalArgumentException("Flush latency must be positive");
+        }
+        this.flushLatencyNanos = flushLatencyNanos;
+        this.freeBuffers       = new ArrayBlockingQueue<>(bufferCount);
+        this.filledBuffers     = new ArrayBlockingQueue<>(bufferCount + 1);
+        int recordsPerBuffer = bufferBytes / SampleLogFormat.RECORD_BYTES;
+        for (int i = 0; i < bufferCount; i++) {
+            freeBuffers.add(ByteBuffer.allocateDirect(recordsPerBuffer * SampleLogFormat.RECORD_BYTES));
+        }
+
+        this.out     = new FileOutputStream(file);
+        this.channel = out.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(SampleLogFormat.HEADER_BYTES);
+        SampleLogFormat.writeHeader(header);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "SampleLogWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    //returns false if the sample had to be dropped
+    public boolean append(float magnitude, long timestampNanos) {
+        if (closed || writeError != null) {
+            droppedRecords = droppedRecords + 1;
+            return false;
+        }
+        ByteBuffer buffer = active.getAndSet(null);
+        if (buffer == null) {
+            buffer = freeBuffers.poll();
+            if (buffer == null) {
+                droppedRecords = droppedRecords + 1;
+                return false;
+            }
+            activeStartNanos = System.nanoTime();
+        }
+        buffer.putFloat(magnitude);
+        buffer.putLong(timestampNanos);
+        if (buffer.remaining() < SampleLogFormat.RECORD_BYTES
+                || System.nanoTime() - activeStartNanos >= flushLatencyNanos) {
+            filledBuffers.add(buffer);
+        }
+        else {
+            active.set(buffer);
+        }
+        return true;
+    }
+
+    //hands the buffered records to the writer thread without waiting for the write
+    public void flush() {
+        ByteBuffer buffer = active.getAndSet(null);
+        if (buffer != null) {
+            filledBuffers.add(buffer);
+        }
+    }
+
+    //writes all buffered records and closes the file
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        filledBuffers.add(END_OF_LOG);
+        try {
+            writerThread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+        if (writeError != null) {
+            throw writeError;
+        }
+    }
+
+    public long getDroppedRecords() {
+        return droppedRecords;
+    }
+
+    private void drain() {
+        while (true) {
+            ByteBuffer buffer;
+            try {
+                buffer = filledBuffers.poll(flushLatencyNanos, TimeUnit.NANOSECONDS);
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            if (buffer == null) {
+                //no samples for a while, write what was appended so far
+                buffer = active.getAndSet(null);
+                if (buffer == null) {
+                    continue;
+                }
+            }
+            if (buffer == END_OF_LOG) {
+                return;
+            }
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            catch (IOException e) {
+                writeError = e;
+            }
+            buffer.clear();
+            freeBuffers.add(buffer);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+Lowers the sampling rate of the sensor while the device is idle and raises it again on motion.
+
+The apps kept the accelerometer at SENSOR_DELAY_NORMAL for as long as detection ran. The
+controller watches the energy of the magnitude stream that the detectors already compute:
+
+    mean:    exponential moving average of the magnitude (removes the sensor offset),
+    energy:  exponential moving average of the squared deviation from the mean.
+
+Both averages use a time constant, their weights are computed once for each of the two rates.
+The controller switches (with hysteresis, so it does not flap):
+
+    IDLE -> ACTIVE  at the first sample whose energy exceeds motionEnergy the fast rate is requested,
+                    the active phase starts at the first sample that arrives at the fast rate,
+    ACTIVE -> IDLE  once the energy stayed below idleEnergy (< motionEnergy) for idleHoldNanos.
+
+and sets the sampling period of its SensorSource accordingly.
+
+The detectors only see the samples of the active phases, so their templates always get samples
+at the fast rate however the rate changes: onSample() returns IDLE for a sample that is not to be
+processed, RESUMED for the first sample of an active phase (the detector restarts its signal
+there, see DetectionEngine.resume()) and ACTIVE for all others. A sensor FIFO batch may still hold
+samples recorded at the idle rate after the switch was requested; they are told apart by their
+spacing (more than FAST_SPACING_TOLERANCE times the fast period after the previous sample) and stay
+IDLE. The first part of a motion, up to one idle sampling period and the rest of its batch,
+happens before the switch and is not seen by the detectors.
+
+ */
+
+package com.example.detectionengine;
+
+public class SamplingRateController {
+
+    public static final int IDLE = 0;
+    public static final int ACTIVE = 1;
+    public static final int RESUMED = 2;
+
+    //a sample at most this many fast periods after the previous one was recorded at the fast rate,
+    //allows for the jitter of the sensor
+    static final double FAST_SPACING_TOLERANCE = 1.5;
+
+    private final SensorSource source;
+    private final int fastPeriodUs;
+    private final int idlePeriodUs;
+    private final double motionEnergy;
+    private final double idleEnergy;
+    private final long idleHoldNanos;
+    private final double fastWeight; //weight of a new sample in the averages at the fast rate
+    private final double idleWeight;
+    private final long maxFastSpacingNanos;
+
+    private boolean active = true;
+    private boolean resuming = false; //the fast rate is requested, the samples may still be idle ones
+    private boolean started = false;
+    private long lastTimestampNanos;
+    private double mean;
+    private double energy;
+    private long quietSinceNanos = -1;
+    private int switches = 0;
+    private long idleSamples = 0;
+    private long activeSamples = 0;
+
+    public SamplingRateController(SensorSource source, int fastPeriodUs, int idlePeriodUs,
+                                  double motionEnergy, double idleEnergy, long idleHoldNanos,
+                                  double timeConstantSeconds) {
+        if (fastPeriodUs <= 0 || idlePeriodUs < fastPeriodUs) {
+            throw new IllegalArgumentException("The idle period must not be shorter than the fast period");
+        }
+        if (!(idleEnergy < motionEnergy)) {
+            throw new IllegalArgumentException("The idle energy must be below the motion energy");
+        }
+        if (!(timeConstantSeconds > 0)) {
+            throw new IllegalArgumentException("Time constant must be positive");
+        }
+        this.source              = source;
+        this.fastPeriodUs        = fastPeriodUs;
+        this.idlePeriodUs        = idlePeriodUs;
+        this.motionEnergy        = motionEnergy;
+        this.idleEnergy          = idleEnergy;
+        this.idleHoldNanos       = idleHoldNanos;
+        this.fastWeight          = 1 - Math.exp(-fastPeriodUs / 1e6 / timeConstantSeconds);
+        this.idleWeight          = 1 - Math.exp(-idlePeriodUs / 1e6 / timeConstantSeconds);
+        this.maxFastSpacingNanos = (long) (FAST_SPACING_TOLERANCE * fastPeriodUs * 1000);
+        source.setSamplingPeriodUs(fastPeriodUs);
+    }
+
+    //adds one sample of the magnitude without gravity, returns IDLE, ACTIVE or RESUMED
+    public int onSample(float accMagAbs, long timestampNanos) {
+        boolean fastSpacing = started && timestampNanos - lastTimestampNanos <= maxFastSpacingNanos;
+        if (!started) {
+            started = true;
+            mean    = accMagAbs;
+        }
+        lastTimestampNanos = timestampNanos;
+        double weight = active || fastSpacing ? fastWeight : idleWeight;
+        double deviation = accMagAbs - mean;
+        mean   = mean + weight * deviation;
+        energy = energy + weight * (deviation * deviation - energy);
+
+        if (!active) {
+            if (!resuming && energy > motionEnergy) {
+                resuming = true;
+                switches = switches + 1;
+                source.setSamplingPeriodUs(fastPeriodUs);
+            }
+            if (!resuming || !fastSpacing) {
+                idleSamples = idleSamples + 1;
+                return IDLE;
+            }
+            active          = true;
+            resuming        = false;
+            quietSinceNanos = -1;
+            activeSamples   = activeSamples + 1;
+            return RESUMED;
+        }
+
+        activeSamples = activeSamples + 1;
+        if (energy < idleEnergy) {
+            if (quietSinceNanos < 0) {
+                quietSinceNanos = timestampNanos;
+            }
+            else if (timestampNanos - quietSinceNanos >= idleHoldNanos) {
+                active   = false;
+                switches = switches + 1;
+                source.setSamplingPeriodUs(idlePeriodUs);
+            }
+        }
+        else {
+            quietSinceNanos = -1;
+        }
+        return ACTIVE;
+    }
+
+    //the next detection session starts at the fast rate
+    public void reset() {
+        if (!active) {
+            source.setSamplingPeriodUs(fastPeriodUs);
+        }
+        active          = true;
+        resuming        = false;
+        started         = false;
+        energy          = 0;
+        quietSinceNanos = -1;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public double getEnergy() {
+        return energy;
+    }
+
+    //number of rate changes
+    public int getSwitchCount() {
+        return switches;
+    }
+
+    //samples that were handed to the detectors
+    public long getActiveSamples() {
+        return activeSamples;
+    }
+
+    public long getIdleSamples() {
+        return idleSamples;
+    }
+}
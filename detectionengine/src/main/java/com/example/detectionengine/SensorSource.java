@@ -0,0 +1,18 @@
+/*
+Source of accelerometer samples whose sampling period can be changed while it runs.
+
+The apps implement it on top of SensorManager (registering the listener again with the new
+period), ReplaySensorSource implements it on a recorded trace, so that the SamplingRateController
+can be run and measured on a plain JVM.
+
+ */
+
+package com.example.detectionengine;
+
+public interface SensorSource {
+
+    //requests samples about every periodUs microseconds, as SensorManager.registerListener()
+    void setSamplingPeriodUs(int periodUs);
+
+    int getSamplingPeriodUs();
+}
@@ -0,0 +1,33 @@
+/*
+One stage of the filter chain that smooths the derivative before it is matched (see FilterChain).
+
+A stage keeps its state in primitive fields and does not allocate per sample. The state can be
+saved to and restored from a double array, to continue filtering after a restart (see
+DetectorState). Detectors declare
+their stages in DetectorConfig; every engine gets its own copy() of them, so a configuration can be
+shared by several engines.
+
+ */
+
+package com.example.detectionengine;
+
+public interface SignalFilter {
+
+    //returns the filtered value after adding one sample
+    double filter(double value);
+
+    //forgets the previous samples
+    void reset();
+
+    //new filter with the same parameters and no history
+    SignalFilter copy();
+
+    //number of values saveState() writes
+    int stateSize();
+
+    //writes the history to state[offset .. offset + stateSize())
+    void saveState(double[] state, int offset);
+
+    //continues from a history written by saveState() of a filter with the same parameters
+    void restoreState(double[] state, int offset);
+}
@@ -0,0 +1,115 @@
+/*
+Front end of the detection pipeline: turns the accelerometer magnitude into the smoothed
+speed (or jerk) surrogate that is matched against the templates.
+
+    derivative of the magnitude, scaled or divided by the time step (see DetectorConfig.DerivativeMode),
+    filter chain of the detector, by default a moving average over the last 3 derivative values.
+
+The first sample of a session has no predecessor and gets a derivative of zero.
+
+For a resampled detector (see Resampler) the samples are given to derivativeUniform() instead,
+and the derivative is scaled or divided by the fixed sample period, which is done with a gain
+computed once in the constructor. After a pause the resampler starts a new series and the engine
+calls reset(), so the first sample after the pause again gets a derivative of zero.
+
+ */
+
+package com.example.detectionengine;
+
+public class SignalFrontEnd {
+
+    private final DetectorConfig.DerivativeMode derivativeMode;
+    private final FilterChain filters;
+    private final double uniformGain; //dt or 1 / dt of the resampling period
+    private int countSensorData = 0;
+    private double pastAcc;
+    private long pastTime;
+
+    public SignalFrontEnd(DetectorConfig config) {
+        this.derivativeMode = config.getDerivativeMode();
+        this.filters        = config.newFilterChain();
+        double period = config.getResamplingPeriodNanos() / 1e9;
+        this.uniformGain    = derivativeMode == DetectorConfig.DerivativeMode.SCALED_BY_DT ? period : 1 / period;
+    }
+
+    //magnitude of the acceleration without gravity, as computed by the apps
+    public static float magnitude(float x, float y, float z) {
+        float accMag = (float) (Math.sqrt(x * x + y * y + z * z));
+        return accMag - (float) (9.8);
+    }
+
+    //returns the smoothed derivative after adding one magnitude sample
+    public double process(float accMagAbs, long timestampNanos) {
+        return smooth(derivative(accMagAbs, timestampNanos));
+    }
+
+    //the two steps of process(), for timing them separately (see PipelineMetrics)
+    public double derivative(float accMagAbs, long timestampNanos) {
+        countSensorData = countSensorData + 1;
+
+        double currSpeed;
+        if (countSensorData == 1) {
+            currSpeed = 0.0;
+        }
+        else {
+            double timeFactor = ((timestampNanos - pastTime) / 1e9);
+            if (derivativeMode == DetectorConfig.DerivativeMode.SCALED_BY_DT) {
+                currSpeed = (accMagAbs - pastAcc) * timeFactor;
+            }
+            else {
+                currSpeed = (accMagAbs - pastAcc) / timeFactor;
+            }
+        }
+
+        pastAcc  = accMagAbs;
+        pastTime = timestampNanos;
+        return currSpeed;
+    }
+
+    public double smooth(double currSpeed) {
+        return filters.filter(currSpeed);
+    }
+
+    //returns the smoothed derivative after adding one sample of a resampled magnitude
+    public double processUniform(double accMagAbs) {
+        return smooth(derivativeUniform(accMagAbs));
+    }
+
+    public double derivativeUniform(double accMagAbs) {
+        countSensorData = countSensorData + 1;
+
+        double currSpeed = countSensorData == 1 ? 0.0 : (accMagAbs - pastAcc) * uniformGain;
+        pastAcc = accMagAbs;
+        return currSpeed;
+    }
+
+    //number of values saveState() writes
+    public int stateSize() {
+        return 2 + filters.stateSize();
+    }
+
+    //writes whether a sample was seen, the last magnitude and the filter history to state[offset ..),
+    //the time of the last sample is getPastTime()
+    public void saveState(double[] state, int offset) {
+        state[offset]     = countSensorData > 0 ? 1 : 0;
+        state[offset + 1] = pastAcc;
+        filters.saveState(state, offset + 2);
+    }
+
+    //continues after the sample at pastTime from a state written by saveState()
+    public void restoreState(double[] state, int offset, long pastTime) {
+        this.countSensorData = state[offset] != 0 ? 1 : 0;
+        this.pastAcc         = state[offset + 1];
+        this.pastTime        = pastTime;
+        filters.restoreState(state, offset + 2);
+    }
+
+    public long getPastTime() {
+        return pastTime;
+    }
+
+    //the next sample is handled as the first one of a session, the filter history is kept
+    public void reset() {
+        countSensorData = 0;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+Minimum and maximum of a sliding window in amortized O(1) per sample.
+
+Two monotonic deques are kept in primitive circular arrays: the maximum deque holds values in
+decreasing order, the minimum deque in increasing order, each with the sample index it was added
+at. A new value first drops the entries that left the window from the front, then removes all
+entries from the back that it dominates. The front of each deque is the current extreme.
+Every value is added and removed at most once, so no sample ever rescans the window.
+
+ */
+
+package com.example.detectionengine;
+
+public class SlidingRange {
+
+    private final int capacity;
+    private final MonotonicDeque maxDeque;
+    private final MonotonicDeque minDeque;
+    private long count = 0; //index of the next sample
+
+    public SlidingRange(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.maxDeque = new MonotonicDeque(capacity, true);
+        this.minDeque = new MonotonicDeque(capacity, false);
+        clear();
+    }
+
+    public void add(double value) {
+        long index = count;
+        count = count + 1;
+        maxDeque.add(value, index, index - capacity);
+        minDeque.add(value, index, index - capacity);
+    }
+
+    //the window only holds zeros again
+    public void clear() {
+        maxDeque.reset(0.0, count - 1);
+        minDeque.reset(0.0, count - 1);
+    }
+
+    public double getMax() {
+        return maxDeque.front();
+    }
+
+    public double getMin() {
+        return minDeque.front();
+    }
+
+    public double getRange() {
+        return maxDeque.front() - minDeque.front();
+    }
+
+    private static final class MonotonicDeque {
+        private final double[] values;
+        private final long[] indices;
+        private final boolean keepMax;
+        private int head = 0;
+        private int size = 0;
+
+        MonotonicDeque(int capacity, boolean keepMax) {
+            this.values  = new double[capacity];
+            this.indices = new long[capacity];
+            this.keepMax = keepMax;
+        }
+
+        void add(double value, long index, long expiredIndex) {
+            //drop entries that are no longer inside the window
+            while (size > 0 && indices[head] <= expiredIndex) {
+                head = next(head);
+                size = size - 1;
+            }
+            //drop entries the new value dominates
+            while (size > 0) {
+                int tail = slot(size - 1);
+                boolean dominated = keepMax ? values[tail] <= value : values[tail] >= value;
+                if (!dominated) {
+                    break;
+                }
+                size = size - 1;
+            }
+            int tail = slot(size);
+            values[tail]  = value;
+            indices[tail] = index;
+            size = size + 1;
+        }
+
+        void reset(double value, long index) {
+            head = 0;
+            size = 1;
+            values[0]  = value;
+            indices[0] = index;
+        }
+
+        double front() {
+            return values[head];
+        }
+
+        private int slot(int position) {
+            int slot = head + position;
+            return slot >= values.length ? slot - values.length : slot;
+        }
+
+        private int next(int slot) {
+            return slot + 1 == values.length ? 0 : slot + 1;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+Adapts the templates of a detector on a background thread and publishes them to the engine.
+
+In the apps, a detection added the window to the template on the sensor thread, in the same
+callback as the matching. With an adapter (new DetectionEngine(adapter)) the engine only hands
+the detected window over and goes on matching:
+
+    submit()       sensor thread: copies the window into a preallocated request and queues it,
+                   never blocks or allocates; if all requests are in use the window is dropped,
+    adaptPending() adaptation thread (see start()): runs the quality check, adds the window to a
+                   copy of the template and publishes a new TemplateSnapshot,
+    current()      sensor thread: the latest snapshot, one volatile read. The engine rebuilds its
+                   matcher for the changed templates when the snapshot differs from the last one.
+
+Publishing is a single atomic reference swap of an immutable snapshot, so the matching thread
+never waits for the adaptation and never sees a half updated template. The quality check (the
+README suggests only adapting to windows of good signal quality) may therefore be as costly as
+needed without delaying the sensor thread.
+
+The last historySize snapshots are kept; rollback() publishes one of them again, e.g. when the
+adapted templates turn out to be corrupted.
+
+ */
+
+package com.example.detectionengine;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TemplateAdapter {
+
+    //decides on the adaptation thread whether a detected window may be added to its template
+    public interface QualityCheck {
+        //window holds the template points of the detected motion
+        boolean accept(int templateIndex, double[] template, double[] window);
+    }
+
+    public static final int DEFAULT_PENDING_REQUESTS = 8;
+    public static final int DEFAULT_HISTORY_SIZE = 16;
+
+    private final DetectorConfig config;
+    private final int templatePoints;
+    private final AtomicReference<TemplateSnapshot> current;
+    private final BlockingQueue<Request> freeRequests;
+    private final BlockingQueue<Request> pendingRequests;
+    private final int historySize;
+    private final ArrayDeque<TemplateSnapshot> history = new ArrayDeque<>(); //newest first
+    private volatile QualityCheck qualityCheck;
+    private long nextVersion = 1;
+    private final AtomicInteger droppedWindows = new AtomicInteger();
+    private final AtomicInteger rejectedWindows = new AtomicInteger();
+    private Thread thread;
+
+    //detected window waiting for adaptation
+    private static final class Request {
+        final double[] window;
+        int templateIndex;
+        int points;
+
+        Request(int capacity) {
+            this.window = new double[capacity];
+        }
+    }
+
+    public TemplateAdapter(DetectorConfig config) {
+        this(config, DEFAULT_PENDING_REQUESTS, DEFAULT_HISTORY_SIZE);
+    }
+
+    //pendingRequests windows can wait for adaptation, historySize snapshots are kept for rollback
+    public TemplateAdapter(DetectorConfig config, int pendingRequests, int historySize) {
+        if (pendingRequests < 1 || historySize < 1) {
+            throw new IllegalArgumentException("At least one request and one snapshot are needed");
+        }
+        this.config          = config;
+        this.templatePoints  = config.getTemplatePoints();
+        this.historySize     = historySize;
+        this.freeRequests    = new ArrayBlockingQueue<>(pendingRequests);
+        this.pendingRequests = new ArrayBlockingQueue<>(pendingRequests);
+        int windowCapacity = templatePoints;
+        for (double scale : config.getTimeScales()) {
+            windowCapacity = Math.max(windowCapacity, (int) Math.round(scale * templatePoints));
+        }
+        for (int i = 0; i < pendingRequests; i++) {
+            freeRequests.add(new Request(windowCapacity));
+        }
+        TemplateSnapshot initial = TemplateSnapshot.initial(config);
+        this.current = new AtomicReference<>(initial);
+        history.addFirst(initial);
+    }
+
+    public DetectorConfig getConfig() {
+        return config;
+    }
+
+    public void setQualityCheck(QualityCheck qualityCheck) {
+        this.qualityCheck = qualityCheck;
+    }
+
+    //the latest published templates
+    public TemplateSnapshot current() {
+        return current.get();
+    }
+
+    //starts the adaptation thread
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        adapt(pendingRequests.take());
+                    }
+                }
+                catch (InterruptedException e) {
+                    //closed
+                }
+            }
+        }, "TemplateAdaptation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //stops the adaptation thread, windows still queued are not adapted
+    public void close() throws InterruptedException {
+        Thread stopping;
+        synchronized (this) {
+            stopping = thread;
+            thread   = null;
+        }
+        if (stopping != null) {
+            stopping.interrupt();
+            stopping.join();
+        }
+    }
+
+    //queues the latest points values of the window for adaptation of a template, called by the
+    //engine on the sensor thread. Returns false if the window was dropped because all requests
+    //are pending.
+    public boolean submit(int templateIndex, DoubleRingBuffer window, int points) {
+        return submit(templateIndex, window.array(), window.offset() + window.capacity() - points, points);
+    }
+
+    //as above, for the window values data[offset .. offset + points)
+    public boolean submit(int templateIndex, double[] data, int offset, int points) {
+        Request request = freeRequests.poll();
+        if (request == null) {
+            droppedWindows.incrementAndGet();
+            return false;
+        }
+        System.arraycopy(data, offset, request.window, 0, points);
+        request.templateIndex = templateIndex;
+        request.points        = points;
+        pendingRequests.add(request);
+        return true;
+    }
+
+    //adapts all queued windows on the calling thread, for use without start(); returns their number
+    public int adaptPending() {
+        int count = 0;
+        Request request;
+        while ((request = pendingRequests.poll()) != null) {
+            adapt(request);
+            count = count + 1;
+        }
+        return count;
+    }
+
+    private void adapt(Request request) {
+        try {
+            double[] window = new double[templatePoints];
+            for (int i = 0; i < templatePoints; i++) {
+                window[i] = TemplatePyramid.interpolate(request.window, 0, request.points, i, templatePoints);
+            }
+            int index = request.templateIndex;
+
+            //the check runs without holding the lock, so a rollback meanwhile is adapted from
+            QualityCheck check = qualityCheck;
+            if (check != null && !check.accept(index, current.get().getTemplate(index), window.clone())) {
+                rejectedWindows.incrementAndGet();
+                return;
+            }
+            synchronized (this) {
+                double[] adapted = current.get().getTemplate(index);
+                for (int i = 0; i < templatePoints; i++) {
+                    adapted[i] = adapted[i] + config.getAdaptationRate() * window[i];
+                }
+                publish(current.get().withTemplate(nextVersion, index, adapted));
+                nextVersion = nextVersion + 1;
+            }
+        }
+        finally {
+            //the request is free again once its snapshot is published
+            freeRequests.add(request);
+        }
+    }
+
+    //publishes templates saved earlier (see DetectorState) as a new snapshot with at least the
+    //saved version, the current templates stay in the history for rollback()
+    public synchronized void restore(double[][] templates, long version) {
+        if (templates.length != current.get().getTemplateCount()) {
+            throw new IllegalArgumentException("Expected " + current.get().getTemplateCount() + " templates");
+        }
+        double[][] copies = new double[templates.length][];
+        for (int t = 0; t < templates.length; t++) {
+            if (templates[t].length < templatePoints) {
+                throw new IllegalArgumentException("Template is shorter than " + templatePoints + " points");
+            }
+            copies[t] = templates[t].clone();
+        }
+        long restoredVersion = Math.max(version, nextVersion);
+        publish(new TemplateSnapshot(restoredVersion, copies));
+        nextVersion = restoredVersion + 1;
+    }
+
+    //publishes the snapshot of an earlier version again, false if it is no longer kept
+    public synchronized boolean rollback(long version) {
+        for (TemplateSnapshot snapshot : history) {
+            if (snapshot.getVersion() == version) {
+                publish(snapshot);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void publish(TemplateSnapshot snapshot) {
+        current.set(snapshot);
+        //a snapshot published again moves to the front of the history
+        Iterator<TemplateSnapshot> it = history.iterator();
+        while (it.hasNext()) {
+            if (it.next() == snapshot) {
+                it.remove();
+            }
+        }
+        history.addFirst(snapshot);
+        while (history.size() > historySize) {
+            history.removeLast();
+        }
+    }
+
+    //versions that rollback() can return to, newest first
+    public synchronized long[] getVersions() {
+        long[] versions = new long[history.size()];
+        int i = 0;
+        for (TemplateSnapshot snapshot : history) {
+            versions[i] = snapshot.getVersion();
+            i = i + 1;
+        }
+        return versions;
+    }
+
+    //windows dropped by submit() because the adaptation thread fell behind
+    public int getDroppedWindows() {
+        return droppedWindows.get();
+    }
+
+    //windows the quality check did not accept
+    public int getRejectedWindows() {
+        return rejectedWindows.get();
+    }
+
+    //waits until no window is queued, for tests and shutdown; true if that happened in time
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (freeRequests.remainingCapacity() > 0) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+}
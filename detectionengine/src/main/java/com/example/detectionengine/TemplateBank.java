@@ -0,0 +1,226 @@
+/*
+Bank of templates scored against the same sliding window in a single pass.
+
+All templates are stored in one flat primitive matrix, interleaved point by point
+(matrix[i * templateCount + t] is point i of template t), so one sweep over the window reads every
+window value once and updates the cross term sum(window[i] * template[i]) of every template from
+one contiguous row. The window sums come from WindowStatistics and are shared by all templates;
+the template sums and variances are cached until a template is adapted. Adding a template adds
+one multiply-add per template point and sample.
+
+Each score uses the formula of the original correlationCoefficient():
+    (n * sum_XY - sum_X * sum_Y) / sqrt((n * squareSum_X - sum_X^2) * (n * squareSum_Y - sum_Y^2))
+
+Most windows are noise and correlate far below the threshold. A bank created with the correlation
+threshold abandons a template as soon as it can no longer reach the threshold or the best template
+so far. The first block of ABANDON_BLOCK points is summed for all templates in one sweep as
+above; the rest of each template is then summed block by block from a copy of the templates kept
+one after the other. Before every further block, the rest of the cross term is bounded by the
+Cauchy-Schwarz inequality:
+    sum over the remaining points of X * Y <= sqrt(remaining squareSum_X * remaining squareSum_Y)
+The remaining square sums of the window are computed once per sample and those of the templates
+when they are set. If the score is below the cutoff even with this bound, the template gets the
+bound as its score. That is an upper bound of its real score, so the best template and whether it
+passes the threshold are those of the full scores. The cross terms of the other templates are
+summed in the same order as in the single sweep, so their scores are identical. Windows and
+templates without variance, or with values that are not finite, are scored in full, as are
+templates of at most ABANDON_BLOCK points. The checks and the sums of a template one after the
+other cost about as much as they save at 35 points; at 128 points a sample takes about 60% of the
+single sweep when most windows are noise.
+
+ */
+
+package com.example.detectionengine;
+
+public class TemplateBank implements TemplateMatcher {
+
+    public static final int ABANDON_BLOCK = 16;
+
+    //bounds are compared with this much slack relative to the size of their terms, so that
+    //rounding never abandons a template whose score equals the cutoff
+    private static final double SLACK = 1e-9;
+
+    private final int n;
+    private final int templateCount;
+    private final double[] matrix;
+    private final double[] sum_Y;
+    private final double[] templateVariance; //n * squareSum_Y - sum_Y * sum_Y
+    private final double[] sum_XY;
+
+    private final boolean abandoning;
+    private final double correlationThreshold;
+    private final int blocks;
+    private final double[] rows;             //rows[t * n + i], one template after the other
+    private final double[] templateTail;     //templateTail[t * (blocks + 1) + b]: sqrt of squareSum_Y from block b on
+    private final double[] templateDeviation; //sqrt(templateVariance), for the bounds
+    private final double[] windowTail;
+    private int abandoned = 0;
+
+    //the first n values of every template are matched
+    public TemplateBank(double[][] templates, int n) {
+        this(templates, n, false, 0);
+    }
+
+    //abandons templates that cannot exceed the correlation threshold or the best template so far
+    public TemplateBank(double[][] templates, int n, double correlationThreshold) {
+        this(templates, n, true, correlationThreshold);
+    }
+
+    private TemplateBank(double[][] templates, int n, boolean abandoning, double correlationThreshold) {
+        this.n                    = n;
+        this.templateCount        = templates.length;
+        this.matrix               = new double[n * templateCount];
+        this.sum_Y                = new double[templateCount];
+        this.templateVariance     = new double[templateCount];
+        this.sum_XY               = new double[templateCount];
+        this.abandoning           = abandoning;
+        this.correlationThreshold = correlationThreshold;
+        this.blocks               = (n + ABANDON_BLOCK - 1) / ABANDON_BLOCK;
+        this.rows                 = new double[abandoning ? n * templateCount : 0];
+        this.templateTail         = new double[abandoning ? templateCount * (blocks + 1) : 0];
+        this.windowTail           = new double[abandoning ? blocks + 1 : 0];
+        this.templateDeviation    = new double[abandoning ? templateCount : 0];
+        for (int t = 0; t < templateCount; t++) {
+            setTemplate(t, templates[t]);
+        }
+    }
+
+    @Override
+    public void setTemplate(int index, double[] template) {
+        double sum = 0, squareSum = 0;
+        for (int i = 0; i < n; i++) {
+            matrix[i * templateCount + index] = template[i];
+            sum       = sum + template[i];
+            squareSum = squareSum + template[i] * template[i];
+        }
+        sum_Y[index]            = sum;
+        templateVariance[index] = n * squareSum - sum * sum;
+        if (abandoning) {
+            System.arraycopy(template, 0, rows, index * n, n);
+            tails(template, 0, templateTail, index * (blocks + 1));
+            templateDeviation[index] = Math.sqrt(templateVariance[index]);
+        }
+    }
+
+    //tail[offset + b] = sqrt of the square sum of values[start + b * ABANDON_BLOCK .. start + n)
+    private void tails(double[] values, int start, double[] tail, int offset) {
+        double squareSum = 0;
+        tail[offset + blocks] = 0;
+        for (int b = blocks - 1; b >= 0; b--) {
+            for (int i = Math.min(n, (b + 1) * ABANDON_BLOCK) - 1; i >= b * ABANDON_BLOCK; i--) {
+                squareSum = squareSum + values[start + i] * values[start + i];
+            }
+            tail[offset + b] = Math.sqrt(squareSum);
+        }
+    }
+
+    //writes the correlation of the window with every template into scores
+    @Override
+    public void score(WindowStatistics stats, double[] scores) {
+        //a template of a single block cannot be abandoned early
+        if (abandoning && blocks > 1) {
+            scoreAbandoning(stats, scores);
+            return;
+        }
+        DoubleRingBuffer window = stats.getWindow();
+        double[] data = window.array();
+        int offset = window.offset();
+
+        for (int t = 0; t < templateCount; t++) {
+            sum_XY[t] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            double x = data[offset + i];
+            int row = i * templateCount;
+            for (int t = 0; t < templateCount; t++) {
+                sum_XY[t] = sum_XY[t] + x * matrix[row + t];
+            }
+        }
+
+        double sum_X = stats.getSum();
+        double windowVariance = n * stats.getSquareSum() - sum_X * sum_X;
+        for (int t = 0; t < templateCount; t++) {
+            scores[t] = (n * sum_XY[t] - sum_X * sum_Y[t])
+                    / Math.sqrt(windowVariance * templateVariance[t]);
+        }
+    }
+
+    private void scoreAbandoning(WindowStatistics stats, double[] scores) {
+        DoubleRingBuffer window = stats.getWindow();
+        double[] data = window.array();
+        int offset = window.offset();
+        double sum_X = stats.getSum();
+        double windowVariance = n * stats.getSquareSum() - sum_X * sum_X;
+        tails(data, offset, windowTail, 0);
+        double windowDeviation = Math.sqrt(windowVariance);
+        //negated so that NaN variances and tails are scored in full as well
+        boolean bounded = windowVariance > 0 && windowVariance < Double.POSITIVE_INFINITY
+                && windowTail[0] < Double.POSITIVE_INFINITY;
+
+        //the first block of every template in one sweep, as in score()
+        for (int t = 0; t < templateCount; t++) {
+            sum_XY[t] = 0;
+        }
+        for (int i = 0, first = Math.min(n, ABANDON_BLOCK); i < first; i++) {
+            double x = data[offset + i];
+            int row = i * templateCount;
+            for (int t = 0; t < templateCount; t++) {
+                sum_XY[t] = sum_XY[t] + x * matrix[row + t];
+            }
+        }
+
+        abandoned = 0;
+        double cutoff = correlationThreshold;
+        for (int t = 0; t < templateCount; t++) {
+            int row = t * n;
+            int tails = t * (blocks + 1);
+            //the bounds use the product of the deviations, within the slack of the exact denominator
+            boolean boundedTemplate = bounded && templateVariance[t] > 0
+                    && windowVariance * templateVariance[t] < Double.POSITIVE_INFINITY;
+            double boundDenominator = windowDeviation * templateDeviation[t];
+            double sumTerm = sum_X * sum_Y[t];
+            double slack = SLACK * (n * windowTail[0] * templateTail[tails] + Math.abs(sumTerm));
+            double sum = sum_XY[t];
+            boolean cut = false;
+            for (int b = 1; b <= blocks && !cut; b++) {
+                if (boundedTemplate) {
+                    double rest = windowTail[b] * templateTail[tails + b];
+                    double numerator = n * (sum + rest) - sumTerm;
+                    if (numerator + slack < cutoff * boundDenominator) {
+                        scores[t] = numerator / boundDenominator;
+                        abandoned = abandoned + 1;
+                        cut = true;
+                    }
+                }
+                for (int i = b * ABANDON_BLOCK, end = Math.min(n, i + ABANDON_BLOCK); !cut && i < end; i++) {
+                    sum = sum + data[offset + i] * rows[row + i];
+                }
+            }
+            if (cut) {
+                continue;
+            }
+            scores[t] = (n * sum - sumTerm) / Math.sqrt(windowVariance * templateVariance[t]);
+            if (scores[t] > cutoff) {
+                cutoff = scores[t];
+            }
+        }
+    }
+
+    //templates abandoned in the latest score(), 0 unless created with the correlation threshold
+    public int getAbandonedCount() {
+        return abandoned;
+    }
+
+    @Override
+    public int getWindowPoints(int templateIndex) {
+        return n;
+    }
+
+    public int getTemplateCount() {
+        return templateCount;
+    }
+
+    public int size() {
+        return n;
+    }
+}
@@ -0,0 +1,411 @@
+/*
+Correlation matching against a large vocabulary of templates (hundreds of gestures, e.g. letters
+and digits), pruned by lower bounds so that most templates are never correlated.
+
+As in DtwMatcher, window and templates are z-normalized, and the squared Euclidean distance d of
+two z-normalized series of n points is 2n(1 - correlation); every distance is reported as the
+score 1 - d / 2n, the correlation of TemplateBank. The index prunes with two bounds on d:
+
+    PAA:      every series is summarized by the means of `segments` consecutive runs of points
+              (piecewise aggregate approximation), each scaled by the square root of its length.
+              The squared distance of two summaries, sum over segments of
+              length * (mean_X - mean_Y)^2, is a lower bound of d, O(segments).
+    clusters: the summaries of the templates are grouped around about sqrt(templates) centres
+              (k-means). The summary distance is a metric, so a window whose summary is D from a
+              centre is at least D - radius from the summary of every template of that cluster:
+              one bound for a whole cluster, O(segments) per cluster.
+
+A sample visits the clusters nearest first. A cluster whose bound exceeds the cutoff is skipped,
+within a visited cluster a template whose PAA bound exceeds the cutoff is skipped, and the
+distance of the rest is abandoned as soon as it exceeds the cutoff. The cutoff is the distance of
+the correlation threshold, or the distance of the topMatches-th best template so far if that is
+smaller. A skipped template gets the score of its bound, an upper bound of its real score that is
+below the threshold or the top matches, so the top matches, the best template and the detection
+are exactly those of scoring every template. The cost of a sample is O(n) for the window summary,
+O(sqrt(templates) * segments) for the clusters, O(segments) per template of a cluster that is
+not pruned and O(n) per template that is not pruned by its own bound, plus writing the score of
+every template. The summaries are stored by cluster, so a visited cluster is read sequentially.
+
+An adapted template keeps its cluster, the radius grows if needed so the bounds stay valid. The
+clusters are built again after as many adaptations as there are templates.
+
+ */
+
+package com.example.detectionengine;
+
+public class TemplateIndex implements TemplateMatcher {
+
+    //summaries and distances are compared with this much slack, so that rounding never prunes a
+    //template whose bound and distance are equal
+    private static final double SLACK = 1e-9;
+    private static final int CLUSTERING_ITERATIONS = 8;
+
+    private final int n;
+    private final int templateCount;
+    private final int segments;
+    private final int[] segmentStart;       //segment s is points segmentStart[s] .. segmentStart[s + 1]
+    private final double maxDistance;       //distance of a score equal to the correlation threshold
+    private final double[][] templates;     //z-normalized, NaN for a constant template
+    private final double[] summaries;       //summaries[t * segments + s]
+    private final double[] memberSummaries; //the summaries in the order of members
+    private final int[] position;           //of every template in members
+    private final double[] window;          //z-normalized window
+    private final double[] windowSummary;
+
+    //clusters: members[clusterStart[c] .. clusterStart[c + 1]), constant templates after the last
+    private final int clusterCount;
+    private final double[] centres;         //centres[c * segments + s]
+    private final double[] radius;
+    private final int[] clusterStart;
+    private final int[] members;
+    private final int[] clusterOf;
+    private final double[] clusterBound;
+    private final int[] clusterOrder;
+    private int updatesSinceBuild = 0;
+
+    //best matches of the latest score(), best first
+    private final int topMatches;
+    private final int[] topTemplate;
+    private final double[] topDistance;
+    private int topCount = 0;
+    private int evaluated = 0;
+
+    //the first n values of every template are matched, summarized in the given number of segments,
+    //the topMatches best templates above the correlation threshold are kept per sample
+    public TemplateIndex(double[][] templates, int n, int segments, double correlationThreshold, int topMatches) {
+        if (segments < 1 || segments > n) {
+            throw new IllegalArgumentException("Segments must be between 1 and the template points");
+        }
+        if (topMatches < 1) {
+            throw new IllegalArgumentException("At least one match must be kept");
+        }
+        this.n               = n;
+        this.templateCount   = templates.length;
+        this.segments        = segments;
+        this.segmentStart    = new int[segments + 1];
+        for (int s = 0; s <= segments; s++) {
+            segmentStart[s] = s * n / segments;
+        }
+        this.maxDistance     = 2 * n * (1 - correlationThreshold);
+        this.templates       = new double[templateCount][n];
+        this.summaries       = new double[templateCount * segments];
+        this.memberSummaries = new double[templateCount * segments];
+        this.position        = new int[templateCount];
+        this.window          = new double[n];
+        this.windowSummary   = new double[segments];
+        this.clusterCount    = (int) Math.ceil(Math.sqrt(templateCount));
+        this.centres         = new double[clusterCount * segments];
+        this.radius          = new double[clusterCount];
+        this.clusterStart    = new int[clusterCount + 1];
+        this.members         = new int[templateCount];
+        this.clusterOf       = new int[templateCount];
+        this.clusterBound    = new double[clusterCount];
+        this.clusterOrder    = new int[clusterCount];
+        this.topMatches      = topMatches;
+        this.topTemplate     = new int[topMatches];
+        this.topDistance     = new double[topMatches];
+        for (int t = 0; t < templateCount; t++) {
+            normalize(t, templates[t]);
+        }
+        build();
+    }
+
+    //segments of the summaries unless set: one per 5 template points
+    public static int defaultSegments(int n) {
+        return Math.max(1, Math.min(n, (n + 2) / 5));
+    }
+
+    @Override
+    public void setTemplate(int index, double[] template) {
+        boolean wasConstant = Double.isNaN(templates[index][0]);
+        normalize(index, template);
+        updatesSinceBuild = updatesSinceBuild + 1;
+        if (wasConstant != Double.isNaN(templates[index][0]) || updatesSinceBuild >= templateCount) {
+            build();
+        }
+        else if (!wasConstant) {
+            int c = clusterOf[index];
+            radius[c] = Math.max(radius[c], Math.sqrt(summaryDistance(summaries, index * segments, centres, c * segments)));
+            System.arraycopy(summaries, index * segments, memberSummaries, position[index] * segments, segments);
+        }
+    }
+
+    private void normalize(int index, double[] template) {
+        double sum = 0, squareSum = 0;
+        for (int i = 0; i < n; i++) {
+            sum       = sum + template[i];
+            squareSum = squareSum + template[i] * template[i];
+        }
+        double mean = sum / n;
+        double deviation = Math.sqrt(n * squareSum - sum * sum) / n;
+        double[] normalized = templates[index];
+        for (int i = 0; i < n; i++) {
+            //a constant template has no correlation with anything, as in correlationCoefficient()
+            normalized[i] = deviation > 0 ? (template[i] - mean) / deviation : Double.NaN;
+        }
+        summarize(normalized, summaries, index * segments);
+    }
+
+    private void summarize(double[] series, double[] summary, int offset) {
+        for (int s = 0; s < segments; s++) {
+            double sum = 0;
+            for (int i = segmentStart[s]; i < segmentStart[s + 1]; i++) {
+                sum = sum + series[i];
+            }
+            summary[offset + s] = sum / Math.sqrt(segmentStart[s + 1] - segmentStart[s]);
+        }
+    }
+
+    //lower bound of the squared distance of the series of two summaries
+    private double summaryDistance(double[] a, int aOffset, double[] b, int bOffset) {
+        double distance = 0;
+        for (int s = 0; s < segments; s++) {
+            double d = a[aOffset + s] - b[bOffset + s];
+            distance = distance + d * d;
+        }
+        return distance;
+    }
+
+    //groups the summaries of the templates around clusterCount centres: the first centre is the
+    //first template, every further one the template farthest from the centres so far, then a few
+    //k-means iterations
+    private void build() {
+        updatesSinceBuild = 0;
+        int first = -1;
+        for (int t = 0; t < templateCount && first < 0; t++) {
+            if (!Double.isNaN(templates[t][0])) {
+                first = t;
+            }
+        }
+        int centreCount = 0;
+        if (first >= 0) {
+            System.arraycopy(summaries, first * segments, centres, 0, segments);
+            centreCount = 1;
+        }
+        while (centreCount > 0 && centreCount < clusterCount) {
+            int farthest = -1;
+            double farthestDistance = 0;
+            for (int t = 0; t < templateCount; t++) {
+                if (!Double.isNaN(templates[t][0])) {
+                    double distance = summaryDistance(summaries, t * segments, centres, nearest(t, centreCount) * segments);
+                    if (distance > farthestDistance) {
+                        farthest         = t;
+                        farthestDistance = distance;
+                    }
+                }
+            }
+            if (farthest < 0) {
+                break; //all remaining templates coincide with a centre
+            }
+            System.arraycopy(summaries, farthest * segments, centres, centreCount * segments, segments);
+            centreCount = centreCount + 1;
+        }
+
+        for (int iteration = 0; iteration < CLUSTERING_ITERATIONS; iteration++) {
+            assign(centreCount);
+            for (int c = 0; c < centreCount; c++) {
+                if (clusterStart[c + 1] == clusterStart[c]) {
+                    continue; //an empty cluster keeps its centre
+                }
+                for (int s = 0; s < segments; s++) {
+                    double sum = 0;
+                    for (int m = clusterStart[c]; m < clusterStart[c + 1]; m++) {
+                        sum = sum + summaries[members[m] * segments + s];
+                    }
+                    centres[c * segments + s] = sum / (clusterStart[c + 1] - clusterStart[c]);
+                }
+            }
+        }
+        assign(centreCount);
+        for (int c = 0; c < clusterCount; c++) {
+            radius[c] = 0;
+            for (int m = clusterStart[c]; m < clusterStart[c + 1]; m++) {
+                radius[c] = Math.max(radius[c], Math.sqrt(summaryDistance(summaries, members[m] * segments, centres, c * segments)));
+            }
+        }
+    }
+
+    private int nearest(int t, int centreCount) {
+        int nearest = 0;
+        double nearestDistance = Double.POSITIVE_INFINITY;
+        for (int c = 0; c < centreCount; c++) {
+            double distance = summaryDistance(summaries, t * segments, centres, c * segments);
+            if (distance < nearestDistance) {
+                nearest         = c;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    //assigns every template to its nearest centre and sorts the members by cluster (counting sort)
+    private void assign(int centreCount) {
+        int[] counts = clusterStart;
+        for (int c = 0; c <= clusterCount; c++) {
+            counts[c] = 0;
+        }
+        for (int t = 0; t < templateCount; t++) {
+            clusterOf[t] = Double.isNaN(templates[t][0]) ? clusterCount : nearest(t, centreCount);
+            if (clusterOf[t] < clusterCount) {
+                counts[clusterOf[t] + 1] = counts[clusterOf[t] + 1] + 1;
+            }
+        }
+        for (int c = 0; c < clusterCount; c++) {
+            clusterStart[c + 1] = clusterStart[c + 1] + clusterStart[c];
+        }
+        int constant = clusterStart[clusterCount];
+        int[] next = clusterOrder; //free until the next score()
+        System.arraycopy(clusterStart, 0, next, 0, clusterCount);
+        for (int t = 0; t < templateCount; t++) {
+            int c = clusterOf[t];
+            if (c < clusterCount) {
+                position[t] = next[c];
+                next[c] = next[c] + 1;
+            }
+            else {
+                position[t] = constant;
+                constant = constant + 1;
+            }
+            members[position[t]] = t;
+            System.arraycopy(summaries, t * segments, memberSummaries, position[t] * segments, segments);
+        }
+    }
+
+    //writes the correlation, or an upper bound of it if pruned, of the window with every template
+    //into scores and keeps the top matches
+    @Override
+    public void score(WindowStatistics stats, double[] scores) {
+        topCount  = 0;
+        evaluated = 0;
+        double sum_X = stats.getSum();
+        double windowVariance = n * stats.getSquareSum() - sum_X * sum_X;
+        //negated so that a NaN variance (infinite window values) gives NaN scores as well
+        if (!(windowVariance > 0)) {
+            for (int t = 0; t < templateCount; t++) {
+                scores[t] = Double.NaN;
+            }
+            return;
+        }
+        double mean = sum_X / n;
+        double deviation = Math.sqrt(windowVariance) / n;
+        double[] data = stats.getWindow().array();
+        int offset = stats.getWindow().offset();
+        for (int i = 0; i < n; i++) {
+            window[i] = (data[offset + i] - mean) / deviation;
+        }
+        summarize(window, windowSummary, 0);
+
+        //clusters by their bound, nearest first (insertion sort, there are only sqrt(templates))
+        for (int c = 0; c < clusterCount; c++) {
+            double bound = Math.sqrt(summaryDistance(windowSummary, 0, centres, c * segments)) - radius[c];
+            clusterBound[c] = bound > 0 ? bound * bound : 0;
+            int k = c;
+            while (k > 0 && clusterBound[clusterOrder[k - 1]] > clusterBound[c]) {
+                clusterOrder[k] = clusterOrder[k - 1];
+                k = k - 1;
+            }
+            clusterOrder[k] = c;
+        }
+
+        for (int k = 0; k < clusterCount; k++) {
+            int c = clusterOrder[k];
+            boolean pruned = exceedsCutoff(clusterBound[c]);
+            for (int m = clusterStart[c]; m < clusterStart[c + 1]; m++) {
+                int t = members[m];
+                double distance = clusterBound[c];
+                if (!pruned) {
+                    distance = Math.max(distance, summaryDistance(windowSummary, 0, memberSummaries, m * segments));
+                    if (!exceedsCutoff(distance)) {
+                        distance = distance(templates[t]);
+                        evaluated = evaluated + 1;
+                        if (!exceedsCutoff(distance)) {
+                            addMatch(t, distance);
+                        }
+                    }
+                }
+                scores[t] = 1 - distance / (2 * n);
+            }
+        }
+        for (int m = clusterStart[clusterCount]; m < templateCount; m++) {
+            scores[members[m]] = Double.NaN;
+        }
+    }
+
+    private double cutoff() {
+        return topCount == topMatches ? Math.min(maxDistance, topDistance[topMatches - 1]) : maxDistance;
+    }
+
+    private boolean exceedsCutoff(double distance) {
+        double cutoff = cutoff();
+        return distance > cutoff + SLACK * (1 + cutoff);
+    }
+
+    //squared distance of the window to the template, or a lower bound of it above the cutoff if abandoned
+    private double distance(double[] template) {
+        double cutoff = cutoff();
+        double limit = cutoff + SLACK * (1 + cutoff);
+        double distance = 0;
+        for (int s = 0; s < segments; s++) {
+            for (int i = segmentStart[s]; i < segmentStart[s + 1]; i++) {
+                double d = window[i] - template[i];
+                distance = distance + d * d;
+            }
+            if (distance > limit) {
+                return distance;
+            }
+        }
+        return distance;
+    }
+
+    //inserts a match into the sorted top matches, the worst falls out if they are full
+    private void addMatch(int template, double distance) {
+        int k = Math.min(topCount, topMatches - 1);
+        if (topCount == topMatches && !(distance < topDistance[k])) {
+            return;
+        }
+        while (k > 0 && topDistance[k - 1] > distance) {
+            topTemplate[k] = topTemplate[k - 1];
+            topDistance[k] = topDistance[k - 1];
+            k = k - 1;
+        }
+        topTemplate[k] = template;
+        topDistance[k] = distance;
+        topCount = Math.min(topCount + 1, topMatches);
+    }
+
+    @Override
+    public int getWindowPoints(int templateIndex) {
+        return n;
+    }
+
+    //number of top matches of the latest score(), at most topMatches
+    public int getMatchCount() {
+        return topCount;
+    }
+
+    //template of the rank-th best match of the latest score(), 0 is the best
+    public int getMatch(int rank) {
+        if (rank < 0 || rank >= topCount) {
+            throw new IndexOutOfBoundsException("No match of rank " + rank);
+        }
+        return topTemplate[rank];
+    }
+
+    public double getMatchScore(int rank) {
+        getMatch(rank);
+        return 1 - topDistance[rank] / (2 * n);
+    }
+
+    //templates whose distance was computed in the latest score(), the others were pruned
+    public int getEvaluatedCount() {
+        return evaluated;
+    }
+
+    public int getTemplateCount() {
+        return templateCount;
+    }
+
+    public int getClusterCount() {
+        return clusterCount;
+    }
+}
@@ -0,0 +1,24 @@
+/*
+Scores the template window against every template of a detector.
+
+Implemented by TemplateBank (correlation of the fixed-length window, the original matching),
+DtwMatcher (dynamic time warping, tolerates motions done at another tempo), TemplatePyramid
+(correlation at several time scales) and TemplateIndex (correlation against large vocabularies,
+pruned by lower bounds). All give scores on the scale of the correlation coefficient, so the engine decides with the same correlation
+threshold and best template rules whichever matcher a detector uses.
+
+ */
+
+package com.example.detectionengine;
+
+public interface TemplateMatcher {
+
+    //replaces one template, e.g. after it was adapted
+    void setTemplate(int index, double[] template);
+
+    //writes the score of the window against every template into scores
+    void score(WindowStatistics stats, double[] scores);
+
+    //number of latest window points the last score of a template was computed on
+    int getWindowPoints(int templateIndex);
+}
@@ -0,0 +1,149 @@
+/*
+Correlation matching at several time scales, for motions done slower or faster than recorded.
+
+Every template is kept at each time scale s of the detector: its n points are linearly
+interpolated to round(s * n) points, and compared with that many of the latest window points.
+A slow walker's step takes more samples and matches a stretched template, a fast one a squeezed
+template. The score of a template is its best correlation over all scales; getWindowPoints()
+tells which scale that was.
+
+All scales of all templates are scored against the same window. The sums and ranges of the latest
+points for every scale length come from one WindowStatistics (created by newWindow()) and are
+updated in O(1) per sample and scale. As in TemplateBank, the scaled templates of one length are
+stored in one interleaved matrix, so the cross terms of all templates are formed in a single sweep
+over the window points. A sample costs one multiply-add per scaled template point, i.e. about the
+sum of the scales times the cost of TemplateBank, much less than DTW.
+
+ */
+
+package com.example.detectionengine;
+
+import java.util.Arrays;
+
+public class TemplatePyramid implements TemplateMatcher {
+
+    private final int n;
+    private final int templateCount;
+    private final int[] lengths;            //window points of every scale, ascending
+    private final double[][] matrix;        //per scale, matrix[k][i * templateCount + t]
+    private final double[][] sum_Y;
+    private final double[][] templateVariance;
+    private final double[] sum_XY;
+    private final int[] bestScale;          //of every template in the latest score
+
+    //the first n values of every template are matched at the given scales
+    public TemplatePyramid(double[][] templates, int n, double[] scales) {
+        this.n                = n;
+        this.templateCount    = templates.length;
+        this.lengths          = windowLengths(n, scales);
+        this.matrix           = new double[lengths.length][];
+        this.sum_Y            = new double[lengths.length][templateCount];
+        this.templateVariance = new double[lengths.length][templateCount];
+        for (int k = 0; k < lengths.length; k++) {
+            matrix[k] = new double[lengths[k] * templateCount];
+        }
+        this.sum_XY    = new double[templateCount];
+        this.bestScale = new int[templateCount];
+        for (int t = 0; t < templateCount; t++) {
+            setTemplate(t, templates[t]);
+        }
+    }
+
+    //distinct window lengths of the scales, ascending, at least 2 points each
+    public static int[] windowLengths(int n, double[] scales) {
+        int[] lengths = new int[scales.length];
+        for (int k = 0; k < scales.length; k++) {
+            lengths[k] = Math.max(2, (int) Math.round(scales[k] * n));
+        }
+        Arrays.sort(lengths);
+        int count = 0;
+        for (int k = 0; k < lengths.length; k++) {
+            if (k == 0 || lengths[k] != lengths[k - 1]) {
+                lengths[count] = lengths[k];
+                count = count + 1;
+            }
+        }
+        return Arrays.copyOf(lengths, count);
+    }
+
+    //window that holds the longest scale and the statistics of all others
+    public WindowStatistics newWindow() {
+        return new WindowStatistics(lengths[lengths.length - 1], lengths);
+    }
+
+    @Override
+    public void setTemplate(int index, double[] template) {
+        for (int k = 0; k < lengths.length; k++) {
+            int m = lengths[k];
+            double sum = 0, squareSum = 0;
+            for (int i = 0; i < m; i++) {
+                double y = interpolate(template, 0, n, i, m);
+                matrix[k][i * templateCount + index] = y;
+                sum       = sum + y;
+                squareSum = squareSum + y * y;
+            }
+            sum_Y[k][index]            = sum;
+            templateVariance[k][index] = m * squareSum - sum * sum;
+        }
+    }
+
+    //point i of m points linearly interpolated from values[offset .. offset + points)
+    static double interpolate(double[] values, int offset, int points, int i, int m) {
+        if (m == points) {
+            return values[offset + i];
+        }
+        double position = (double) i * (points - 1) / (m - 1);
+        int index = Math.min((int) position, points - 2);
+        double fraction = position - index;
+        return values[offset + index] + fraction * (values[offset + index + 1] - values[offset + index]);
+    }
+
+    //writes the best correlation over all scales of every template into scores
+    @Override
+    public void score(WindowStatistics stats, double[] scores) {
+        DoubleRingBuffer window = stats.getWindow();
+        double[] data = window.array();
+        int end = window.offset() + window.capacity();
+
+        for (int k = 0; k < lengths.length; k++) {
+            int m = lengths[k];
+            int offset = end - m;
+            double[] rows = matrix[k];
+            for (int t = 0; t < templateCount; t++) {
+                sum_XY[t] = 0;
+            }
+            for (int i = 0; i < m; i++) {
+                double x = data[offset + i];
+                int row = i * templateCount;
+                for (int t = 0; t < templateCount; t++) {
+                    sum_XY[t] = sum_XY[t] + x * rows[row + t];
+                }
+            }
+
+            double sum_X = stats.getSum(m);
+            double windowVariance = m * stats.getSquareSum(m) - sum_X * sum_X;
+            for (int t = 0; t < templateCount; t++) {
+                double score = (m * sum_XY[t] - sum_X * sum_Y[k][t])
+                        / Math.sqrt(windowVariance * templateVariance[k][t]);
+                //a NaN score wins as in DetectionEngine.maxCorrelation()
+                if (k == 0 || Double.compare(score, scores[t]) > 0) {
+                    scores[t]    = score;
+                    bestScale[t] = k;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getWindowPoints(int templateIndex) {
+        return lengths[bestScale[templateIndex]];
+    }
+
+    public int[] getWindowLengths() {
+        return lengths.clone();
+    }
+
+    public int getTemplateCount() {
+        return templateCount;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+Immutable set of the templates of a detector, as published by a TemplateAdapter.
+
+Every adaptation publishes a new snapshot with the next version number. Snapshots are copy on
+write: the new snapshot gets a new array for the adapted template and shares the arrays of all
+other templates with its predecessor, so the engine can tell by reference which templates changed.
+The arrays are never written after publication; outside of this package they are only handed out
+as copies.
+
+ */
+
+package com.example.detectionengine;
+
+public class TemplateSnapshot {
+
+    private final long version;
+    private final double[][] templates;
+
+    TemplateSnapshot(long version, double[][] templates) {
+        this.version   = version;
+        this.templates = templates;
+    }
+
+    //copies the templates of a configuration, version 0
+    static TemplateSnapshot initial(DetectorConfig config) {
+        double[][] templates = new double[config.getTemplateCount()][];
+        for (int t = 0; t < templates.length; t++) {
+            templates[t] = config.getTemplate(t);
+        }
+        return new TemplateSnapshot(0, templates);
+    }
+
+    //snapshot with one template replaced, the others are shared
+    TemplateSnapshot withTemplate(long newVersion, int index, double[] template) {
+        double[][] newTemplates = templates.clone();
+        newTemplates[index] = template;
+        return new TemplateSnapshot(newVersion, newTemplates);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getTemplateCount() {
+        return templates.length;
+    }
+
+    //returns a copy
+    public double[] getTemplate(int index) {
+        return templates[index].clone();
+    }
+
+    //the published array itself, must not be written
+    double[] template(int index) {
+        return templates[index];
+    }
+}
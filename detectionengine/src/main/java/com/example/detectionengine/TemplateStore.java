@@ -0,0 +1,286 @@
+/*
+Persistent store of a DetectorState in a memory-mapped file.
+
+The apps started from the hardcoded templates every time the activity was created, so everything
+the templates had learned was lost. The store keeps the latest saved state in a small file that is
+mapped into memory:
+
+    header:  magic "TSTR" (4 bytes), format version (int), slot size in bytes (int), 0 (int)
+    slot 0, slot 1, each:
+        sequence number (long), payload size (int), CRC32 of sequence and payload (int),
+        payload: number of templates (int), per template its length (int) and values (doubles),
+                 front end size (int), window size (int), detector threshold (double),
+                 template version (long), warm (int), timestamp of the last sample (long),
+                 front end state (doubles), window values (doubles)
+
+All values are big-endian, as with java.nio.ByteBuffer. load() reads the values straight from the
+mapping, nothing is parsed. A save goes to the slot that does not hold the latest state: the
+payload is written and forced to the file first, then the slot header with the next sequence
+number. A save cut off by a crash therefore fails the CRC check and load() returns the state of
+the other slot, the last complete one.
+
+Saving never blocks the processing thread: obtain() hands out one of two preallocated states (or
+null while both are waiting to be written), the engine fills it with saveState() and save()
+queues it for the writer thread, which writes it and returns it to the pool.
+
+ */
+
+package com.example.detectionengine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+
+public class TemplateStore {
+
+    public static final int MAGIC = ('T' << 24) | ('S' << 16) | ('T' << 8) | 'R';
+    public static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int SLOT_HEADER_BYTES = 16;
+
+    private static final DetectorState END_OF_STORE = new DetectorState(new int[0], 0, 0);
+
+    private final DetectorState layout;
+    private final int payloadBytes;
+    private final int slotBytes;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer mapped;
+    private final BlockingQueue<DetectorState> freeStates = new ArrayBlockingQueue<>(2);
+    private final BlockingQueue<DetectorState> pendingStates = new ArrayBlockingQueue<>(3);
+    private final Thread writerThread;
+    private volatile IOException writeError;
+
+    //owned by the writer thread after construction
+    private long sequence;
+    private int latestSlot;
+    private boolean closed = false;
+
+    //opens or creates the store of an engine, layout is from engine.newState(). A file written
+    //for another detector is started again.
+    public TemplateStore(File file, DetectorState layout) throws IOException {
+        this.layout       = layout;
+        this.payloadBytes = payloadBytes(layout);
+        this.slotBytes    = SLOT_HEADER_BYTES + payloadBytes;
+        this.file         = new RandomAccessFile(file, "rw");
+        boolean existing = this.file.length() == HEADER_BYTES + 2L * slotBytes;
+        this.mapped       = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + 2L * slotBytes);
+        if (!existing || mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION || mapped.getInt(8) != slotBytes) {
+            for (int i = 0; i < HEADER_BYTES + 2 * slotBytes; i++) {
+                mapped.put(i, (byte) 0);
+            }
+            mapped.putInt(0, MAGIC);
+            mapped.putInt(4, VERSION);
+            mapped.putInt(8, slotBytes);
+            mapped.force();
+        }
+        this.latestSlot = latestSlot();
+        this.sequence   = latestSlot >= 0 ? mapped.getLong(slotOffset(latestSlot)) : 0;
+
+        for (int i = 0; i < 2; i++) {
+            freeStates.add(copyLayout(layout));
+        }
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "TemplateStore");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    static int payloadBytes(DetectorState state) {
+        int bytes = 4;
+        for (double[] template : state.templates) {
+            bytes = bytes + 4 + 8 * template.length;
+        }
+        return bytes + 4 + 4 + 8 + 8 + 4 + 8 + 8 * state.frontEnd.length + 8 * state.window.length;
+    }
+
+    private static DetectorState copyLayout(DetectorState layout) {
+        int[] templateLengths = new int[layout.templates.length];
+        for (int t = 0; t < templateLengths.length; t++) {
+            templateLengths[t] = layout.templates[t].length;
+        }
+        return new DetectorState(templateLengths, layout.frontEnd.length, layout.window.length);
+    }
+
+    private int slotOffset(int slot) {
+        return HEADER_BYTES + slot * slotBytes;
+    }
+
+    //the latest saved state, null if nothing complete was saved yet
+    public DetectorState load() {
+        int slot = latestSlot();
+        if (slot < 0) {
+            return null;
+        }
+        DetectorState state = copyLayout(layout);
+        ByteBuffer in = mapped.duplicate();
+        in.position(slotOffset(slot) + SLOT_HEADER_BYTES);
+        in.getInt(); //template count, checked in validSlot()
+        for (double[] template : state.templates) {
+            in.getInt();
+            for (int i = 0; i < template.length; i++) {
+                template[i] = in.getDouble();
+            }
+        }
+        in.getInt();
+        in.getInt();
+        state.detectorThreshold = in.getDouble();
+        state.templateVersion   = in.getLong();
+        state.warm              = in.getInt() != 0;
+        state.timestampNanos    = in.getLong();
+        for (int i = 0; i < state.frontEnd.length; i++) {
+            state.frontEnd[i] = in.getDouble();
+        }
+        for (int i = 0; i < state.window.length; i++) {
+            state.window[i] = in.getDouble();
+        }
+        return state;
+    }
+
+    //a preallocated state to fill with DetectionEngine.saveState(), null if both are still waiting
+    //to be written. Never blocks.
+    public DetectorState obtain() {
+        return freeStates.poll();
+    }
+
+    //queues a state from obtain() for writing, returns at once
+    public void save(DetectorState state) {
+        if (closed) {
+            freeStates.add(state);
+            return;
+        }
+        pendingStates.add(state);
+    }
+
+    //writes the queued states and closes the file, after the last save()
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pendingStates.add(END_OF_STORE);
+        try {
+            writerThread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        file.close();
+        if (writeError != null) {
+            throw writeError;
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            DetectorState state;
+            try {
+                state = pendingStates.take();
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            if (state == END_OF_STORE) {
+                return;
+            }
+            try {
+                write(state);
+            }
+            catch (RuntimeException e) {
+                writeError = new IOException("Could not write the template store", e);
+            }
+            freeStates.add(state);
+        }
+    }
+
+    private void write(DetectorState state) {
+        int slot = latestSlot == 0 ? 1 : 0;
+        int offset = slotOffset(slot);
+        ByteBuffer out = mapped.duplicate();
+        out.position(offset + SLOT_HEADER_BYTES);
+        out.putInt(state.templates.length);
+        for (double[] template : state.templates) {
+            out.putInt(template.length);
+            for (double value : template) {
+                out.putDouble(value);
+            }
+        }
+        out.putInt(state.frontEnd.length);
+        out.putInt(state.window.length);
+        out.putDouble(state.detectorThreshold);
+        out.putLong(state.templateVersion);
+        out.putInt(state.warm ? 1 : 0);
+        out.putLong(state.timestampNanos);
+        for (double value : state.frontEnd) {
+            out.putDouble(value);
+        }
+        for (double value : state.window) {
+            out.putDouble(value);
+        }
+        mapped.force();
+
+        long nextSequence = sequence + 1;
+        mapped.putLong(offset, nextSequence);
+        mapped.putInt(offset + 8, payloadBytes);
+        mapped.putInt(offset + 12, checksum(offset, nextSequence));
+        mapped.force();
+        sequence   = nextSequence;
+        latestSlot = slot;
+    }
+
+    private int checksum(int offset, long slotSequence) {
+        CRC32 crc = new CRC32();
+        ByteBuffer sequenceBytes = ByteBuffer.allocate(8);
+        sequenceBytes.putLong(0, slotSequence);
+        crc.update(sequenceBytes);
+        ByteBuffer payload = mapped.duplicate();
+        payload.position(offset + SLOT_HEADER_BYTES);
+        payload.limit(offset + SLOT_HEADER_BYTES + payloadBytes);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    //slot of the complete state with the highest sequence number, -1 if there is none
+    private int latestSlot() {
+        int latest = -1;
+        long latestSequence = 0;
+        for (int slot = 0; slot < 2; slot++) {
+            int offset = slotOffset(slot);
+            long slotSequence = mapped.getLong(offset);
+            if (slotSequence > latestSequence && validSlot(offset, slotSequence)) {
+                latest         = slot;
+                latestSequence = slotSequence;
+            }
+        }
+        return latest;
+    }
+
+    private boolean validSlot(int offset, long slotSequence) {
+        if (mapped.getInt(offset + 8) != payloadBytes
+                || mapped.getInt(offset + 12) != checksum(offset, slotSequence)) {
+            return false;
+        }
+        //the sizes in the payload must be those of this detector
+        ByteBuffer in = mapped.duplicate();
+        in.position(offset + SLOT_HEADER_BYTES);
+        if (in.getInt() != layout.templates.length) {
+            return false;
+        }
+        for (double[] template : layout.templates) {
+            if (in.getInt() != template.length) {
+                return false;
+            }
+            in.position(in.position() + 8 * template.length);
+        }
+        return in.getInt() == layout.frontEnd.length && in.getInt() == layout.window.length;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+Ring buffer of the per-sample state of a detector, for diagnosing detections in the field.
+
+The apps used to build a log string for every event ("Correlation is ...", "Speed smooth is ...",
+the whole template window in computeCorrelation()). The recorder keeps the same information as
+primitive fields, one column array per field, preallocated for the latest capacity samples:
+
+    timestamp, magnitude, smoothed derivative,
+    mean and range of the window matched by the best template (the whole window during the
+    refractory period),
+    highest score (NaN during the refractory period), its template and the detected template
+    (NO_DETECTION if none).
+
+Recording is a few array stores, nothing is formatted until dump() is called. A DetectionEngine
+records into the recorder given to setTraceRecorder(); without one, or while the recorder is
+disabled, it only pays a check. record() and dump() run on the processing thread (the apps post
+the dump to their sensor thread); setEnabled() may be called from any thread.
+
+ */
+
+package com.example.detectionengine;
+
+import java.io.IOException;
+import java.util.Locale;
+
+public class TraceRecorder {
+
+    private final long[] timestamps;
+    private final float[] magnitudes;
+    private final double[] speedSmooth;
+    private final double[] windowMean;
+    private final double[] windowRange;
+    private final double[] scores;
+    private final int[] bestTemplates;
+    private final int[] detections;
+    private volatile boolean enabled = true;
+    private int next = 0;
+    private long recorded = 0;
+
+    public TraceRecorder(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.timestamps    = new long[capacity];
+        this.magnitudes    = new float[capacity];
+        this.speedSmooth   = new double[capacity];
+        this.windowMean    = new double[capacity];
+        this.windowRange   = new double[capacity];
+        this.scores        = new double[capacity];
+        this.bestTemplates = new int[capacity];
+        this.detections    = new int[capacity];
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    //adds one sample, overwriting the oldest one once the buffer is full
+    public void record(long timestampNanos, float magnitude, double speed, double mean, double range,
+                       double score, int bestTemplate, int detected) {
+        int i = next;
+        timestamps[i]    = timestampNanos;
+        magnitudes[i]    = magnitude;
+        speedSmooth[i]   = speed;
+        windowMean[i]    = mean;
+        windowRange[i]   = range;
+        scores[i]        = score;
+        bestTemplates[i] = bestTemplate;
+        detections[i]    = detected;
+        next     = i + 1 == timestamps.length ? 0 : i + 1;
+        recorded = recorded + 1;
+    }
+
+    public void clear() {
+        next     = 0;
+        recorded = 0;
+    }
+
+    //number of samples held, at most the capacity
+    public int size() {
+        return (int) Math.min(recorded, timestamps.length);
+    }
+
+    //samples recorded since the last clear(), including the overwritten ones
+    public long getRecorded() {
+        return recorded;
+    }
+
+    //position of the k-th oldest held sample in the columns
+    private int index(int k) {
+        int start = recorded > timestamps.length ? next : 0;
+        int i = start + k;
+        return i >= timestamps.length ? i - timestamps.length : i;
+    }
+
+    public long getTimestamp(int k) {
+        return timestamps[index(k)];
+    }
+
+    public double getRange(int k) {
+        return windowRange[index(k)];
+    }
+
+    public double getScore(int k) {
+        return scores[index(k)];
+    }
+
+    public int getDetection(int k) {
+        return detections[index(k)];
+    }
+
+    //writes the held samples, oldest first, as CSV with a header line
+    public void dump(Appendable out) throws IOException {
+        out.append("timestamp,magnitude,speedSmooth,windowMean,windowRange,score,bestTemplate,detected\n");
+        for (int k = 0; k < size(); k++) {
+            int i = index(k);
+            out.append(String.format(Locale.US, "%d,%s,%s,%s,%s,%s,%d,%d\n", timestamps[i],
+                    Float.toString(magnitudes[i]), Double.toString(speedSmooth[i]),
+                    Double.toString(windowMean[i]), Double.toString(windowRange[i]),
+                    Double.toString(scores[i]), bestTemplates[i], detections[i]));
+        }
+    }
+}
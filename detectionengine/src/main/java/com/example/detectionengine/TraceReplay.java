@@ -0,0 +1,102 @@
+/*
+Command line tool that replays a recorded trace through the detection engine as fast as possible.
+
+    java -cp detectionengine.jar com.example.detectionengine.TraceReplay step 0.15 data_step.csv [repetitions]
+
+The detector is step, shake or gesture, followed by the detector threshold entered in the app and
+a trace as written by the apps, either a data_*.csv file or a binary data_*.bin sample log.
+Every detection is written to standard output as "sampleIndex,event_time,templateIndex", the same
+format as the expected outputs of the golden corpus, so the output of two builds can be diffed.
+
+The throughput (samples/s, detections/s) is written to standard error. With repetitions > 1 the
+trace is replayed that many times with a new engine each time, the first runs warm up the JIT and
+the fastest run is reported.
+
+ */
+
+package com.example.detectionengine;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TraceReplay {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3 || args.length > 4) {
+            System.err.println("Usage: TraceReplay <step|shake|gesture> <detectorThreshold> <trace.csv|trace.bin> [repetitions]");
+            System.exit(2);
+        }
+        DetectorConfig config = detectorConfig(args[0]);
+        double detectorThreshold = Double.parseDouble(args[1]);
+        RecordedTrace trace = readTrace(new File(args[2]));
+        int repetitions = args.length == 4 ? Integer.parseInt(args[3]) : 1;
+
+        List<Detection> detections = null;
+        long bestNanos = Long.MAX_VALUE;
+        for (int r = 0; r < repetitions; r++) {
+            long start = System.nanoTime();
+            detections = replay(config, detectorThreshold, trace);
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+        }
+
+        StringBuilder out = new StringBuilder();
+        for (Detection detection : detections) {
+            out.append(detection).append('\n');
+        }
+        System.out.print(out);
+        System.out.flush();
+
+        double seconds = Math.max(bestNanos, 1L) / 1e9;
+        System.err.println(trace.size() + " samples, " + detections.size() + " detections in "
+                + String.format("%.3f ms", seconds * 1e3));
+        System.err.println(String.format("%.0f samples/s, %.0f detections/s",
+                trace.size() / seconds, detections.size() / seconds));
+    }
+
+    //the detector of one of the apps, by name
+    public static DetectorConfig detectorConfig(String name) {
+        switch (name) {
+            case "step":
+                return DetectorConfig.step();
+            case "shake":
+                return DetectorConfig.shake();
+            case "gesture":
+                return DetectorConfig.gesture();
+            default:
+                throw new IllegalArgumentException("Unknown detector " + name + ", expected step, shake or gesture");
+        }
+    }
+
+    //reads a binary sample log or, if the file does not start with the log header, a CSV trace
+    public static RecordedTrace readTrace(File file) throws IOException {
+        boolean binary;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            binary = file.length() >= SampleLogFormat.HEADER_BYTES && in.readInt() == SampleLogFormat.MAGIC;
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+            return binary ? SampleLogFormat.read(in) : RecordedTrace.readCsv(in);
+        }
+    }
+
+    //streams the trace sample by sample through a new engine, as the app would have
+    public static List<Detection> replay(DetectorConfig config, double detectorThreshold, RecordedTrace trace) {
+        DetectionEngine engine = new DetectionEngine(config);
+        engine.setDetectorThreshold(detectorThreshold);
+        float[] magnitudes = trace.getMagnitudes();
+        long[] timestamps = trace.getTimestamps();
+        List<Detection> detections = new ArrayList<>();
+        for (int i = 0; i < trace.size(); i++) {
+            int detected = engine.processMagnitude(magnitudes[i], timestamps[i]);
+            if (detected != DetectionEngine.NO_DETECTION) {
+                detections.add(new Detection(i, timestamps[i], detected, engine.getLastCorrelation()));
+            }
+        }
+        return detections;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+Template window with running statistics.
+
+The window values live in a DoubleRingBuffer; the sum and the sum of squares are updated as values
+enter and leave the window, so they cost O(1) per sample instead of a rescan of the whole window.
+To keep rounding errors of the running sums from accumulating, both sums are recomputed exactly
+once every capacity samples, which is still O(1) per sample on average, and whenever a non-finite
+value leaves the window.
+The minimum and maximum of the window are tracked by a SlidingRange.
+
+For matching at several time scales (see TemplatePyramid) the same statistics can also be kept
+for the latest points of shorter lengths. They share the ring buffer and are updated in the same
+way, O(1) per sample and length.
+
+ */
+
+package com.example.detectionengine;
+
+import java.util.Arrays;
+
+public class WindowStatistics {
+
+    private final DoubleRingBuffer window;
+    private final SlidingRange range;
+    private double sum = 0;
+    private double squareSum = 0;
+    private int samplesSinceResync = 0;
+
+    //statistics of the latest suffixLengths[k] points, suffixIndex[points] is k or -1
+    private final int[] suffixLengths;
+    private final int[] suffixIndex;
+    private final double[] suffixSum;
+    private final double[] suffixSquareSum;
+    private final SlidingRange[] suffixRange;
+
+    public WindowStatistics(int capacity) {
+        this(capacity, new int[0]);
+    }
+
+    //also keeps the statistics of the latest points for each of the given lengths
+    public WindowStatistics(int capacity, int[] suffixLengths) {
+        this.window = new DoubleRingBuffer(capacity);
+        this.range  = new SlidingRange(capacity);
+        int count = 0;
+        this.suffixIndex = new int[capacity + 1];
+        Arrays.fill(suffixIndex, -1);
+        for (int length : suffixLengths) {
+            if (length < 1 || length > capacity) {
+                throw new IllegalArgumentException("Length " + length + " is not inside the window");
+            }
+            if (length < capacity && suffixIndex[length] < 0) {
+                suffixIndex[length] = count;
+                count = count + 1;
+            }
+        }
+        this.suffixLengths   = new int[count];
+        this.suffixSum       = new double[count];
+        this.suffixSquareSum = new double[count];
+        this.suffixRange     = new SlidingRange[count];
+        for (int length = 1; length < capacity; length++) {
+            int k = suffixIndex[length];
+            if (k >= 0) {
+                this.suffixLengths[k] = length;
+                this.suffixRange[k]   = new SlidingRange(length);
+            }
+        }
+    }
+
+    public void add(double value) {
+        for (int k = 0; k < suffixLengths.length; k++) {
+            double dropped = window.get(window.capacity() - suffixLengths[k]);
+            suffixRange[k].add(value);
+            if (Double.isNaN(dropped) || Double.isInfinite(dropped)) {
+                suffixSum[k]       = Double.NaN; //recomputed below
+            }
+            else {
+                suffixSum[k]       = suffixSum[k] + value - dropped;
+                suffixSquareSum[k] = suffixSquareSum[k] + value * value - dropped * dropped;
+            }
+        }
+
+        double dropped = window.add(value);
+        range.add(value);
+        samplesSinceResync = samplesSinceResync + 1;
+        //an infinite or NaN value (e.g. a jerk over a repeated timestamp) would keep the running
+        //sums NaN after it has left the window, the rescan recovers as the original code did
+        if (samplesSinceResync == window.capacity() || Double.isNaN(dropped) || Double.isInfinite(dropped)) {
+            resync();
+        }
+        else {
+            sum       = sum + value - dropped;
+            squareSum = squareSum + value * value - dropped * dropped;
+            for (int k = 0; k < suffixLengths.length; k++) {
+                if (Double.isNaN(suffixSum[k])) {
+                    resyncSuffix(k);
+                }
+            }
+        }
+    }
+
+    //sets every window value to zero
+    public void clear() {
+        window.fill(0.0);
+        range.clear();
+        sum                = 0;
+        squareSum          = 0;
+        samplesSinceResync = 0;
+        for (int k = 0; k < suffixLengths.length; k++) {
+            suffixRange[k].clear();
+            suffixSum[k]       = 0;
+            suffixSquareSum[k] = 0;
+        }
+    }
+
+    private void resync() {
+        double[] data = window.array();
+        int offset = window.offset();
+        double newSum = 0, newSquareSum = 0;
+        for (int i = 0; i < window.capacity(); i++) {
+            double x = data[offset + i];
+            newSum       = newSum + x;
+            newSquareSum = newSquareSum + x * x;
+        }
+        sum                = newSum;
+        squareSum          = newSquareSum;
+        samplesSinceResync = 0;
+        for (int k = 0; k < suffixLengths.length; k++) {
+            resyncSuffix(k);
+        }
+    }
+
+    private void resyncSuffix(int k) {
+        double[] data = window.array();
+        int end = window.offset() + window.capacity();
+        double newSum = 0, newSquareSum = 0;
+        for (int i = end - suffixLengths[k]; i < end; i++) {
+            double x = data[i];
+            newSum       = newSum + x;
+            newSquareSum = newSquareSum + x * x;
+        }
+        suffixSum[k]       = newSum;
+        suffixSquareSum[k] = newSquareSum;
+    }
+
+    public DoubleRingBuffer getWindow() {
+        return window;
+    }
+
+    public int size() {
+        return window.capacity();
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getSquareSum() {
+        return squareSum;
+    }
+
+    //maximum minus minimum of the window
+    public double getRange() {
+        return range.getRange();
+    }
+
+    //sum of the latest points values, points is the capacity or one of the suffix lengths
+    public double getSum(int points) {
+        return points == window.capacity() ? sum : suffixSum[suffix(points)];
+    }
+
+    public double getSquareSum(int points) {
+        return points == window.capacity() ? squareSum : suffixSquareSum[suffix(points)];
+    }
+
+    public double getRange(int points) {
+        return points == window.capacity() ? range.getRange() : suffixRange[suffix(points)].getRange();
+    }
+
+    private int suffix(int points) {
+        int k = points > 0 && points < suffixIndex.length ? suffixIndex[points] : -1;
+        if (k < 0) {
+            throw new IllegalArgumentException("No statistics are kept for the latest " + points + " points");
+        }
+        return k;
+    }
+}
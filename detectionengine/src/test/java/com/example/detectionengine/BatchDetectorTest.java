@@ -0,0 +1,109 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BatchDetectorTest {
+
+    //noisy magnitude trace with the first template of the config inserted at random places
+    static RecordedTrace syntheticTrace(DetectorConfig config, int count, long seed) {
+        Random random = new Random(seed);
+        double[] template = config.getTemplate(0);
+        boolean jerk = config.getDerivativeMode() == DetectorConfig.DerivativeMode.DIVIDED_BY_DT;
+        float[] magnitudes = new float[count];
+        long[] timestamps = new long[count];
+        long time = 0;
+        float magnitude = 0f;
+        int position = -1;
+        for (int i = 0; i < count; i++) {
+            time = time + 15_000_000 + random.nextInt(10_000_000);
+            if (position < 0 && random.nextInt(60) == 0) {
+                position = 0;
+            }
+            float delta = (float) (random.nextGaussian() * 0.3);
+            if (position >= 0) {
+                delta = delta + (float) (jerk ? template[position] * 0.02 : 20 * template[position] / 0.02);
+                position = position + 1;
+                if (position == config.getTemplatePoints()) {
+                    position = -1;
+                }
+            }
+            magnitude = (magnitude + delta) * 0.98f;
+            magnitudes[i] = magnitude;
+            timestamps[i] = time;
+        }
+        return new RecordedTrace(magnitudes, timestamps, count);
+    }
+
+    //the trace with single sample spikes every 150 to 250 samples, so that quiet windows share their
+    //FFT block with values many orders of magnitude larger
+    static RecordedTrace withSpikes(RecordedTrace trace, double amplitude, long seed) {
+        Random random = new Random(seed);
+        float[] magnitudes = Arrays.copyOf(trace.getMagnitudes(), trace.size());
+        for (int i = 100; i < magnitudes.length; i += 150 + random.nextInt(100)) {
+            magnitudes[i] = magnitudes[i] + (float) amplitude;
+        }
+        return new RecordedTrace(magnitudes, trace.getTimestamps(), trace.size());
+    }
+
+    static List<Detection> streamingDetections(DetectorConfig config, RecordedTrace trace, double threshold) {
+        DetectionEngine engine = new DetectionEngine(config);
+        engine.setDetectorThreshold(threshold);
+        List<Detection> detections = new ArrayList<>();
+        for (int i = 0; i < trace.size(); i++) {
+            int detected = engine.processMagnitude(trace.getMagnitudes()[i], trace.getTimestamps()[i]);
+            if (detected != DetectionEngine.NO_DETECTION) {
+                detections.add(new Detection(i, trace.getTimestamps()[i], detected, engine.getLastCorrelation()));
+            }
+        }
+        return detections;
+    }
+
+    @Test
+    public void reportsTheSameDetectionsAsTheStreamingEngine() {
+        DetectorConfig[] configs = {DetectorConfig.step(), DetectorConfig.shake(), DetectorConfig.gesture()};
+        double[] thresholds = {0.1, 50, 0.1};
+        for (int c = 0; c < configs.length; c++) {
+            RecordedTrace trace = syntheticTrace(configs[c], 50000, c);
+            //a large dynamic range within the FFT blocks
+            RecordedTrace[] traces = {trace, withSpikes(trace, 1e15, c), withSpikes(trace, 1e18, c)};
+            for (RecordedTrace t : traces) {
+                List<Detection> expected = streamingDetections(configs[c], t, thresholds[c]);
+                assertFalse(expected.isEmpty());
+                assertEquals(expected, new BatchDetector(configs[c]).detect(t, thresholds[c]));
+            }
+        }
+    }
+
+    @Test
+    public void fftMatchesTheDirectTransform() {
+        Fft fft = new Fft(16);
+        double[] re = new double[16];
+        double[] im = new double[16];
+        Random random = new Random(3);
+        for (int i = 0; i < 16; i++) {
+            re[i] = random.nextGaussian();
+        }
+        double[] input = re.clone();
+        fft.forward(re, im);
+        for (int k = 0; k < 16; k++) {
+            double expectedRe = 0, expectedIm = 0;
+            for (int i = 0; i < 16; i++) {
+                expectedRe += input[i] * Math.cos(2 * Math.PI * k * i / 16);
+                expectedIm -= input[i] * Math.sin(2 * Math.PI * k * i / 16);
+            }
+            assertEquals(expectedRe, re[k], 1e-12);
+            assertEquals(expectedIm, im[k], 1e-12);
+        }
+        fft.inverse(re, im);
+        for (int i = 0; i < 16; i++) {
+            assertEquals(input[i], re[i], 1e-12);
+        }
+    }
+}
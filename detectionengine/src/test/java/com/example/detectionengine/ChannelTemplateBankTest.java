@@ -0,0 +1,133 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ChannelTemplateBankTest {
+
+    private static final int N = 20;
+    private static final int REST = 10;
+    private static final long SAMPLE_PERIOD_NANOS = 20_000_000L;
+
+    //rest, then a push of the device along the given accelerometer axis, as columns x, y, z
+    private static float[][] push(int axis) {
+        float[][] samples = new float[3][REST + N];
+        for (int i = 0; i < REST + N; i++) {
+            samples[2][i] = 9.8f;
+            if (i >= REST) {
+                samples[axis][i] = samples[axis][i] + (float) (3 * Math.sin(Math.PI * (i - REST) / (N - 1)));
+            }
+        }
+        return samples;
+    }
+
+    private static long[] timestamps(int count) {
+        long[] timestamps = new long[count];
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = i * SAMPLE_PERIOD_NANOS;
+        }
+        return timestamps;
+    }
+
+    //templates of pushes along x and along y, whose magnitudes are the same
+    private static DetectorConfig pushConfig() {
+        DetectorConfig base = new DetectorConfig(new String[]{"X", "Y"}, new double[2][N], N, 0.9,
+                DetectorConfig.DerivativeMode.SCALED_BY_DT);
+        double[][] magnitudeTemplates = new double[2][N];
+        double[][][] axisTemplates = new double[2][3][N];
+        for (int t = 0; t < 2; t++) {
+            float[][] samples = push(t);
+            SignalFrontEnd frontEnd = new SignalFrontEnd(base);
+            ChannelFrontEnd axisFrontEnd = new ChannelFrontEnd(base, 3);
+            double[] axisValues = new double[3];
+            for (int i = 0; i < REST + N; i++) {
+                long timestamp = i * SAMPLE_PERIOD_NANOS;
+                double speed = frontEnd.process(
+                        SignalFrontEnd.magnitude(samples[0][i], samples[1][i], samples[2][i]), timestamp);
+                axisFrontEnd.process(samples, i, timestamp, axisValues);
+                if (i >= REST) {
+                    magnitudeTemplates[t][i - REST] = speed;
+                    for (int a = 0; a < 3; a++) {
+                        axisTemplates[t][a][i - REST] = axisValues[a];
+                    }
+                }
+            }
+        }
+        return new DetectorConfig(new String[]{"X", "Y"}, magnitudeTemplates, N, 0.9,
+                DetectorConfig.DerivativeMode.SCALED_BY_DT)
+                .setChannels(DetectorConfig.Channels.ACCELEROMETER, axisTemplates);
+    }
+
+    @Test
+    public void withoutAxesScoresLikeTheTemplateBank() {
+        DetectorConfig config = DetectorConfig.gesture();
+        int n = config.getTemplatePoints();
+        double[][] templates = new double[config.getTemplateCount()][];
+        for (int t = 0; t < templates.length; t++) {
+            templates[t] = config.getTemplate(t);
+        }
+        WindowStatistics stats = new WindowStatistics(n);
+        TemplateBank bank = new TemplateBank(templates, n);
+        ChannelTemplateBank channelBank = new ChannelTemplateBank(templates, new double[templates.length][0][],
+                n, new WindowStatistics[0]);
+        double[] expected = new double[templates.length];
+        double[] scores = new double[templates.length];
+        Random random = new Random(3);
+        for (int k = 0; k < 1000; k++) {
+            stats.add(random.nextGaussian());
+            bank.score(stats, expected);
+            channelBank.score(stats, scores);
+            assertArrayEquals(expected, scores, 1e-9);
+        }
+    }
+
+    @Test
+    public void axesSeparateMotionsWithTheSameMagnitude() {
+        DetectorConfig config = pushConfig();
+        float[][] samples = push(0);
+        long[] timestamps = timestamps(REST + N);
+
+        DetectionEngine engine = new DetectionEngine(config);
+        engine.setDetectorThreshold(0.0);
+        assertEquals(1, engine.processChannels(samples, timestamps, REST + N));
+        assertEquals(0, engine.getLastDetectedTemplate());
+
+        engine.reset();
+        assertEquals(1, engine.processChannels(push(1), timestamps, REST + N));
+        assertEquals(1, engine.getLastDetectedTemplate());
+
+        //on the magnitude alone both templates are the same, the last one wins the tie
+        DetectorConfig magnitudeOnly = new DetectorConfig(new String[]{"X", "Y"},
+                new double[][]{config.getTemplate(0), config.getTemplate(1)}, N, 0.9,
+                DetectorConfig.DerivativeMode.SCALED_BY_DT);
+        DetectionEngine magnitudeEngine = new DetectionEngine(magnitudeOnly);
+        magnitudeEngine.setDetectorThreshold(0.0);
+        float[] xyz = new float[3 * (REST + N)];
+        for (int i = 0; i < REST + N; i++) {
+            xyz[3 * i]     = samples[0][i];
+            xyz[3 * i + 1] = samples[1][i];
+            xyz[3 * i + 2] = samples[2][i];
+        }
+        assertEquals(1, magnitudeEngine.processBatch(xyz, timestamps, REST + N));
+        assertEquals(1, magnitudeEngine.getLastDetectedTemplate());
+
+        //the accelerometer axes are also taken from the interleaved batches of the apps
+        DetectionEngine batchEngine = new DetectionEngine(config);
+        batchEngine.setDetectorThreshold(0.0);
+        assertEquals(1, batchEngine.processBatch(xyz, timestamps, REST + N));
+        assertEquals(0, batchEngine.getLastDetectedTemplate());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void multiChannelDetectorNeedsTheAxes() {
+        new DetectionEngine(pushConfig()).processMagnitude(0f, 0L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void axisTemplatesAreNeededForEveryTemplate() {
+        DetectorConfig.gesture().setChannels(DetectorConfig.Channels.ACCELEROMETER, new double[3][20]);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DecisionStageTest {
+
+    private static final long SAMPLE_PERIOD_NANOS = 20_000_000L;
+
+    //eight noisy steps at the given tempo, returns the detections
+    private static int walk(DetectionEngine engine, double tempo) {
+        double[] template = DetectorConfig.step().getTemplate(0);
+        int period = (int) Math.round(14 * tempo);
+        Random random = new Random(1);
+        float magnitude = 0f;
+        double dt = SAMPLE_PERIOD_NANOS / 1e9;
+        int detections = 0;
+        for (int i = 0; i < 8 * period; i++) {
+            double value = TemplatePyramid.interpolate(template, 0, 14, i % period, period);
+            magnitude += (float) (20.0 * value / dt + 0.3 * random.nextGaussian());
+            if (engine.processMagnitude(magnitude, i * SAMPLE_PERIOD_NANOS) != DetectionEngine.NO_DETECTION) {
+                detections++;
+            }
+        }
+        return detections;
+    }
+
+    private static DoubleRingBuffer window(double... values) {
+        DoubleRingBuffer window = new DoubleRingBuffer(values.length);
+        for (double value : values) {
+            window.add(value);
+        }
+        return window;
+    }
+
+    @Test
+    public void withoutLookaheadTheFirstCrossingIsDetected() {
+        DecisionStage stage = new DecisionStage(0, 0, 3);
+        assertEquals(DetectionEngine.NO_DETECTION, stage.decide(false, 0.5, 0, 3, window(1, 2, 3)));
+        assertEquals(1, stage.decide(true, 0.8, 1, 3, window(4, 5, 6)));
+        assertEquals(0.8, stage.getDetectedScore(), 0.0);
+        assertFalse(stage.isLockedOut());
+    }
+
+    @Test
+    public void localMaximumWithinTheLookaheadIsDetected() {
+        DecisionStage stage = new DecisionStage(2, 0, 3);
+        assertEquals(DetectionEngine.NO_DETECTION, stage.decide(true, 0.75, 0, 3, window(1, 2, 3)));
+        assertEquals(DetectionEngine.NO_DETECTION, stage.decide(true, 0.9, 1, 2, window(2, 3, 4)));
+        assertEquals(DetectionEngine.NO_DETECTION, stage.decide(true, 0.8, 0, 3, window(3, 4, 5)));
+        assertEquals(1, stage.decide(false, 0.2, 0, 3, window(4, 5, 6)));
+        assertEquals(0.9, stage.getDetectedScore(), 0.0);
+        //the window of the peak, not the live one
+        assertEquals(2, stage.getDetectedPoints());
+        int offset = stage.getDetectedOffset();
+        assertEquals(3.0, stage.getDetectedWindow()[offset], 0.0);
+        assertEquals(4.0, stage.getDetectedWindow()[offset + 1], 0.0);
+        assertFalse(stage.hasCandidate());
+    }
+
+    @Test
+    public void candidateWaitsAtMostOneWindow() {
+        DecisionStage stage = new DecisionStage(4, 0, 3);
+        double score = 0.71;
+        int detected = DetectionEngine.NO_DETECTION;
+        int samples = 0;
+        while (detected == DetectionEngine.NO_DETECTION) {
+            score = score + 0.01;
+            detected = stage.decide(true, score, 0, 3, window(1, 2, 3));
+            samples++;
+        }
+        assertEquals(5, samples);
+    }
+
+    @Test
+    public void refractoryPeriodLocksOutTheFollowingSamples() {
+        DecisionStage stage = new DecisionStage(0, 3, 3);
+        stage.decide(true, 0.8, 0, 3, window(1, 2, 3));
+        assertTrue(stage.isLockedOut());
+        assertTrue(stage.isLockedOut());
+        assertTrue(stage.isLockedOut());
+        assertFalse(stage.isLockedOut());
+
+        stage.decide(true, 0.8, 0, 3, window(1, 2, 3));
+        stage.reset();
+        assertFalse(stage.isLockedOut());
+    }
+
+    @Test
+    public void matcherIsSkippedDuringTheLockout() {
+        DetectorConfig config = DetectorConfig.step().setRefractoryPeriod(10);
+        DetectionEngine engine = new DetectionEngine(config);
+        engine.setDetectorThreshold(0.01);
+        assertTrue(DetectionEngineTest.feedTemplateShape(engine, config.getTemplate(0), 20.0, 0L) >= 1);
+        double correlation = engine.getLastCorrelation();
+        //a detection at the end of the template, the samples after it are locked out
+        DetectionEngineTest.feedTemplateShape(engine, new double[]{-0.1, 0.2, -0.3}, 20.0, 1_000_000_000L);
+        assertEquals(correlation, engine.getLastCorrelation(), 0.0);
+    }
+
+    @Test
+    public void peakPickingCountsEveryStepOnceAtItsTempo() {
+        for (double tempo : new double[]{0.7, 1.0, 1.4}) {
+            DetectionEngine firstCrossing = new DetectionEngine(DetectorConfig.step()
+                    .setTimeScales(0.7, 0.85, 1.0, 1.2, 1.4));
+            DetectionEngine peak = new DetectionEngine(DetectorConfig.step()
+                    .setTimeScales(0.7, 0.85, 1.0, 1.2, 1.4).setPeakLookahead(3).setRefractoryPeriod(5));
+            firstCrossing.setDetectorThreshold(0.01);
+            peak.setDetectorThreshold(0.01);
+            //the last step is still within the lookahead at the end of the walk
+            assertEquals(7, walk(peak, tempo));
+            assertEquals(tempo, peak.getLastDetectedScale(), 0.05);
+            if (tempo > 0.7) {
+                assertTrue(walk(firstCrossing, tempo) > 8);
+            }
+        }
+    }
+}
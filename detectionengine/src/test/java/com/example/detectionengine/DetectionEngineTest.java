@@ -0,0 +1,177 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DetectionEngineTest {
+
+    private static final long SAMPLE_PERIOD_NANOS = 20_000_000L;
+
+    //feeds a magnitude signal whose smoothed derivative follows the given template
+    static int feedTemplateShape(DetectionEngine engine, double[] template, double gain, long startNanos) {
+        int detections = 0;
+        float magnitude = 0f;
+        double dt = SAMPLE_PERIOD_NANOS / 1e9;
+        for (int i = 0; i < template.length; i++) {
+            magnitude += (float) (gain * template[i] / dt);
+            if (engine.processMagnitude(magnitude, startNanos + i * SAMPLE_PERIOD_NANOS) != DetectionEngine.NO_DETECTION) {
+                detections++;
+            }
+        }
+        return detections;
+    }
+
+    @Test
+    public void restingDeviceIsNotDetected() {
+        DetectionEngine engine = new DetectionEngine(DetectorConfig.step());
+        engine.setDetectorThreshold(0.15);
+        for (int i = 0; i < 500; i++) {
+            assertEquals(DetectionEngine.NO_DETECTION, engine.process(0f, 0f, 9.8f, i * SAMPLE_PERIOD_NANOS));
+        }
+        assertEquals(0, engine.getDetectionCount());
+    }
+
+    @Test
+    public void stepShapedSignalIsDetected() {
+        DetectionEngine engine = new DetectionEngine(DetectorConfig.step());
+        engine.setDetectorThreshold(0.01);
+        double[] template = DetectorConfig.step().getTemplate(0);
+        int detections = feedTemplateShape(engine, template, 20.0, 0L);
+        assertTrue(detections >= 1);
+        assertEquals(detections, engine.getDetectionCount());
+    }
+
+    @Test
+    public void smallRangeIsRejectedByDetectorThreshold() {
+        DetectionEngine engine = new DetectionEngine(DetectorConfig.step());
+        engine.setDetectorThreshold(1000.0);
+        double[] template = DetectorConfig.step().getTemplate(0);
+        assertEquals(0, feedTemplateShape(engine, template, 20.0, 0L));
+    }
+
+    @Test
+    public void gestureReportsTheBestMatchingShape() {
+        DetectorConfig config = DetectorConfig.gesture();
+        DetectionEngine engine = new DetectionEngine(config);
+        engine.setDetectorThreshold(0.01);
+        int detected = DetectionEngine.NO_DETECTION;
+        float magnitude = 0f;
+        double dt = SAMPLE_PERIOD_NANOS / 1e9;
+        double[] square = config.getTemplate(1);
+        //the square template is fed twice so that the smoothing delay is filled
+        for (int i = 0; i < 2 * square.length && detected == DetectionEngine.NO_DETECTION; i++) {
+            magnitude += (float) (20.0 * square[i % square.length] / dt);
+            detected = engine.processMagnitude(magnitude, i * SAMPLE_PERIOD_NANOS);
+        }
+        assertEquals("Square", engine.getTemplateName(detected));
+    }
+
+    @Test
+    public void dtwMatchingDetectsFasterMotions() {
+        double[] template = DetectorConfig.gesture().getTemplate(0);
+        //circles drawn in 28 instead of 35 samples
+        double[] faster = new double[3 * template.length];
+        for (int i = 0; i < faster.length; i++) {
+            double position = (i % 28) / 0.8;
+            int index = Math.min((int) position, template.length - 2);
+            faster[i] = template[index] + (position - index) * (template[index + 1] - template[index]);
+        }
+        DetectionEngine correlation = new DetectionEngine(DetectorConfig.gesture());
+        DetectionEngine dtw = new DetectionEngine(DetectorConfig.gesture()
+                .setMatchingMode(DetectorConfig.MatchingMode.DTW).setWarpingBand(8));
+        correlation.setDetectorThreshold(0.01);
+        dtw.setDetectorThreshold(0.01);
+        assertEquals(0, feedTemplateShape(correlation, faster, 20.0, 0L));
+        assertTrue(feedTemplateShape(dtw, faster, 20.0, 0L) >= 1);
+    }
+
+    @Test
+    public void resampledEngineDetectsStepsWithIrregularTimestamps() {
+        DetectorConfig config = DetectorConfig.step()
+                .setResampling(SAMPLE_PERIOD_NANOS, DetectorConfig.Interpolation.CUBIC);
+        DetectionEngine engine = new DetectionEngine(config);
+        engine.setDetectorThreshold(0.01);
+        double[] template = DetectorConfig.step().getTemplate(0);
+        java.util.Random random = new java.util.Random(17);
+        double dt = SAMPLE_PERIOD_NANOS / 1e9;
+        //the step shape is the derivative on the fixed grid, the events arrive with jitter
+        long time = 0;
+        int detections = 0;
+        for (int i = 0; i < 3 * template.length; i++) {
+            time = time + SAMPLE_PERIOD_NANOS / 2 + (long) (random.nextDouble() * SAMPLE_PERIOD_NANOS);
+            double grid = time / (double) SAMPLE_PERIOD_NANOS;
+            double magnitude = 0;
+            for (int k = 0; k < grid; k++) {
+                magnitude += 20.0 * template[k % template.length] / dt * Math.min(1.0, grid - k);
+            }
+            if (engine.processMagnitude((float) magnitude, time) != DetectionEngine.NO_DETECTION) {
+                detections++;
+            }
+        }
+        assertTrue(detections >= 1);
+        assertEquals(detections, engine.getDetectionCount());
+    }
+
+    @Test
+    public void resampledDerivativeIsNotTakenAcrossAPause() {
+        //without filters the smoothed value is the derivative itself
+        DetectorConfig config = DetectorConfig.step().setFilters()
+                .setResampling(SAMPLE_PERIOD_NANOS, DetectorConfig.Interpolation.LINEAR);
+        DetectionEngine engine = new DetectionEngine(config);
+        for (int i = 0; i < 10; i++) {
+            engine.processMagnitude(1f, i * SAMPLE_PERIOD_NANOS);
+        }
+        assertEquals(0.0, engine.getLastSpeedSmooth(), 0.0);
+        //longer than the maximum gap of the resampler, the grid starts again
+        long restart = 9 * SAMPLE_PERIOD_NANOS + 2 * Resampler.DEFAULT_MAX_GAP_NANOS;
+        engine.processMagnitude(5f, restart);
+        assertEquals(0.0, engine.getLastSpeedSmooth(), 0.0);
+        engine.processMagnitude(6f, restart + SAMPLE_PERIOD_NANOS);
+        assertEquals(SAMPLE_PERIOD_NANOS / 1e9, engine.getLastSpeedSmooth(), 1e-12);
+    }
+
+    @Test
+    public void batchGivesTheSameResultsAsSingleSamples() {
+        DetectorConfig config = DetectorConfig.gesture();
+        DetectionEngine single = new DetectionEngine(config);
+        DetectionEngine batched = new DetectionEngine(config);
+        single.setDetectorThreshold(0.05);
+        batched.setDetectorThreshold(0.05);
+
+        java.util.Random random = new java.util.Random(11);
+        float[] xyz = new float[3 * 64];
+        long[] timestamps = new long[64];
+        float[] magnitudes = new float[64];
+        long time = 0;
+        int singleDetections = 0, batchDetections = 0;
+        for (int batch = 0; batch < 200; batch++) {
+            int count = 1 + random.nextInt(64);
+            for (int i = 0; i < count; i++) {
+                time = time + 20_000_000L;
+                xyz[3 * i]     = (float) random.nextGaussian();
+                xyz[3 * i + 1] = (float) random.nextGaussian();
+                xyz[3 * i + 2] = 9.8f + (float) (3 * Math.sin(time / 2e8));
+                timestamps[i]  = time;
+                if (single.process(xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2], time) != DetectionEngine.NO_DETECTION) {
+                    singleDetections++;
+                }
+            }
+            batchDetections += batched.processBatch(xyz, timestamps, count, magnitudes);
+            assertEquals(single.getLastMagnitude(), magnitudes[count - 1], 0f);
+            assertEquals(single.getDetectionCount(), batched.getDetectionCount());
+            assertEquals(single.getLastDetectedTemplate(), batched.getLastDetectedTemplate());
+        }
+        assertEquals(singleDetections, batchDetections);
+    }
+
+    @Test
+    public void resetRestartsTheCount() {
+        DetectionEngine engine = new DetectionEngine(DetectorConfig.step());
+        engine.setDetectorThreshold(0.01);
+        feedTemplateShape(engine, DetectorConfig.step().getTemplate(0), 20.0, 0L);
+        engine.reset();
+        assertEquals(0, engine.getDetectionCount());
+        assertEquals(DetectionEngine.NO_DETECTION, engine.getLastDetection());
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DetectionSnapshotTest {
+
+    @Test
+    public void onlyOneFrameIsRequestedUntilItIsDone() {
+        DetectionSnapshot snapshot = new DetectionSnapshot();
+        assertTrue(snapshot.requestFrame());
+        assertFalse(snapshot.requestFrame());
+        assertFalse(snapshot.requestFrame());
+        snapshot.frameDone();
+        assertTrue(snapshot.requestFrame());
+    }
+
+    @Test
+    public void copyAndClear() {
+        DetectionEngine engine = new DetectionEngine(DetectorConfig.step());
+        engine.setDetectorThreshold(0.01);
+        DetectionEngineTest.feedTemplateShape(engine, DetectorConfig.step().getTemplate(0), 20.0, 0L);
+        assertTrue(engine.getDetectionCount() > 0);
+
+        DetectionSnapshot latest = new DetectionSnapshot();
+        DetectionSnapshot frame = new DetectionSnapshot();
+        latest.publish(0f, 0f, 9.8f, 1L, engine);
+        latest.copyTo(frame);
+        assertEquals(engine.getDetectionCount(), frame.getDetectionCount());
+        assertEquals(9.8f, frame.getZ(), 0f);
+
+        latest.clear();
+        latest.copyTo(frame);
+        assertEquals(0, frame.getDetectionCount());
+        assertEquals(DetectionEngine.NO_DETECTION, frame.getLastDetectedTemplate());
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DoubleRingBufferTest {
+
+    @Test
+    public void windowIsContiguousFromOldestToNewest() {
+        DoubleRingBuffer buffer = new DoubleRingBuffer(3);
+        for (int i = 1; i <= 5; i++) {
+            buffer.add(i);
+        }
+        double[] data = buffer.array();
+        int offset = buffer.offset();
+        assertEquals(3.0, data[offset], 0.0);
+        assertEquals(4.0, data[offset + 1], 0.0);
+        assertEquals(5.0, data[offset + 2], 0.0);
+        assertEquals(5.0, buffer.getLast(), 0.0);
+        assertEquals(4.0, buffer.get(1), 0.0);
+    }
+
+    @Test
+    public void addReturnsTheDroppedValue() {
+        DoubleRingBuffer buffer = new DoubleRingBuffer(2);
+        assertEquals(0.0, buffer.add(1.0), 0.0);
+        assertEquals(0.0, buffer.add(2.0), 0.0);
+        assertEquals(1.0, buffer.add(3.0), 0.0);
+        buffer.fill(0.0);
+        assertEquals(0.0, buffer.get(0), 0.0);
+        assertEquals(0.0, buffer.getLast(), 0.0);
+    }
+}
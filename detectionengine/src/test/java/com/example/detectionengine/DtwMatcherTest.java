@@ -0,0 +1,145 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DtwMatcherTest {
+
+    private static WindowStatistics window(double[] values, int n) {
+        WindowStatistics stats = new WindowStatistics(n);
+        for (int i = 0; i < n; i++) {
+            stats.add(values[i]);
+        }
+        return stats;
+    }
+
+    private static double[] zNormalize(double[] values, int n) {
+        double sum = 0, squareSum = 0;
+        for (int i = 0; i < n; i++) {
+            sum       = sum + values[i];
+            squareSum = squareSum + values[i] * values[i];
+        }
+        double[] normalized = new double[n];
+        for (int i = 0; i < n; i++) {
+            normalized[i] = (values[i] - sum / n) / (Math.sqrt(n * squareSum - sum * sum) / n);
+        }
+        return normalized;
+    }
+
+    //full banded DTW without lower bounds or abandoning, as warped correlation
+    private static double referenceScore(double[] window, double[] template, int n, int band) {
+        double[] x = zNormalize(window, n);
+        double[] y = zNormalize(template, n);
+        double[][] cost = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                cost[i][j] = Double.POSITIVE_INFINITY;
+                if (Math.abs(i - j) > band) {
+                    continue;
+                }
+                double previous = 0;
+                if (i > 0 || j > 0) {
+                    previous = Double.POSITIVE_INFINITY;
+                    if (i > 0) {
+                        previous = Math.min(previous, cost[i - 1][j]);
+                    }
+                    if (j > 0) {
+                        previous = Math.min(previous, cost[i][j - 1]);
+                    }
+                    if (i > 0 && j > 0) {
+                        previous = Math.min(previous, cost[i - 1][j - 1]);
+                    }
+                }
+                cost[i][j] = previous + (x[i] - y[j]) * (x[i] - y[j]);
+            }
+        }
+        return 1 - cost[n - 1][n - 1] / (2 * n);
+    }
+
+    @Test
+    public void withoutWarpingTheScoreIsTheCorrelation() {
+        Random random = new Random(5);
+        int n = 35;
+        double[] template = DetectorConfig.gesture().getTemplate(0);
+        DtwMatcher matcher = new DtwMatcher(new double[][]{template}, n, 0, -1.0);
+        TemplateBank bank = new TemplateBank(new double[][]{template}, n);
+        double[] dtw = new double[1];
+        double[] correlation = new double[1];
+        for (int k = 0; k < 100; k++) {
+            double[] values = new double[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = template[i] * random.nextDouble() + 0.05 * random.nextGaussian();
+            }
+            WindowStatistics stats = window(values, n);
+            matcher.score(stats, dtw);
+            bank.score(stats, correlation);
+            assertEquals(correlation[0], dtw[0], 1e-9);
+        }
+    }
+
+    @Test
+    public void slowerMotionMatchesWithWarping() {
+        int n = 35;
+        double[] template = DetectorConfig.gesture().getTemplate(0);
+        //the same circle performed 25% slower
+        double[] slower = new double[n];
+        for (int i = 0; i < n; i++) {
+            double position = i / 1.25;
+            int index = (int) position;
+            slower[i] = template[index] + (position - index) * (template[index + 1] - template[index]);
+        }
+        double[] correlation = new double[1];
+        double[] dtw = new double[1];
+        new TemplateBank(new double[][]{template}, n).score(window(slower, n), correlation);
+        new DtwMatcher(new double[][]{template}, n, 6, 0.75).score(window(slower, n), dtw);
+        assertTrue(correlation[0] < 0.75);
+        assertTrue(dtw[0] > 0.75);
+    }
+
+    @Test
+    public void pruningKeepsTheDecisionsOfTheFullDtw() {
+        DetectorConfig config = DetectorConfig.gesture();
+        int n = config.getTemplatePoints();
+        int band = config.getWarpingBand();
+        double threshold = config.getCorrelationThreshold();
+        double[][] templates = new double[config.getTemplateCount()][];
+        for (int t = 0; t < templates.length; t++) {
+            templates[t] = config.getTemplate(t);
+        }
+        DtwMatcher matcher = new DtwMatcher(templates, n, band, threshold);
+        double[] scores = new double[templates.length];
+        double[] reference = new double[templates.length];
+
+        Random random = new Random(9);
+        int detections = 0;
+        for (int k = 0; k < 2000; k++) {
+            //random walks, some of them with a template mixed in
+            double[] values = new double[n];
+            int mixed = random.nextInt(2 * templates.length);
+            double weight = random.nextDouble();
+            for (int i = 0; i < n; i++) {
+                values[i] = (i > 0 ? values[i - 1] * 0.8 : 0) + 0.05 * random.nextGaussian();
+                if (mixed < templates.length) {
+                    values[i] = values[i] * (1 - weight) + templates[mixed][i] * weight;
+                }
+            }
+            matcher.score(window(values, n), scores);
+            for (int t = 0; t < templates.length; t++) {
+                reference[t] = referenceScore(values, templates[t], n, band);
+                //pruned templates report an upper bound
+                assertTrue(scores[t] >= reference[t] - 1e-9);
+            }
+            double max = DetectionEngine.maxCorrelation(reference);
+            assertEquals(max > threshold, DetectionEngine.maxCorrelation(scores) > threshold);
+            if (max > threshold) {
+                detections++;
+                assertEquals(max, DetectionEngine.maxCorrelation(scores), 1e-9);
+                assertEquals(DetectionEngine.bestTemplate(reference), DetectionEngine.bestTemplate(scores));
+            }
+        }
+        assertTrue(detections > 100);
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FanOutPipelineTest {
+
+    private static final DetectorConfig[] CONFIGS = {DetectorConfig.step(), DetectorConfig.shake(), DetectorConfig.gesture()};
+    private static final String[] NAMES = {"Step", "Shake", "Gesture"};
+    private static final double[] THRESHOLDS = {0.05, 5.0, 0.05};
+
+    private static RecordedTrace trace(String resource) throws IOException {
+        try (InputStream in = FanOutPipelineTest.class.getResourceAsStream("/golden/" + resource)) {
+            return RecordedTrace.readCsv(in);
+        }
+    }
+
+    private static DetectionEngine engine(int detector) {
+        DetectionEngine engine = new DetectionEngine(CONFIGS[detector]);
+        engine.setDetectorThreshold(THRESHOLDS[detector]);
+        return engine;
+    }
+
+    @Test
+    public void stepAndGestureShareTheirFrontEnd() {
+        FanOutPipeline pipeline = new FanOutPipeline();
+        for (int d = 0; d < CONFIGS.length; d++) {
+            assertEquals(d, pipeline.addDetector(NAMES[d], engine(d)));
+        }
+        assertEquals(3, pipeline.getDetectorCount());
+        assertEquals(2, pipeline.getFrontEndCount());
+        assertEquals("Shake", pipeline.getName(1));
+    }
+
+    @Test
+    public void detectsLikeEveryDetectorOnItsOwn() throws IOException {
+        for (String resource : new String[]{"step_walk.csv", "shake.csv", "gesture.csv"}) {
+            RecordedTrace trace = trace(resource);
+            final List<String> shared = new ArrayList<>();
+            final int[] sample = new int[1];
+            FanOutPipeline pipeline = new FanOutPipeline();
+            for (int d = 0; d < CONFIGS.length; d++) {
+                pipeline.addDetector(NAMES[d], engine(d));
+            }
+            pipeline.setListener(new DetectionListener() {
+                @Override
+                public void onDetection(int detector, String name, DetectionEngine engine, int templateIndex, long timestampNanos) {
+                    shared.add(sample[0] + " " + name + " " + templateIndex);
+                }
+            });
+
+            List<String> alone = new ArrayList<>();
+            DetectionEngine[] engines = {engine(0), engine(1), engine(2)};
+            for (int i = 0; i < trace.size(); i++) {
+                sample[0] = i;
+                pipeline.processMagnitude(trace.getMagnitudes()[i], trace.getTimestamps()[i]);
+                for (int d = 0; d < engines.length; d++) {
+                    int detected = engines[d].processMagnitude(trace.getMagnitudes()[i], trace.getTimestamps()[i]);
+                    if (detected != DetectionEngine.NO_DETECTION) {
+                        alone.add(i + " " + NAMES[d] + " " + detected);
+                    }
+                }
+            }
+            assertFalse(alone.isEmpty());
+            assertEquals(resource, alone, shared);
+            for (int d = 0; d < engines.length; d++) {
+                assertEquals(engines[d].getDetectionCount(), pipeline.getEngine(d).getDetectionCount());
+            }
+        }
+    }
+
+    @Test
+    public void sharedDetectorRestoresOnlyTheTemplates() throws IOException {
+        RecordedTrace trace = trace("step_walk.csv");
+        int split = trace.size() / 2;
+        DetectionEngine before = engine(0);
+        for (int i = 0; i < split; i++) {
+            before.processMagnitude(trace.getMagnitudes()[i], trace.getTimestamps()[i]);
+        }
+        DetectorState saved = before.newState();
+        before.saveState(saved);
+        assertTrue(saved.isWarm());
+
+        //restored after joining the pipeline, before joining it and without the warm state
+        FanOutPipeline pipeline = new FanOutPipeline();
+        DetectionEngine joined = engine(0);
+        pipeline.addDetector("Joined", joined);
+        assertFalse(joined.restoreState(saved, Long.MAX_VALUE));
+        DetectionEngine restored = engine(0);
+        assertTrue(restored.restoreState(saved, Long.MAX_VALUE));
+        pipeline.addDetector("Restored", restored);
+        DetectionEngine cold = engine(0);
+        cold.restoreState(saved, 0);
+        pipeline.addDetector("Cold", cold);
+        assertEquals(1, pipeline.getFrontEndCount());
+        assertArrayEquals(saved.getTemplate(0), joined.getTemplate(0), 0.0);
+
+        for (int i = split; i < trace.size(); i++) {
+            pipeline.processMagnitude(trace.getMagnitudes()[i], trace.getTimestamps()[i]);
+            assertEquals(cold.getLastDetection(), joined.getLastDetection());
+            assertEquals(cold.getLastDetection(), restored.getLastDetection());
+        }
+        assertTrue(cold.getDetectionCount() > 0);
+        assertEquals(cold.getDetectionCount(), joined.getDetectionCount());
+        assertEquals(cold.getDetectionCount(), restored.getDetectionCount());
+
+        //no stale warm state is left for a later sample
+        long later = trace.getTimestamps()[trace.size() - 1] + 1;
+        assertEquals(cold.processMagnitude(0f, later), restored.processMagnitude(0f, later));
+        assertEquals(cold.getLastSpeedSmooth(), restored.getLastSpeedSmooth(), 0.0);
+    }
+
+    @Test
+    public void resampledDetectorKeepsItsOwnFrontEnd() throws IOException {
+        RecordedTrace trace = trace("step_walk.csv");
+        DetectorConfig resampled = DetectorConfig.step().setResampling(20_000_000L, DetectorConfig.Interpolation.LINEAR);
+        FanOutPipeline pipeline = new FanOutPipeline();
+        pipeline.addDetector("Step", engine(0));
+        DetectionEngine resampledEngine = new DetectionEngine(resampled);
+        resampledEngine.setDetectorThreshold(0.05);
+        pipeline.addDetector("Resampled step", resampledEngine);
+        assertEquals(1, pipeline.getFrontEndCount());
+
+        DetectionEngine alone = new DetectionEngine(resampled);
+        alone.setDetectorThreshold(0.05);
+        for (int i = 0; i < trace.size(); i++) {
+            pipeline.processMagnitude(trace.getMagnitudes()[i], trace.getTimestamps()[i]);
+            alone.processMagnitude(trace.getMagnitudes()[i], trace.getTimestamps()[i]);
+        }
+        assertEquals(alone.getDetectionCount(), resampledEngine.getDetectionCount());
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FilterChainTest {
+
+    private static final double RATE = 50.0;
+
+    //peak output amplitude of a filter for a sine of unit amplitude, after it has settled
+    private static double gain(SignalFilter filter, double frequencyHz) {
+        double peak = 0;
+        for (int i = 0; i < 2000; i++) {
+            double y = filter.filter(Math.sin(2 * Math.PI * frequencyHz * i / RATE));
+            if (i >= 1000) {
+                peak = Math.max(peak, Math.abs(y));
+            }
+        }
+        return peak;
+    }
+
+    @Test
+    public void movingAverageMatchesTheMeanOfTheWindow() {
+        for (int n : new int[]{1, 3, 4, 5, 14, 50}) {
+            MovingAverageFilter filter = new MovingAverageFilter(n);
+            double[] window = new double[n];
+            Random random = new Random(n);
+            for (int k = 0; k < 3000; k++) {
+                double value = random.nextGaussian() * 100;
+                System.arraycopy(window, 1, window, 0, n - 1);
+                window[n - 1] = value;
+                double sum = 0;
+                for (double x : window) {
+                    sum = sum + x;
+                }
+                assertEquals(sum / n, filter.filter(value), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void movingAverageRecoversFromInfiniteValues() {
+        MovingAverageFilter filter = new MovingAverageFilter(8);
+        filter.filter(Double.POSITIVE_INFINITY);
+        for (int i = 0; i < 7; i++) {
+            assertEquals(Double.POSITIVE_INFINITY, filter.filter(1.0), 0.0);
+        }
+        assertEquals(1.0, filter.filter(1.0), 1e-12);
+    }
+
+    @Test
+    public void lowPassKeepsSlowAndDampsFastMotions() {
+        Biquad lowPass = Biquad.lowPass(RATE, 3.0, Math.sqrt(0.5));
+        assertEquals(1.0, gain(lowPass.copy(), 0.5), 0.01);
+        assertEquals(Math.sqrt(0.5), gain(lowPass.copy(), 3.0), 0.02);
+        assertTrue(gain(lowPass.copy(), 15.0) < 0.05);
+    }
+
+    @Test
+    public void bandPassPassesItsCenterFrequency() {
+        Biquad bandPass = Biquad.bandPass(RATE, 2.0, 1.0);
+        assertEquals(1.0, gain(bandPass.copy(), 2.0), 0.01);
+        assertTrue(gain(bandPass.copy(), 0.1) < 0.1);
+        assertTrue(gain(bandPass.copy(), 20.0) < 0.15);
+    }
+
+    @Test
+    public void dcBlockerRemovesTheOffset() {
+        DcBlocker blocker = DcBlocker.withCutoff(RATE, 0.2);
+        double y = 0;
+        for (int i = 0; i < 2000; i++) {
+            y = blocker.filter(9.8 + 0.5 * Math.sin(2 * Math.PI * 2.0 * i / RATE));
+        }
+        assertTrue(Math.abs(y) < 0.6);
+        assertEquals(0.5, gain(blocker, 2.0) * 0.5, 0.02);
+    }
+
+    @Test
+    public void chainAppliesStagesInOrderOnCopies() {
+        MovingAverageFilter average = new MovingAverageFilter(2);
+        FilterChain chain = new FilterChain(average, new Biquad(2.0, 0.0, 0.0, 0.0, 0.0));
+        assertEquals(2.0, chain.filter(2.0), 0.0);
+        assertEquals(3.0, chain.filter(1.0), 0.0);
+        //the declared stage is only a prototype
+        assertEquals(2.5, average.filter(5.0), 0.0);
+
+        chain.reset();
+        assertEquals(2.0, chain.filter(2.0), 0.0);
+        assertEquals(1.0, new FilterChain().filter(1.0), 0.0);
+    }
+
+    @Test
+    public void defaultChainIsTheMovingAverageOfTheApps() {
+        FilterChain chain = DetectorConfig.step().newFilterChain();
+        assertEquals(1, chain.size());
+        assertEquals(3, ((MovingAverageFilter) chain.getStage(0)).size());
+
+        DetectorConfig config = DetectorConfig.step().setSmoothingPoints(5);
+        assertEquals(5, ((MovingAverageFilter) config.newFilterChain().getStage(0)).size());
+    }
+}
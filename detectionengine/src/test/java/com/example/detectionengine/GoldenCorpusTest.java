@@ -0,0 +1,96 @@
+package com.example.detectionengine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+//the golden corpus is written by GoldenCorpusGenerator of detectionbenchmarks from the original logic
+public class GoldenCorpusTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> lines(String resource) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (InputStream in = GoldenCorpusTest.class.getResourceAsStream("/golden/" + resource)) {
+            assertNotNull("Missing golden resource " + resource, in);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static RecordedTrace trace(String resource) throws IOException {
+        try (InputStream in = GoldenCorpusTest.class.getResourceAsStream("/golden/" + resource)) {
+            return RecordedTrace.readCsv(in);
+        }
+    }
+
+    private static List<String> format(List<Detection> detections) {
+        List<String> lines = new ArrayList<>();
+        for (Detection detection : detections) {
+            lines.add(detection.toString());
+        }
+        return lines;
+    }
+
+    @Test
+    public void engineReproducesTheOriginalDetections() throws IOException {
+        List<String> corpus = lines("corpus.txt");
+        assertFalse(corpus.isEmpty());
+        for (String entry : corpus) {
+            String[] fields = entry.split(" ");
+            String name = fields[0].substring(0, fields[0].lastIndexOf('.'));
+            List<String> expected = lines(name + ".expected");
+            assertFalse(name, expected.isEmpty());
+
+            List<Detection> detections = TraceReplay.replay(TraceReplay.detectorConfig(fields[1]),
+                    Double.parseDouble(fields[2]), trace(fields[0]));
+            assertEquals(name, expected, format(detections));
+        }
+    }
+
+    @Test
+    public void batchDetectorReproducesTheOriginalDetections() throws IOException {
+        for (String entry : lines("corpus.txt")) {
+            String[] fields = entry.split(" ");
+            String name = fields[0].substring(0, fields[0].lastIndexOf('.'));
+            List<Detection> detections = new BatchDetector(TraceReplay.detectorConfig(fields[1]))
+                    .detect(trace(fields[0]), Double.parseDouble(fields[2]));
+            assertEquals(name, lines(name + ".expected"), format(detections));
+        }
+    }
+
+    @Test
+    public void binaryLogsReplayLikeCsvTraces() throws Exception {
+        RecordedTrace csv = trace("step_walk.csv");
+        File file = folder.newFile("data_step.bin");
+        //no time based flushes, so that the whole trace fits into the buffers
+        SampleLogWriter writer = new SampleLogWriter(file, 64 * 1024, 4, Long.MAX_VALUE);
+        for (int i = 0; i < csv.size(); i++) {
+            assertTrue(writer.append(csv.getMagnitudes()[i], csv.getTimestamps()[i]));
+        }
+        writer.close();
+
+        RecordedTrace binary = TraceReplay.readTrace(file);
+        assertEquals(csv.size(), binary.size());
+        assertEquals(TraceReplay.replay(DetectorConfig.step(), 0.05, csv),
+                TraceReplay.replay(DetectorConfig.step(), 0.05, binary));
+    }
+}
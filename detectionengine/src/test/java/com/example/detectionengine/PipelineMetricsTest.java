@@ -0,0 +1,93 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PipelineMetricsTest {
+
+    @Test
+    public void bucketsCoverAllDurations() {
+        for (int b = 0; b < LatencyHistogram.BUCKETS; b++) {
+            assertEquals(b, LatencyHistogram.bucket(LatencyHistogram.lowerBound(b)));
+            if (b > 0) {
+                assertEquals(b - 1, LatencyHistogram.bucket(LatencyHistogram.lowerBound(b) - 1));
+            }
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesAreWithinOneBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(5);
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1000 + (long) (random.nextDouble() * 1_000_000);
+            histogram.record(values[i]);
+        }
+        java.util.Arrays.sort(values);
+        long exact = values[values.length / 2 - 1];
+        long estimate = histogram.getPercentile(50);
+        assertTrue(estimate >= exact);
+        assertTrue(estimate <= exact * 1.25);
+        assertEquals(values[values.length - 1], histogram.getPercentile(100));
+        assertEquals(values[0], histogram.getMin());
+        assertEquals(values.length, histogram.getCount());
+    }
+
+    @Test
+    public void countsDuplicateLateAndDroppedSamples() {
+        PipelineMetrics metrics = new PipelineMetrics(20);
+        metrics.endBatch(new long[]{0, 20, 20, 100, 80, 120}, 6, 200);
+        PipelineMetrics snapshot = metrics.snapshot();
+        assertEquals(6, snapshot.getSamples());
+        assertEquals(1, snapshot.getDuplicateSamples());
+        assertEquals(1, snapshot.getLateSamples());
+        assertEquals(3, snapshot.getDroppedSamples());
+        assertEquals(200, snapshot.getDecisionLatency().getMax());
+        assertEquals(80, snapshot.getDecisionLatency().getMin());
+
+        //a pause is not a loss of samples
+        metrics.restart();
+        metrics.endBatch(new long[]{1000, 1020}, 2, 1020);
+        assertEquals(3, metrics.snapshot().getDroppedSamples());
+    }
+
+    @Test
+    public void engineRecordsItsStages() throws IOException {
+        RecordedTrace trace;
+        try (InputStream in = PipelineMetricsTest.class.getResourceAsStream("/golden/step_walk.csv")) {
+            trace = RecordedTrace.readCsv(in);
+        }
+        PipelineMetrics metrics = new PipelineMetrics(20_000_000L);
+        DetectionEngine engine = new DetectionEngine(DetectorConfig.step());
+        engine.setDetectorThreshold(0.05);
+        engine.setMetrics(metrics);
+        DetectionEngine plain = new DetectionEngine(DetectorConfig.step());
+        plain.setDetectorThreshold(0.05);
+        for (int i = 0; i < trace.size(); i++) {
+            assertEquals(plain.processMagnitude(trace.getMagnitudes()[i], trace.getTimestamps()[i]),
+                    engine.processMagnitude(trace.getMagnitudes()[i], trace.getTimestamps()[i]));
+        }
+        metrics.endBatch(trace.getTimestamps(), trace.size(), trace.getTimestamps()[trace.size() - 1]);
+
+        PipelineMetrics snapshot = metrics.snapshot();
+        assertEquals(trace.size(), snapshot.getStage(PipelineMetrics.Stage.DERIVATIVE).getCount());
+        assertEquals(trace.size(), snapshot.getStage(PipelineMetrics.Stage.SMOOTHING).getCount());
+        assertEquals(trace.size(), snapshot.getStage(PipelineMetrics.Stage.CORRELATION).getCount());
+        assertTrue(snapshot.getStage(PipelineMetrics.Stage.RANGE_CHECK).getCount() > 0);
+        assertEquals(engine.getDetectionCount(), snapshot.getStage(PipelineMetrics.Stage.ADAPTATION).getCount());
+        assertEquals(0, snapshot.getStage(PipelineMetrics.Stage.UI).getCount());
+        assertTrue(snapshot.getDuplicateSamples() > 0);
+
+        String report = metrics.report();
+        assertTrue(report.contains("correlation"));
+        assertTrue(report.contains("decision latency"));
+        assertTrue(report.contains("samples " + trace.size()));
+    }
+}
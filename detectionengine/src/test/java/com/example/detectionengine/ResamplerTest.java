@@ -0,0 +1,127 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ResamplerTest {
+
+    private static final long PERIOD = 20_000_000L;
+
+    private static class Collector implements Resampler.Output {
+        final List<Double> values = new ArrayList<>();
+        final List<Long> times = new ArrayList<>();
+        int restarts = 0;
+
+        @Override
+        public void sample(double value, long timestampNanos) {
+            values.add(value);
+            times.add(timestampNanos);
+        }
+
+        @Override
+        public void restart() {
+            restarts = restarts + 1;
+        }
+    }
+
+    //irregular timestamps around the period, as delivered by the sensor
+    private static long[] jitteredTimes(int count, Random random) {
+        long[] times = new long[count];
+        long time = 1_000_000_000L;
+        for (int i = 0; i < count; i++) {
+            time = time + PERIOD / 2 + (long) (random.nextDouble() * PERIOD);
+            times[i] = time;
+        }
+        return times;
+    }
+
+    @Test
+    public void outputsAreOnTheFixedGrid() {
+        Collector out = new Collector();
+        Resampler resampler = new Resampler(PERIOD, DetectorConfig.Interpolation.CUBIC, out);
+        long[] times = jitteredTimes(500, new Random(3));
+        for (long time : times) {
+            resampler.add(1.0, time);
+        }
+        for (int i = 0; i < out.times.size(); i++) {
+            assertEquals(times[0] + i * PERIOD, (long) out.times.get(i));
+        }
+        //cubic outputs wait for the input after their interval
+        assertTrue(out.times.get(out.times.size() - 1) <= times[times.length - 2]);
+        assertTrue(out.times.get(out.times.size() - 1) + PERIOD > times[times.length - 2]);
+    }
+
+    @Test
+    public void linearInterpolationIsExactForLines() {
+        Collector out = new Collector();
+        Resampler resampler = new Resampler(PERIOD, DetectorConfig.Interpolation.LINEAR, out);
+        long[] times = jitteredTimes(300, new Random(5));
+        for (long time : times) {
+            resampler.add(0.5 + 3e-9 * (time - times[0]), time);
+        }
+        //every output up to the last input is emitted without waiting
+        assertTrue(out.times.get(out.times.size() - 1) + PERIOD > times[times.length - 1]);
+        for (int i = 0; i < out.values.size(); i++) {
+            assertEquals(0.5 + 3e-9 * (out.times.get(i) - times[0]), out.values.get(i), 1e-9);
+        }
+    }
+
+    @Test
+    public void cubicInterpolationFollowsSmoothSignals() {
+        Collector linearOut = new Collector();
+        Collector cubicOut = new Collector();
+        Resampler linear = new Resampler(PERIOD, DetectorConfig.Interpolation.LINEAR, linearOut);
+        Resampler cubic = new Resampler(PERIOD, DetectorConfig.Interpolation.CUBIC, cubicOut);
+        long[] times = jitteredTimes(1000, new Random(9));
+        for (long time : times) {
+            double value = Math.sin((time - times[0]) / 1.5e8);
+            linear.add(value, time);
+            cubic.add(value, time);
+        }
+        double linearError = 0, cubicError = 0;
+        for (int i = 0; i < cubicOut.values.size(); i++) {
+            double expected = Math.sin((cubicOut.times.get(i) - times[0]) / 1.5e8);
+            linearError = Math.max(linearError, Math.abs(linearOut.values.get(i) - expected));
+            cubicError  = Math.max(cubicError, Math.abs(cubicOut.values.get(i) - expected));
+        }
+        assertTrue(cubicError < 5e-4);
+        assertTrue(cubicError < linearError / 10);
+    }
+
+    @Test
+    public void repeatedTimestampsReplaceTheValue() {
+        Collector out = new Collector();
+        Resampler resampler = new Resampler(PERIOD, DetectorConfig.Interpolation.LINEAR, out);
+        resampler.add(0.0, 0L);
+        resampler.add(5.0, 2 * PERIOD);
+        resampler.add(2.0, 2 * PERIOD);
+        resampler.add(2.0, 4 * PERIOD);
+        assertEquals(5, out.values.size());
+        assertEquals(2.5, out.values.get(1), 1e-12);
+        //emitted before the repeated event, the next interval starts from the new value
+        assertEquals(5.0, out.values.get(2), 1e-12);
+        assertEquals(2.0, out.values.get(3), 1e-12);
+    }
+
+    @Test
+    public void longPausesRestartTheGrid() {
+        Collector out = new Collector();
+        Resampler resampler = new Resampler(PERIOD, DetectorConfig.Interpolation.CUBIC, 10 * PERIOD, out);
+        resampler.add(0.0, 0L);
+        resampler.add(1.0, PERIOD);
+        resampler.add(2.0, 2 * PERIOD);
+        //the pending interval is finished and the pause is not filled
+        assertEquals(0, out.restarts);
+        resampler.add(7.0, 100 * PERIOD + 3);
+        assertEquals(1, out.restarts);
+        assertEquals(4, out.values.size());
+        assertEquals(2 * PERIOD, (long) out.times.get(2));
+        assertEquals(100 * PERIOD + 3, (long) out.times.get(3));
+        assertEquals(7.0, out.values.get(3), 0.0);
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.detectionengine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class SampleLogWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsAreReadBackInOrder() throws Exception {
+        File file = folder.newFile("data_step.bin");
+        //small buffers so that many blocks are handed to the writer thread
+        SampleLogWriter writer = new SampleLogWriter(file, 10 * SampleLogFormat.RECORD_BYTES, 4, 50_000_000L);
+        int count = 0;
+        for (int i = 0; i < 5000; i++) {
+            if (writer.append(i * 0.25f - 3.1f, 1_000_000L * i)) {
+                count++;
+            }
+        }
+        writer.close();
+        assertEquals(5000, count + writer.getDroppedRecords());
+
+        RecordedTrace trace = SampleLogFormat.read(file);
+        assertEquals(count, trace.size());
+        assertEquals(SampleLogFormat.HEADER_BYTES + count * SampleLogFormat.RECORD_BYTES, file.length());
+        long previous = -1;
+        for (int i = 0; i < trace.size(); i++) {
+            long timestamp = trace.getTimestamps()[i];
+            assertTrue(timestamp > previous);
+            assertEquals((timestamp / 1_000_000L) * 0.25f - 3.1f, trace.getMagnitudes()[i], 0f);
+            previous = timestamp;
+        }
+    }
+
+    @Test
+    public void batchOfSeveralSecondsIsNotDropped() throws Exception {
+        File file = folder.newFile("data_batch.bin");
+        SampleLogWriter writer = new SampleLogWriter(file);
+        //10 s of samples at 2 ms, delivered at once as by a FIFO batch
+        int count = 5000;
+        for (int i = 0; i < count; i++) {
+            assertTrue(writer.append(i, 2_000_000L * i));
+        }
+        writer.close();
+        assertEquals(0, writer.getDroppedRecords());
+
+        RecordedTrace trace = SampleLogFormat.read(file);
+        assertEquals(count, trace.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(2_000_000L * i, trace.getTimestamps()[i]);
+        }
+    }
+
+    @Test
+    public void recordsAreWrittenWhenAppendsStop() throws Exception {
+        File file = folder.newFile("data_idle.bin");
+        SampleLogWriter writer = new SampleLogWriter(file, SampleLogWriter.DEFAULT_BUFFER_BYTES,
+                SampleLogWriter.DEFAULT_BUFFER_COUNT, 20_000_000L);
+        writer.append(1.5f, 7L);
+        //no further append and no close, the writer thread takes the buffer over
+        long expected = SampleLogFormat.HEADER_BYTES + SampleLogFormat.RECORD_BYTES;
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (file.length() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, file.length());
+        RecordedTrace trace = SampleLogFormat.read(file);
+        assertEquals(1, trace.size());
+        assertEquals(7L, trace.getTimestamps()[0]);
+
+        //appending goes on in a new buffer
+        writer.append(2.5f, 8L);
+        writer.close();
+        assertEquals(2, SampleLogFormat.read(file).size());
+        assertEquals(0, writer.getDroppedRecords());
+    }
+
+    @Test
+    public void csvExportUsesTheFormatOfTheApps() throws Exception {
+        File file = folder.newFile("data_shake.bin");
+        SampleLogWriter writer = new SampleLogWriter(file);
+        writer.append(0.123f, 42L);
+        writer.append(-9.5f, 43L);
+        writer.close();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SampleLogCsvExporter.export(SampleLogFormat.read(file), out);
+        assertEquals("0.123,42\n-9.5,43\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
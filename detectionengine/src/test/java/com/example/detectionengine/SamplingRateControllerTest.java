@@ -0,0 +1,130 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SamplingRateControllerTest {
+
+    private static final int FAST_PERIOD_US = 20_000;
+    private static final int IDLE_PERIOD_US = 100_000;
+    private static final int STEPS = 20;
+
+    //rest, a walk of STEPS step shaped motions and rest again, recorded at the fast rate
+    private static RecordedTrace restWalkRest(double[] template, long seed) {
+        Random random = new Random(seed);
+        int rest = 1500;
+        int count = 2 * rest + STEPS * (template.length + 10);
+        float[] magnitudes = new float[count];
+        long[] timestamps = new long[count];
+        double dt = FAST_PERIOD_US / 1e6;
+        float magnitude = 0f;
+        int i = 0;
+        for (; i < rest; i++) {
+            magnitudes[i] = (float) (random.nextGaussian() * 0.01);
+        }
+        for (int step = 0; step < STEPS; step++) {
+            for (int j = 0; j < template.length + 10; j++, i++) {
+                if (j < template.length) {
+                    magnitude = magnitude + (float) (20.0 * template[j] / dt);
+                }
+                magnitude = magnitude * 0.9f;
+                magnitudes[i] = magnitude + (float) (random.nextGaussian() * 0.01);
+            }
+        }
+        for (; i < count; i++) {
+            magnitudes[i] = (float) (random.nextGaussian() * 0.01);
+        }
+        for (int k = 0; k < count; k++) {
+            timestamps[k] = 1_000_000_000L + k * FAST_PERIOD_US * 1000L;
+        }
+        return new RecordedTrace(magnitudes, timestamps, count);
+    }
+
+    private static SamplingRateController controller(SensorSource source) {
+        return new SamplingRateController(source, FAST_PERIOD_US, IDLE_PERIOD_US, 1.0, 0.1, 2_000_000_000L, 0.5);
+    }
+
+    @Test
+    public void restingDeviceSwitchesToTheIdleRate() {
+        ReplaySensorSource source = new ReplaySensorSource(restWalkRest(DetectorConfig.step().getTemplate(0), 1));
+        SamplingRateController controller = controller(source);
+        assertEquals(FAST_PERIOD_US, source.getSamplingPeriodUs());
+        for (int i = 0; i < 200 && source.next(); i++) {
+            controller.onSample(source.getMagnitude(), source.getTimestampNanos());
+        }
+        assertFalse(controller.isActive());
+        assertEquals(IDLE_PERIOD_US, source.getSamplingPeriodUs());
+        assertEquals(1, controller.getSwitchCount());
+    }
+
+    @Test
+    public void walkIsDetectedWithFewerSamples() {
+        DetectorConfig config = DetectorConfig.step();
+        RecordedTrace trace = restWalkRest(config.getTemplate(0), 2);
+
+        DetectionEngine always = new DetectionEngine(config);
+        always.setDetectorThreshold(0.05);
+        for (int i = 0; i < trace.size(); i++) {
+            always.processMagnitude(trace.getMagnitudes()[i], trace.getTimestamps()[i]);
+        }
+
+        ReplaySensorSource source = new ReplaySensorSource(trace);
+        SamplingRateController controller = controller(source);
+        DetectionEngine adaptive = new DetectionEngine(config);
+        adaptive.setDetectorThreshold(0.05);
+        boolean resumedInWalk = false;
+        while (source.next()) {
+            int state = controller.onSample(source.getMagnitude(), source.getTimestampNanos());
+            if (state == SamplingRateController.RESUMED) {
+                adaptive.resume();
+                resumedInWalk = resumedInWalk || source.getIndex() >= 1500;
+            }
+            if (state != SamplingRateController.IDLE) {
+                adaptive.processMagnitude(source.getMagnitude(), source.getTimestampNanos());
+            }
+        }
+
+        assertTrue(resumedInWalk);
+        assertFalse(controller.isActive());
+        //the first step is mostly before the switch back to the fast rate
+        assertTrue(always.getDetectionCount() >= STEPS - 1);
+        assertTrue(adaptive.getDetectionCount() >= always.getDetectionCount() - 2);
+        assertTrue(source.getDeliveredSamples() < trace.size() / 2);
+        assertEquals(source.getDeliveredSamples(), controller.getActiveSamples() + controller.getIdleSamples());
+    }
+
+    @Test
+    public void batchedIdleSamplesAreNotProcessedAfterTheSwitch() {
+        ReplaySensorSource source = new ReplaySensorSource(new RecordedTrace(new float[0], new long[0], 0));
+        SamplingRateController controller = controller(source);
+        long time = 0;
+        for (int i = 0; i < 200; i++) {
+            time = time + FAST_PERIOD_US * 1000L;
+            controller.onSample(0f, time);
+        }
+        assertFalse(controller.isActive());
+        //motion in a batch that was still recorded at the idle rate
+        for (int i = 0; i < 10; i++) {
+            time = time + IDLE_PERIOD_US * 1000L;
+            assertEquals(SamplingRateController.IDLE, controller.onSample(i % 2 == 0 ? 5f : -5f, time));
+        }
+        assertEquals(FAST_PERIOD_US, source.getSamplingPeriodUs());
+        assertFalse(controller.isActive());
+        //the first sample at the fast rate starts the active phase
+        time = time + FAST_PERIOD_US * 1000L;
+        assertEquals(SamplingRateController.RESUMED, controller.onSample(5f, time));
+        assertTrue(controller.isActive());
+        time = time + FAST_PERIOD_US * 1000L;
+        assertEquals(SamplingRateController.ACTIVE, controller.onSample(-5f, time));
+        assertEquals(2, controller.getSwitchCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void idleEnergyMustBeBelowMotionEnergy() {
+        new SamplingRateController(new ReplaySensorSource(new RecordedTrace(new float[0], new long[0], 0)),
+                FAST_PERIOD_US, IDLE_PERIOD_US, 1.0, 1.0, 0L, 0.5);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SlidingRangeTest {
+
+    @Test
+    public void matchesMinAndMaxOfTheWindow() {
+        int n = 14;
+        SlidingRange range = new SlidingRange(n);
+        double[] window = new double[n];
+        Random random = new Random(7);
+        for (int k = 0; k < 5000; k++) {
+            //repeated values exercise the ties of the monotonic deques
+            double value = Math.round(random.nextGaussian() * 4) / 2.0;
+            range.add(value);
+            System.arraycopy(window, 1, window, 0, n - 1);
+            window[n - 1] = value;
+            double min = window[0], max = window[0];
+            for (double x : window) {
+                min = Math.min(min, x);
+                max = Math.max(max, x);
+            }
+            assertEquals(min, range.getMin(), 0.0);
+            assertEquals(max, range.getMax(), 0.0);
+        }
+    }
+
+    @Test
+    public void clearedWindowOnlyHoldsZeros() {
+        SlidingRange range = new SlidingRange(3);
+        range.add(5.0);
+        range.add(-2.0);
+        range.clear();
+        assertEquals(0.0, range.getRange(), 0.0);
+        range.add(4.0);
+        assertEquals(4.0, range.getRange(), 0.0);
+        range.add(1.0);
+        range.add(2.0);
+        assertEquals(3.0, range.getRange(), 0.0);
+    }
+}
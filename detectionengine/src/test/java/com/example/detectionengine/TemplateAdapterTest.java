@@ -0,0 +1,119 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TemplateAdapterTest {
+
+    private static RecordedTrace stepTrace() throws IOException {
+        try (InputStream in = TemplateAdapterTest.class.getResourceAsStream("/golden/step_walk.csv")) {
+            return RecordedTrace.readCsv(in);
+        }
+    }
+
+    //replays the trace, adapting on the calling thread after every sample
+    private static List<Detection> replay(TemplateAdapter adapter, DetectionEngine engine, RecordedTrace trace) {
+        List<Detection> detections = new ArrayList<>();
+        for (int i = 0; i < trace.size(); i++) {
+            long time = trace.getTimestamps()[i];
+            int detected = engine.processMagnitude(trace.getMagnitudes()[i], time);
+            if (detected != DetectionEngine.NO_DETECTION) {
+                detections.add(new Detection(i, time, detected, engine.getLastCorrelation()));
+            }
+            adapter.adaptPending();
+        }
+        return detections;
+    }
+
+    @Test
+    public void adaptedSnapshotsGiveTheDetectionsOfInlineAdaptation() throws IOException {
+        RecordedTrace trace = stepTrace();
+        TemplateAdapter adapter = new TemplateAdapter(DetectorConfig.step());
+        DetectionEngine engine = new DetectionEngine(adapter);
+        engine.setDetectorThreshold(0.05);
+
+        List<Detection> detections = replay(adapter, engine, trace);
+        assertFalse(detections.isEmpty());
+        assertEquals(TraceReplay.replay(DetectorConfig.step(), 0.05, trace), detections);
+        assertEquals(detections.size(), adapter.current().getVersion());
+        assertEquals(detections.size(), engine.getTemplateVersion());
+    }
+
+    @Test
+    public void rollbackRestoresAnEarlierSnapshot() throws IOException {
+        TemplateAdapter adapter = new TemplateAdapter(DetectorConfig.step(), 4, 3);
+        DetectionEngine engine = new DetectionEngine(adapter);
+        engine.setDetectorThreshold(0.05);
+        replay(adapter, engine, stepTrace());
+        long latest = adapter.current().getVersion();
+        assertTrue(latest > 3);
+        assertArrayEquals(new long[]{latest, latest - 1, latest - 2}, adapter.getVersions());
+
+        assertFalse(adapter.rollback(0));
+        assertTrue(adapter.rollback(latest - 2));
+        engine.processMagnitude(0f, Long.MAX_VALUE / 2);
+        assertEquals(latest - 2, engine.getTemplateVersion());
+        assertArrayEquals(adapter.current().getTemplate(0), engine.getTemplate(0), 0.0);
+        assertArrayEquals(new long[]{latest - 2, latest, latest - 1}, adapter.getVersions());
+    }
+
+    @Test
+    public void rejectedWindowsLeaveTheTemplatesUnchanged() throws IOException {
+        TemplateAdapter adapter = new TemplateAdapter(DetectorConfig.step());
+        adapter.setQualityCheck(new TemplateAdapter.QualityCheck() {
+            @Override
+            public boolean accept(int templateIndex, double[] template, double[] window) {
+                return false;
+            }
+        });
+        DetectionEngine engine = new DetectionEngine(adapter);
+        engine.setDetectorThreshold(0.05);
+        int detections = replay(adapter, engine, stepTrace()).size();
+        assertTrue(detections > 0);
+        assertEquals(detections, adapter.getRejectedWindows());
+        assertEquals(0, engine.getTemplateVersion());
+        assertArrayEquals(DetectorConfig.step().getTemplate(0), engine.getTemplate(0), 0.0);
+    }
+
+    @Test
+    public void windowsAreDroppedWhenAdaptationFallsBehind() {
+        DetectorConfig config = DetectorConfig.step();
+        TemplateAdapter adapter = new TemplateAdapter(config, 1, 4);
+        DetectionEngine engine = new DetectionEngine(adapter);
+        engine.setDetectorThreshold(0.01);
+        int detections = DetectionEngineTest.feedTemplateShape(engine, config.getTemplate(0), 20.0, 0L)
+                + DetectionEngineTest.feedTemplateShape(engine, config.getTemplate(0), 20.0, 1_000_000_000L);
+        assertTrue(detections >= 2);
+        assertEquals(detections - 1, adapter.getDroppedWindows());
+        assertEquals(1, adapter.adaptPending());
+    }
+
+    @Test
+    public void adaptationThreadPublishesSnapshots() throws Exception {
+        RecordedTrace trace = stepTrace();
+        TemplateAdapter adapter = new TemplateAdapter(DetectorConfig.step());
+        adapter.start();
+        try {
+            DetectionEngine engine = new DetectionEngine(adapter);
+            engine.setDetectorThreshold(0.05);
+            int detections = 0;
+            for (int i = 0; i < trace.size(); i++) {
+                if (engine.processMagnitude(trace.getMagnitudes()[i], trace.getTimestamps()[i]) != DetectionEngine.NO_DETECTION) {
+                    detections++;
+                }
+            }
+            assertTrue(adapter.awaitIdle(10, TimeUnit.SECONDS));
+            assertEquals(detections, adapter.current().getVersion() + adapter.getDroppedWindows());
+        }
+        finally {
+            adapter.close();
+        }
+    }
+}
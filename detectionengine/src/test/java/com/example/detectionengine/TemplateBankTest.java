@@ -0,0 +1,243 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TemplateBankTest {
+
+    static double directCorrelation(double[] x, double[] y, int n) {
+        double sum_X = 0, sum_Y = 0, sum_XY = 0, squareSum_X = 0, squareSum_Y = 0;
+        for (int i = 0; i < n; i++) {
+            sum_X = sum_X + x[i];
+            sum_Y = sum_Y + y[i];
+            sum_XY = sum_XY + x[i] * y[i];
+            squareSum_X = squareSum_X + x[i] * x[i];
+            squareSum_Y = squareSum_Y + y[i] * y[i];
+        }
+        return (n * sum_XY - sum_X * sum_Y)
+                / Math.sqrt((n * squareSum_X - sum_X * sum_X) * (n * squareSum_Y - sum_Y * sum_Y));
+    }
+
+    @Test
+    public void scoresEveryTemplateLikeTheDirectComputation() {
+        DetectorConfig config = DetectorConfig.gesture();
+        int n = config.getTemplatePoints();
+        double[][] templates = new double[config.getTemplateCount()][];
+        for (int t = 0; t < templates.length; t++) {
+            templates[t] = config.getTemplate(t);
+        }
+        WindowStatistics stats = new WindowStatistics(n);
+        TemplateBank bank = new TemplateBank(templates, n);
+        double[] scores = new double[templates.length];
+        double[] window = new double[n];
+        Random random = new Random(42);
+        for (int k = 0; k < 10000; k++) {
+            double value = random.nextGaussian() * 5 + 3;
+            stats.add(value);
+            System.arraycopy(window, 1, window, 0, n - 1);
+            window[n - 1] = value;
+            bank.score(stats, scores);
+            for (int t = 0; t < templates.length; t++) {
+                assertEquals(directCorrelation(window, templates[t], n), scores[t], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void adaptedTemplateIsUsedForScoring() {
+        double[][] templates = {{1, 2, 3, 4}, {4, 3, 2, 1}};
+        TemplateBank bank = new TemplateBank(templates, 4);
+        WindowStatistics stats = new WindowStatistics(4);
+        for (double x : new double[]{1, 2, 3, 4}) {
+            stats.add(x);
+        }
+        double[] scores = new double[2];
+        bank.score(stats, scores);
+        assertEquals(1.0, scores[0], 1e-12);
+        assertEquals(-1.0, scores[1], 1e-12);
+
+        bank.setTemplate(1, new double[]{2, 4, 6, 8});
+        bank.score(stats, scores);
+        assertEquals(1.0, scores[1], 1e-12);
+    }
+
+    @Test
+    public void clearedWindowHasNoCorrelation() {
+        double[] template = DetectorConfig.shake().getTemplate(0);
+        WindowStatistics stats = new WindowStatistics(template.length);
+        TemplateBank bank = new TemplateBank(new double[][]{template}, template.length);
+        stats.add(1.0);
+        stats.clear();
+        double[] scores = new double[1];
+        bank.score(stats, scores);
+        assertEquals(0.0, stats.getSum(), 0.0);
+        assertTrue(Double.isNaN(scores[0]));
+    }
+
+    @Test
+    public void abandoningKeepsEveryDecisionOfTheFullScores() {
+        for (int n : new int[]{14, 35, 128}) {
+            Random random = new Random(n);
+            double[][] templates = new double[200][n];
+            for (int t = 0; t < templates.length; t++) {
+                double frequency = 0.5 + 3 * random.nextDouble();
+                double phase = 2 * Math.PI * random.nextDouble();
+                for (int i = 0; i < n; i++) {
+                    templates[t][i] = Math.sin(2 * Math.PI * frequency * i / n + phase) + 0.1 * random.nextGaussian();
+                }
+            }
+            TemplateBank full = new TemplateBank(templates, n);
+            TemplateBank abandoning = new TemplateBank(templates, n, 0.7);
+            WindowStatistics stats = new WindowStatistics(n);
+            double[] expected = new double[templates.length];
+            double[] scores = new double[templates.length];
+            int passed = 0;
+            long abandoned = 0;
+            int samples = 5000;
+            double[] motion = null;
+            int position = 0;
+            for (int k = 0; k < samples; k++) {
+                //noise with template shaped motions
+                if (motion == null && random.nextInt(2 * n) == 0) {
+                    motion = templates[random.nextInt(templates.length)];
+                    position = 0;
+                }
+                double value = 0.3 * random.nextGaussian();
+                if (motion != null) {
+                    value = value + motion[position];
+                    position = position + 1;
+                    if (position == n) {
+                        motion = null;
+                    }
+                }
+                stats.add(value);
+                full.score(stats, expected);
+                abandoning.score(stats, scores);
+                abandoned = abandoned + abandoning.getAbandonedCount();
+
+                double max = DetectionEngine.maxCorrelation(expected);
+                assertEquals(max > 0.7, DetectionEngine.maxCorrelation(scores) > 0.7);
+                if (max > 0.7) {
+                    passed = passed + 1;
+                    assertEquals(max, DetectionEngine.maxCorrelation(scores), 0.0);
+                    assertEquals(DetectionEngine.bestTemplate(expected), DetectionEngine.bestTemplate(scores));
+                }
+                for (int t = 0; t < templates.length; t++) {
+                    assertTrue(scores[t] >= expected[t] - 1e-9);
+                }
+            }
+            assertTrue(passed > 100);
+            if (n > TemplateBank.ABANDON_BLOCK) {
+                assertTrue("abandoned " + abandoned / samples, abandoned / samples > templates.length / 2);
+            }
+            else {
+                assertEquals(0, abandoned);
+            }
+        }
+    }
+
+    @Test
+    public void abandoningBankScoresClearedWindowsInFull() {
+        double[] template = new double[40];
+        for (int i = 0; i < template.length; i++) {
+            template[i] = Math.sin(2 * Math.PI * i / template.length);
+        }
+        TemplateBank bank = new TemplateBank(new double[][]{template, new double[template.length]}, template.length, 0.7);
+        WindowStatistics stats = new WindowStatistics(template.length);
+        double[] scores = new double[2];
+        bank.score(stats, scores);
+        assertTrue(Double.isNaN(scores[0]));
+        assertTrue(Double.isNaN(scores[1]));
+
+        for (double value : template) {
+            stats.add(-value);
+        }
+        bank.score(stats, scores);
+        assertEquals(1, bank.getAbandonedCount());
+        assertTrue(Double.isNaN(scores[1]));
+    }
+
+    private static List<String> golden(String resource) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (InputStream in = TemplateBankTest.class.getResourceAsStream("/golden/" + resource)) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void abandoningIsRejectedForDtw() {
+        DetectorConfig.step().setEarlyAbandoning(true).setMatchingMode(DetectorConfig.MatchingMode.DTW);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void abandoningIsRejectedForIndexedMatching() {
+        DetectorConfig.step().setMatchingMode(DetectorConfig.MatchingMode.INDEXED).setEarlyAbandoning(true);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void abandoningIsRejectedAtOtherTimeScales() {
+        DetectorConfig.step().setEarlyAbandoning(true).setTimeScales(0.8, 1.2);
+    }
+
+    @Test
+    public void rejectedSettingIsNotKept() {
+        DetectorConfig config = DetectorConfig.step().setEarlyAbandoning(true);
+        try {
+            config.setMatchingMode(DetectorConfig.MatchingMode.DTW);
+            fail();
+        }
+        catch (IllegalStateException e) {
+            assertEquals(DetectorConfig.MatchingMode.CORRELATION, config.getMatchingMode());
+        }
+        try {
+            config.setTimeScales(0.8, 1.2);
+            fail();
+        }
+        catch (IllegalStateException e) {
+            assertArrayEquals(new double[]{1.0}, config.getTimeScales(), 0.0);
+        }
+        DetectorConfig indexed = DetectorConfig.step().setMatchingMode(DetectorConfig.MatchingMode.INDEXED);
+        try {
+            indexed.setEarlyAbandoning(true);
+            fail();
+        }
+        catch (IllegalStateException e) {
+            assertFalse(indexed.isEarlyAbandoning());
+        }
+    }
+
+    @Test
+    public void abandoningEngineReproducesTheGoldenCorpus() throws IOException {
+        for (String entry : golden("corpus.txt")) {
+            String[] fields = entry.split(" ");
+            String name = fields[0].substring(0, fields[0].lastIndexOf('.'));
+            RecordedTrace trace;
+            try (InputStream in = TemplateBankTest.class.getResourceAsStream("/golden/" + fields[0])) {
+                trace = RecordedTrace.readCsv(in);
+            }
+            List<String> detections = new ArrayList<>();
+            for (Detection detection : TraceReplay.replay(TraceReplay.detectorConfig(fields[1]).setEarlyAbandoning(true),
+                    Double.parseDouble(fields[2]), trace)) {
+                detections.add(detection.toString());
+            }
+            assertEquals(name, golden(name + ".expected"), detections);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TemplateIndexTest {
+
+    private static final int N = 35;
+    private static final double THRESHOLD = 0.75;
+
+    private static WindowStatistics window(double[] values) {
+        WindowStatistics stats = new WindowStatistics(N);
+        for (int i = 0; i < N; i++) {
+            stats.add(values[i]);
+        }
+        return stats;
+    }
+
+    //random smooth shapes: sums of a few sines of random frequency and phase
+    private static double[][] vocabulary(Random random, int size) {
+        double[][] templates = new double[size][N];
+        for (int t = 0; t < size; t++) {
+            for (int h = 0; h < 3; h++) {
+                double frequency = 0.5 + 3 * random.nextDouble();
+                double phase = 2 * Math.PI * random.nextDouble();
+                double amplitude = random.nextDouble();
+                for (int i = 0; i < N; i++) {
+                    templates[t][i] = templates[t][i] + amplitude * Math.sin(2 * Math.PI * frequency * i / N + phase);
+                }
+            }
+        }
+        return templates;
+    }
+
+    //a template of the vocabulary, scaled, offset and with noise, or only noise
+    private static double[] motion(Random random, double[][] templates) {
+        double[] values = new double[N];
+        double[] template = templates[random.nextInt(templates.length)];
+        boolean noise = random.nextInt(4) == 0;
+        double gain = 0.5 + random.nextDouble();
+        for (int i = 0; i < N; i++) {
+            values[i] = (noise ? 0 : gain * template[i]) + 0.2 * random.nextGaussian() + 1;
+        }
+        return values;
+    }
+
+    //top matches of the scores of every template, best first
+    private static List<Integer> fullScan(double[] scores, int topMatches) {
+        List<Integer> top = new ArrayList<>();
+        for (int t = 0; t < scores.length; t++) {
+            if (scores[t] >= THRESHOLD) {
+                int k = 0;
+                while (k < top.size() && scores[top.get(k)] >= scores[t]) {
+                    k = k + 1;
+                }
+                top.add(k, t);
+            }
+        }
+        return top.subList(0, Math.min(topMatches, top.size()));
+    }
+
+    private static List<Integer> matches(TemplateIndex index) {
+        List<Integer> matches = new ArrayList<>();
+        for (int rank = 0; rank < index.getMatchCount(); rank++) {
+            matches.add(index.getMatch(rank));
+        }
+        return matches;
+    }
+
+    @Test
+    public void topMatchesAreThoseOfScoringEveryTemplate() {
+        Random random = new Random(7);
+        double[][] templates = vocabulary(random, 400);
+        TemplateBank bank = new TemplateBank(templates, N);
+        TemplateIndex index = new TemplateIndex(templates, N, TemplateIndex.defaultSegments(N), THRESHOLD, 5);
+        double[] expected = new double[templates.length];
+        double[] scores = new double[templates.length];
+        int withMatches = 0;
+        for (int sample = 0; sample < 500; sample++) {
+            WindowStatistics stats = window(motion(random, templates));
+            bank.score(stats, expected);
+            index.score(stats, scores);
+            List<Integer> top = fullScan(expected, 5);
+            assertEquals(top, matches(index));
+            for (int rank = 0; rank < top.size(); rank++) {
+                assertEquals(expected[top.get(rank)], index.getMatchScore(rank), 1e-9);
+            }
+            //a pruned template gets an upper bound of its score
+            for (int t = 0; t < templates.length; t++) {
+                assertTrue(scores[t] >= expected[t] - 1e-9);
+            }
+            assertEquals(DetectionEngine.maxCorrelation(expected) > THRESHOLD,
+                    DetectionEngine.maxCorrelation(scores) > THRESHOLD);
+            if (!top.isEmpty()) {
+                withMatches = withMatches + 1;
+                assertEquals((int) top.get(0), DetectionEngine.bestTemplate(scores));
+            }
+        }
+        assertTrue(withMatches > 100);
+    }
+
+    @Test
+    public void adaptedTemplatesStayExact() {
+        Random random = new Random(11);
+        double[][] templates = vocabulary(random, 200);
+        TemplateBank bank = new TemplateBank(templates, N);
+        TemplateIndex index = new TemplateIndex(templates, N, 7, THRESHOLD, 3);
+        double[] expected = new double[templates.length];
+        double[] scores = new double[templates.length];
+        for (int sample = 0; sample < 600; sample++) {
+            //move templates far from their cluster, and past a rebuild
+            int t = random.nextInt(templates.length);
+            double[] moved = motion(random, templates);
+            for (int i = 0; i < N; i++) {
+                templates[t][i] = templates[t][i] + 0.3 * moved[i];
+            }
+            bank.setTemplate(t, templates[t]);
+            index.setTemplate(t, templates[t]);
+
+            WindowStatistics stats = window(motion(random, templates));
+            bank.score(stats, expected);
+            index.score(stats, scores);
+            assertEquals(fullScan(expected, 3), matches(index));
+        }
+    }
+
+    @Test
+    public void prunesMostTemplatesOfALargeVocabulary() {
+        Random random = new Random(3);
+        double[][] templates = vocabulary(random, 900);
+        TemplateIndex index = new TemplateIndex(templates, N, TemplateIndex.defaultSegments(N), THRESHOLD, 3);
+        double[] scores = new double[templates.length];
+        long evaluated = 0;
+        int samples = 500;
+        for (int sample = 0; sample < samples; sample++) {
+            index.score(window(motion(random, templates)), scores);
+            evaluated = evaluated + index.getEvaluatedCount();
+        }
+        assertEquals(30, index.getClusterCount());
+        assertTrue("evaluated " + evaluated / samples, evaluated / samples < templates.length / 10);
+    }
+
+    @Test
+    public void constantWindowAndTemplatesScoreNaN() {
+        double[][] templates = vocabulary(new Random(5), 10);
+        templates[3] = new double[N];
+        TemplateIndex index = new TemplateIndex(templates, N, 5, THRESHOLD, 3);
+        double[] scores = new double[templates.length];
+        index.score(window(new double[N]), scores);
+        for (double score : scores) {
+            assertTrue(Double.isNaN(score));
+        }
+        assertEquals(0, index.getMatchCount());
+
+        index.score(window(templates[0]), scores);
+        assertTrue(Double.isNaN(scores[3]));
+        assertEquals(0, index.getMatch(0));
+        assertEquals(1.0, index.getMatchScore(0), 1e-12);
+    }
+
+    @Test
+    public void indexedEngineDetectsAsCorrelationOnTheGestureCorpus() throws IOException {
+        RecordedTrace trace;
+        try (InputStream in = TemplateIndexTest.class.getResourceAsStream("/golden/gesture.csv")) {
+            trace = RecordedTrace.readCsv(in);
+        }
+        DetectionEngine correlation = new DetectionEngine(DetectorConfig.gesture());
+        DetectionEngine indexed = new DetectionEngine(DetectorConfig.gesture()
+                .setMatchingMode(DetectorConfig.MatchingMode.INDEXED));
+        correlation.setDetectorThreshold(0.05);
+        indexed.setDetectorThreshold(0.05);
+        int detections = 0;
+        for (int i = 0; i < trace.size(); i++) {
+            int expected = correlation.processMagnitude(trace.getMagnitudes()[i], trace.getTimestamps()[i]);
+            assertEquals(expected, indexed.processMagnitude(trace.getMagnitudes()[i], trace.getTimestamps()[i]));
+            if (expected != DetectionEngine.NO_DETECTION) {
+                detections = detections + 1;
+                assertEquals(expected, indexed.getTopMatch(0));
+                assertEquals(correlation.getLastCorrelation(), indexed.getTopMatchScore(0), 1e-9);
+            }
+        }
+        assertTrue(detections > 0);
+        assertEquals(0, correlation.getTopMatchCount());
+    }
+}
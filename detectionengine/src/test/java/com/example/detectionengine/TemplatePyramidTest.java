@@ -0,0 +1,108 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TemplatePyramidTest {
+
+    private static double[][] templates(DetectorConfig config) {
+        double[][] templates = new double[config.getTemplateCount()][];
+        for (int t = 0; t < templates.length; t++) {
+            templates[t] = config.getTemplate(t);
+        }
+        return templates;
+    }
+
+    //the template played back at another tempo, repeated
+    private static double[] stretched(double[] template, int n, double scale, int length) {
+        int period = (int) Math.round(n * scale);
+        double[] signal = new double[length];
+        for (int i = 0; i < length; i++) {
+            signal[i] = TemplatePyramid.interpolate(template, 0, n, i % period, period);
+        }
+        return signal;
+    }
+
+    @Test
+    public void scalesShareTheStatisticsOfTheLatestPoints() {
+        int[] lengths = {5, 9, 14};
+        WindowStatistics stats = new WindowStatistics(20, lengths);
+        double[] window = new double[20];
+        Random random = new Random(21);
+        for (int k = 0; k < 5000; k++) {
+            double value = k == 1000 ? Double.POSITIVE_INFINITY : random.nextGaussian() * 3 + 1;
+            stats.add(value);
+            System.arraycopy(window, 1, window, 0, window.length - 1);
+            window[window.length - 1] = value;
+            if (k % 300 == 299) {
+                stats.clear();
+                java.util.Arrays.fill(window, 0.0);
+            }
+            for (int m : lengths) {
+                double sum = 0, squareSum = 0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+                for (int i = window.length - m; i < window.length; i++) {
+                    sum       = sum + window[i];
+                    squareSum = squareSum + window[i] * window[i];
+                    min       = Math.min(min, window[i]);
+                    max       = Math.max(max, window[i]);
+                }
+                assertEquals(sum, stats.getSum(m), 1e-9);
+                assertEquals(squareSum, stats.getSquareSum(m), 1e-8);
+                assertEquals(max - min, stats.getRange(m), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void unitScaleScoresLikeTheTemplateBank() {
+        double[][] templates = templates(DetectorConfig.gesture());
+        TemplatePyramid pyramid = new TemplatePyramid(templates, 35, new double[]{1.0});
+        TemplateBank bank = new TemplateBank(templates, 35);
+        WindowStatistics stats = pyramid.newWindow();
+        double[] pyramidScores = new double[3];
+        double[] bankScores = new double[3];
+        Random random = new Random(4);
+        for (int k = 0; k < 2000; k++) {
+            stats.add(random.nextGaussian());
+            pyramid.score(stats, pyramidScores);
+            bank.score(stats, bankScores);
+            assertArrayEquals(bankScores, pyramidScores, 0.0);
+        }
+    }
+
+    @Test
+    public void bestScaleOfEachTemplateIsReported() {
+        double[][] templates = templates(DetectorConfig.gesture());
+        double[] scales = {0.7, 0.85, 1.0, 1.2, 1.4};
+        TemplatePyramid pyramid = new TemplatePyramid(templates, 35, scales);
+        assertArrayEquals(new int[]{25, 30, 35, 42, 49}, pyramid.getWindowLengths());
+
+        WindowStatistics stats = pyramid.newWindow();
+        double[] slow = stretched(templates[1], 35, 1.2, 3 * 42);
+        double[] scores = new double[3];
+        for (double value : slow) {
+            stats.add(value);
+        }
+        pyramid.score(stats, scores);
+        assertEquals(42, pyramid.getWindowPoints(1));
+        assertEquals(1.0, scores[1], 1e-3);
+        assertTrue(scores[1] > scores[0] && scores[1] > scores[2]);
+    }
+
+    @Test
+    public void fastStepsAreDetectedAtTheirScale() {
+        DetectorConfig fixed = DetectorConfig.step();
+        DetectorConfig multiScale = DetectorConfig.step().setTimeScales(0.7, 0.85, 1.0, 1.2, 1.4);
+        double[] steps = stretched(fixed.getTemplate(0), 14, 0.7, 6 * 10);
+        DetectionEngine fixedEngine = new DetectionEngine(fixed);
+        DetectionEngine engine = new DetectionEngine(multiScale);
+        fixedEngine.setDetectorThreshold(0.01);
+        engine.setDetectorThreshold(0.01);
+        assertEquals(0, DetectionEngineTest.feedTemplateShape(fixedEngine, steps, 20.0, 0L));
+        assertTrue(DetectionEngineTest.feedTemplateShape(engine, steps, 20.0, 0L) >= 5);
+        assertEquals(10.0 / 14, engine.getLastDetectedScale(), 1e-12);
+    }
+}
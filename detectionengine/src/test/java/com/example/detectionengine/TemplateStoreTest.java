@@ -0,0 +1,201 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TemplateStoreTest {
+
+    private static final long MAX_GAP_NANOS = 2_000_000_000L;
+
+    private static RecordedTrace stepWalk() throws IOException {
+        try (InputStream in = TemplateStoreTest.class.getResourceAsStream("/golden/step_walk.csv")) {
+            return RecordedTrace.readCsv(in);
+        }
+    }
+
+    private static File storeFile() throws IOException {
+        File file = File.createTempFile("state", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    //replays samples from to to, adapting on the calling thread after every sample
+    private static List<Integer> detections(TemplateAdapter adapter, DetectionEngine engine, RecordedTrace trace,
+                                            int from, int to) {
+        List<Integer> detections = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            if (engine.processMagnitude(trace.getMagnitudes()[i], trace.getTimestamps()[i]) != DetectionEngine.NO_DETECTION) {
+                detections.add(i);
+            }
+            adapter.adaptPending();
+        }
+        return detections;
+    }
+
+    private static DetectionEngine stepEngine(TemplateAdapter adapter) {
+        DetectionEngine engine = new DetectionEngine(adapter);
+        engine.setDetectorThreshold(0.05);
+        return engine;
+    }
+
+    @Test
+    public void emptyStoreLoadsNothing() throws IOException {
+        DetectionEngine engine = new DetectionEngine(DetectorConfig.step());
+        TemplateStore store = new TemplateStore(storeFile(), engine.newState());
+        assertNull(store.load());
+        store.close();
+    }
+
+    @Test
+    public void reopenedStoreLoadsTheLastSavedState() throws IOException {
+        RecordedTrace trace = stepWalk();
+        TemplateAdapter adapter = new TemplateAdapter(DetectorConfig.step());
+        DetectionEngine engine = stepEngine(adapter);
+        File file = storeFile();
+        TemplateStore store = new TemplateStore(file, engine.newState());
+        detections(adapter, engine, trace, 0, trace.size() / 2);
+        DetectorState first = store.obtain();
+        engine.saveState(first);
+        store.save(first);
+        detections(adapter, engine, trace, trace.size() / 2, trace.size());
+        DetectorState last = store.obtain();
+        engine.saveState(last);
+        store.save(last);
+        store.close();
+        assertTrue(last.getTemplateVersion() > 0);
+
+        TemplateStore reopened = new TemplateStore(file, engine.newState());
+        DetectorState loaded = reopened.load();
+        reopened.close();
+        assertNotNull(loaded);
+        assertEquals(last.getTemplateVersion(), loaded.getTemplateVersion());
+        assertEquals(0.05, loaded.getDetectorThreshold(), 0.0);
+        assertEquals(trace.getTimestamps()[trace.size() - 1], loaded.getTimestampNanos());
+        assertTrue(loaded.isWarm());
+        for (int t = 0; t < engine.getConfig().getTemplateCount(); t++) {
+            assertArrayEquals(engine.getTemplate(t), loaded.getTemplate(t), 0.0);
+        }
+    }
+
+    @Test
+    public void warmStartContinuesLikeAnUninterruptedEngine() throws IOException {
+        RecordedTrace trace = stepWalk();
+        int split = trace.size() / 2;
+        TemplateAdapter uninterruptedAdapter = new TemplateAdapter(DetectorConfig.step());
+        DetectionEngine uninterrupted = stepEngine(uninterruptedAdapter);
+        List<Integer> expected = detections(uninterruptedAdapter, uninterrupted, trace, 0, trace.size());
+
+        TemplateAdapter beforeAdapter = new TemplateAdapter(DetectorConfig.step());
+        DetectionEngine before = stepEngine(beforeAdapter);
+        List<Integer> actual = detections(beforeAdapter, before, trace, 0, split);
+        File file = storeFile();
+        TemplateStore store = new TemplateStore(file, before.newState());
+        DetectorState saved = store.obtain();
+        before.saveState(saved);
+        store.save(saved);
+        store.close();
+
+        TemplateAdapter afterAdapter = new TemplateAdapter(DetectorConfig.step());
+        DetectionEngine after = stepEngine(afterAdapter);
+        TemplateStore reopened = new TemplateStore(file, after.newState());
+        assertTrue(after.restoreState(reopened.load(), MAX_GAP_NANOS));
+        reopened.close();
+        actual.addAll(detections(afterAdapter, after, trace, split, trace.size()));
+        assertEquals(expected, actual);
+        for (int t = 0; t < after.getConfig().getTemplateCount(); t++) {
+            assertArrayEquals(uninterrupted.getTemplate(t), after.getTemplate(t), 0.0);
+        }
+    }
+
+    @Test
+    public void stateAfterALongPauseRestoresOnlyTheTemplates() throws IOException {
+        RecordedTrace trace = stepWalk();
+        int split = trace.size() / 2;
+        TemplateAdapter beforeAdapter = new TemplateAdapter(DetectorConfig.step());
+        DetectionEngine before = stepEngine(beforeAdapter);
+        detections(beforeAdapter, before, trace, 0, split);
+        DetectorState saved = before.newState();
+        before.saveState(saved);
+
+        TemplateAdapter afterAdapter = new TemplateAdapter(DetectorConfig.step());
+        DetectionEngine after = stepEngine(afterAdapter);
+        after.restoreState(saved, MAX_GAP_NANOS);
+        TemplateAdapter coldAdapter = new TemplateAdapter(DetectorConfig.step());
+        DetectionEngine cold = stepEngine(coldAdapter);
+        cold.restoreState(saved, 0);
+        long pause = 10 * MAX_GAP_NANOS;
+        for (int i = split; i < trace.size(); i++) {
+            long timestamp = trace.getTimestamps()[i] + pause;
+            assertEquals(cold.processMagnitude(trace.getMagnitudes()[i], timestamp),
+                    after.processMagnitude(trace.getMagnitudes()[i], timestamp));
+            afterAdapter.adaptPending();
+            coldAdapter.adaptPending();
+        }
+    }
+
+    @Test
+    public void corruptedSlotFallsBackToThePreviousSave() throws IOException {
+        RecordedTrace trace = stepWalk();
+        TemplateAdapter adapter = new TemplateAdapter(DetectorConfig.step());
+        DetectionEngine engine = stepEngine(adapter);
+        File file = storeFile();
+        TemplateStore store = new TemplateStore(file, engine.newState());
+        detections(adapter, engine, trace, 0, trace.size() / 2);
+        DetectorState first = store.obtain();
+        engine.saveState(first);
+        long firstVersion = first.getTemplateVersion();
+        store.save(first);
+        detections(adapter, engine, trace, trace.size() / 2, trace.size());
+        DetectorState second = store.obtain();
+        engine.saveState(second);
+        store.save(second);
+        store.close();
+        assertTrue(second.getTemplateVersion() > firstVersion);
+
+        //the second save went to slot 1, break its last payload byte as a cut off write would
+        int slotBytes = TemplateStore.SLOT_HEADER_BYTES + TemplateStore.payloadBytes(engine.newState());
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            long last = TemplateStore.HEADER_BYTES + 2L * slotBytes - 1;
+            raw.seek(last);
+            int value = raw.read();
+            raw.seek(last);
+            raw.write(value ^ 0xff);
+        }
+        TemplateStore reopened = new TemplateStore(file, engine.newState());
+        DetectorState loaded = reopened.load();
+        reopened.close();
+        assertNotNull(loaded);
+        assertEquals(firstVersion, loaded.getTemplateVersion());
+    }
+
+    @Test
+    public void storeOfAnotherDetectorStartsEmpty() throws IOException {
+        DetectionEngine step = new DetectionEngine(DetectorConfig.step());
+        File file = storeFile();
+        TemplateStore store = new TemplateStore(file, step.newState());
+        DetectorState state = store.obtain();
+        step.saveState(state);
+        store.save(state);
+        store.close();
+
+        DetectionEngine gesture = new DetectionEngine(DetectorConfig.gesture());
+        TemplateStore other = new TemplateStore(file, gesture.newState());
+        assertNull(other.load());
+        other.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTheStateOfAnotherDetector() {
+        DetectionEngine step = new DetectionEngine(DetectorConfig.step());
+        DetectionEngine gesture = new DetectionEngine(DetectorConfig.gesture());
+        gesture.saveState(step.newState());
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.detectionengine;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+public class TraceRecorderTest {
+
+    private static RecordedTrace stepWalk() throws IOException {
+        try (InputStream in = TraceRecorderTest.class.getResourceAsStream("/golden/step_walk.csv")) {
+            return RecordedTrace.readCsv(in);
+        }
+    }
+
+    @Test
+    public void keepsTheLatestSamplesOldestFirst() throws IOException {
+        TraceRecorder recorder = new TraceRecorder(4);
+        for (int i = 0; i < 10; i++) {
+            recorder.record(i, 0f, 0, 0, 0, i / 10.0, 0, DetectionEngine.NO_DETECTION);
+        }
+        assertEquals(4, recorder.size());
+        assertEquals(10, recorder.getRecorded());
+        for (int k = 0; k < 4; k++) {
+            assertEquals(6 + k, recorder.getTimestamp(k));
+        }
+        StringBuilder dump = new StringBuilder();
+        recorder.dump(dump);
+        String[] lines = dump.toString().split("\n");
+        assertEquals(5, lines.length);
+        assertTrue(lines[0].startsWith("timestamp,"));
+        assertTrue(lines[1].startsWith("6,0.0,"));
+        assertTrue(lines[4].endsWith(",0.9,0,-1"));
+    }
+
+    @Test
+    public void engineRecordsEverySampleAndItsDecision() throws IOException {
+        RecordedTrace trace = stepWalk();
+        TraceRecorder recorder = new TraceRecorder(trace.size());
+        DetectionEngine engine = new DetectionEngine(DetectorConfig.step());
+        engine.setDetectorThreshold(0.05);
+        engine.setTraceRecorder(recorder);
+        int detections = 0;
+        for (int i = 0; i < trace.size(); i++) {
+            int detected = engine.processMagnitude(trace.getMagnitudes()[i], trace.getTimestamps()[i]);
+            assertEquals(detected, recorder.getDetection(i));
+            assertEquals(trace.getTimestamps()[i], recorder.getTimestamp(i));
+            assertEquals(engine.getLastCorrelation(), recorder.getScore(i), 0.0);
+            if (detected != DetectionEngine.NO_DETECTION) {
+                detections = detections + 1;
+            }
+        }
+        assertTrue(detections > 0);
+        assertEquals(trace.size(), recorder.size());
+    }
+
+    @Test
+    public void multiScaleEngineRecordsTheMatchedWindow() throws IOException {
+        RecordedTrace trace = stepWalk();
+        double[][] scales = {{0.8, 1.2}, {0.7, 0.85}};
+        for (double[] timeScales : scales) {
+            TraceRecorder recorder = new TraceRecorder(trace.size());
+            DetectionEngine engine = new DetectionEngine(DetectorConfig.step().setTimeScales(timeScales));
+            engine.setDetectorThreshold(0.05);
+            engine.setTraceRecorder(recorder);
+            for (int i = 0; i < trace.size(); i++) {
+                int detected = engine.processMagnitude(trace.getMagnitudes()[i], trace.getTimestamps()[i]);
+                assertEquals(detected, recorder.getDetection(i));
+                assertFalse(Double.isNaN(recorder.getRange(i)));
+            }
+            assertEquals(trace.size(), recorder.size());
+        }
+    }
+
+    @Test
+    public void disabledRecorderRecordsNothing() throws IOException {
+        RecordedTrace trace = stepWalk();
+        TraceRecorder recorder = new TraceRecorder(16);
+        recorder.setEnabled(false);
+        DetectionEngine engine = new DetectionEngine(DetectorConfig.step());
+        engine.setTraceRecorder(recorder);
+        for (int i = 0; i < 100; i++) {
+            engine.processMagnitude(trace.getMagnitudes()[i], trace.getTimestamps()[i]);
+        }
+        assertEquals(0, recorder.getRecorded());
+    }
+}
@@ -5,6 +5,22 @@ with moving average filter. Then a template matching is done, with checks that t
 template, have a certain threshold of signal magnitude (to avoid spurious detections from noise).
 Template is updated as signature of given person's steps are identified.
 
+The signal processing itself is done by the shared DetectionEngine (detectionengine module), on a
+dedicated sensor thread. The views are updated from a snapshot at most once per display frame.
+The accelerometer is registered with a maximum report latency, so the sensor hardware can collect
+samples in its FIFO and deliver them in batches, which are processed with engine.processBatch().
+Detected windows are added to the templates on a separate adaptation thread (TemplateAdapter).
+While the device lies still, the accelerometer is sampled at a low rate (SamplingRateController)
+and the detector is paused, it resumes at the normal rate as soon as the device moves.
+The time of every pipeline stage and the delay from sensor event to decision are recorded in
+PipelineMetrics, whose report is logged when detection is stopped. The state of the latest
+samples (scores, window statistics, decisions) is kept in a TraceRecorder and written to
+trace_step.csv when detection is stopped, instead of logging strings for every event.
+The adapted templates, the threshold and the state of the filters and the window are saved in
+state_step.bin (TemplateStore) whenever the templates change, when detection is stopped and when the
+activity is destroyed. They are restored when the activity is created again; if the sensor
+continues within a few seconds (e.g. after a rotation) detection goes on without refilling the window.
+
  */
 
 package com.example.stepdetector;
@@ -17,41 +33,147 @@ import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.View;
 import android.widget.EditText;
 import android.widget.TextView;
 
+import com.example.detectionengine.DetectionEngine;
+import com.example.detectionengine.DetectionSnapshot;
+import com.example.detectionengine.DetectorConfig;
+import com.example.detectionengine.DetectorState;
+import com.example.detectionengine.PipelineMetrics;
+import com.example.detectionengine.SampleLogWriter;
+import com.example.detectionengine.SamplingRateController;
+import com.example.detectionengine.SensorSource;
+import com.example.detectionengine.SignalFrontEnd;
+import com.example.detectionengine.TemplateAdapter;
+import com.example.detectionengine.TemplateStore;
+import com.example.detectionengine.TraceRecorder;
+
 import java.io.File;
 import java.io.FileOutputStream;
-import java.util.ArrayDeque;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.Collections;
 
 public class MainActivity extends AppCompatActivity implements SensorEventListener {
 
     private SensorManager mSensorManager;
     private Sensor mAccelerometer;
     private TextView mXAccelerationTextView;
-    private FileOutputStream fOut;
-    private double detectorThreshold;
-    private int countSensorData;
-    private int latestDecision =0;//variable to keep track of step detection
-    private int countStep = 0;
-    private double templateCorrelationThreshold = 0.7;
-
-    private Double[] templateSignal = { -0.124511,-0.14722985, -0.14286704, -0.06707362,
-            -0.05615815,-0.03482528, -0.00217015,  0.04454678,  0.0686863 ,  0.13771749,
-            0.16672203,  0.18137357,  0.05211326, -0.06255626, -0.12578879,-0.077148};
-
-    //store information about incoming sensor data
-    int numElements       = 3;
-    int templatePoints    = 14;
-    ArrayDeque accDeque   = new ArrayDeque<Double>(numElements);
-    ArrayDeque timeDeque  = new ArrayDeque<Long>(numElements);
-    ArrayDeque speedDeque = new ArrayDeque<Double>(numElements);
-    ArrayDeque speedTemplateDeque = new ArrayDeque<Double>(templatePoints);
-    double currSpeed;
+    private TextView countResults;
+    private TextView stepResult;
+    private SampleLogWriter sampleLog;
+
+    //template matching step detector, only used on the sensor thread
+    //templates are adapted to the detected motions on their own thread
+    private final TemplateAdapter templateAdapter = new TemplateAdapter(DetectorConfig.step());
+    private DetectionEngine stepEngine = new DetectionEngine(templateAdapter);
+
+    //sensor events are delivered to and processed on this thread
+    private HandlerThread sensorThread;
+    private Handler sensorHandler;
+
+    //samples may be held back by the sensor FIFO for this long, steps are counted all day, so a few seconds of delay are fine
+    private static final int MAX_REPORT_LATENCY_US = 5000000;
+    private static final int BATCH_CAPACITY = 256;
+
+    //the sample log hands a buffer to its writer at most once per batch, a buffer holds thousands of batched samples
+    private static final long LOG_FLUSH_LATENCY_NANOS = MAX_REPORT_LATENCY_US * 1000L;
+
+    //sampling periods while walking (the period of SENSOR_DELAY_NORMAL) and while lying still
+    private static final int FAST_PERIOD_US = 200000;
+    private static final int IDLE_PERIOD_US = 1000000;
+
+    //stage times and sensor to decision delay, recorded on the sensor and UI threads
+    private final PipelineMetrics metrics = new PipelineMetrics(FAST_PERIOD_US * 1000L);
+
+    //state of the latest samples for diagnosis, only used on the sensor thread
+    private static final int TRACE_CAPACITY = 2048;
+    private final TraceRecorder traceRecorder = new TraceRecorder(TRACE_CAPACITY);
+    private File traceFile;
+
+    //saved templates and detector state, the template version of the last save
+    private static final long WARM_START_MAX_GAP_NANOS = 2000000000L;
+    private TemplateStore templateStore;
+    private long savedTemplateVersion = 0;
+
+    //the accelerometer listener is registered again whenever the sampling rate changes
+    private final Object registrationLock = new Object();
+    private boolean detecting = false; //guarded by registrationLock
+    private final SensorSource accelerometerSource = new SensorSource() {
+        private int periodUs = FAST_PERIOD_US; //guarded by registrationLock
+
+        @Override
+        public void setSamplingPeriodUs(int periodUs) {
+            synchronized (registrationLock) {
+                if (periodUs == this.periodUs) {
+                    return;
+                }
+                this.periodUs = periodUs;
+                metrics.setExpectedPeriodNanos(periodUs * 1000L);
+                metrics.restart();
+                if (detecting) {
+                    mSensorManager.unregisterListener(MainActivity.this, mAccelerometer);
+                    registerAccelerometer(periodUs);
+                }
+            }
+        }
+
+        @Override
+        public int getSamplingPeriodUs() {
+            synchronized (registrationLock) {
+                return periodUs;
+            }
+        }
+    };
+
+    //idle below an energy of 0.05 (m/s^2)^2 for 3 s, active above 0.5 (m/s^2)^2, only used on the sensor thread
+    private final SamplingRateController rateController = new SamplingRateController(accelerometerSource,
+            FAST_PERIOD_US, IDLE_PERIOD_US, 0.5, 0.05, 3000000000L, 1.0);
+
+    //events of one delivery are collected here and processed together, only used on the sensor thread
+    private final float[] batchXyz = new float[3 * BATCH_CAPACITY];
+    private final long[] batchTimestamps = new long[BATCH_CAPACITY];
+    private final float[] batchMagnitudes = new float[BATCH_CAPACITY];
+    private int batchCount = 0;
+    private boolean batchPosted = false;
+    private final Runnable processBatch = new Runnable() {
+        @Override
+        public void run() {
+            processSensorBatch();
+        }
+    };
+
+    //the UI is updated from a snapshot at most once per display frame
+    private final DetectionSnapshot latestSnapshot = new DetectionSnapshot();
+    private final DetectionSnapshot frameSnapshot  = new DetectionSnapshot();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private int shownDetectionCount = 0;
+    private final Runnable scheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    };
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            latestSnapshot.frameDone();
+            latestSnapshot.copyTo(frameSnapshot);
+            long start = System.nanoTime();
+            updateViews(frameSnapshot);
+            metrics.record(PipelineMetrics.Stage.UI, System.nanoTime() - start);
+        }
+    };
 
 
     @Override
@@ -63,32 +185,52 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         mSensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
         mAccelerometer = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
 
-        //obtain a reference to file
+        //obtain references to the views updated per frame
+        mXAccelerationTextView = findViewById(R.id.accOutput);
+        countResults           = findViewById(R.id.countResults);
+        stepResult             = findViewById(R.id.stepDecision);
+
+        //start the sensor processing thread
+        sensorThread = new HandlerThread("SensorProcessing");
+        sensorThread.start();
+        sensorHandler = new Handler(sensorThread.getLooper());
+        stepEngine.setMetrics(metrics);
+        stepEngine.setTraceRecorder(traceRecorder);
+        templateAdapter.start();
+
+        //obtain a reference to file, samples are logged in binary (see SampleLogCsvExporter)
         File savePath = getExternalFilesDir(null);
         Log.d("Sys Out",savePath.toString());
-        File saveFile = new File(savePath,"data_step.csv");
+        File saveFile = new File(savePath,"data_step.bin");
+        traceFile = new File(savePath,"trace_step.csv");
 
+        //continue with the templates and state saved by the last session
         try {
-            fOut = new FileOutputStream(saveFile);
+            templateStore = new TemplateStore(new File(savePath,"state_step.bin"), stepEngine.newState());
+            final DetectorState saved = templateStore.load();
+            if (saved != null) {
+                EditText et = findViewById(R.id.thresholdInput);
+                et.setText(String.valueOf(saved.getDetectorThreshold()));
+                savedTemplateVersion = saved.getTemplateVersion();
+                sensorHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        stepEngine.restoreState(saved, WARM_START_MAX_GAP_NANOS);
+                    }
+                });
+            }
         }
-        catch (Exception e) {
-            Log.d("Error","File not found");
+        catch (IOException e) {
+            Log.d("Error","Could not open the template store");
         }
 
-        //initialize array to save sensor data
-        for(int i=0; i<numElements; i++){
-            accDeque.add(0.0);
-            timeDeque.add(0L);
-            speedDeque.add(0.0);
+        try {
+            sampleLog = new SampleLogWriter(saveFile, SampleLogWriter.DEFAULT_BUFFER_BYTES,
+                    SampleLogWriter.DEFAULT_BUFFER_COUNT, LOG_FLUSH_LATENCY_NANOS);
         }
-
-        //initialize array to save speed for template matching
-        for(int i=0; i<templatePoints; i++) {
-            speedTemplateDeque.add(0.0);
+        catch (Exception e) {
+            Log.d("Error","File not found");
         }
-
-        //initialize sensor data count
-        countSensorData = 0;
     }
 
     //@Override
@@ -97,9 +239,36 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     }
 
     protected void onDestroy() {
-        //close the output stream for file write
+        mSensorManager.unregisterListener(this);
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+        mainHandler.removeCallbacks(scheduleFrame);
+
+        //let the sensor thread finish the queued events before the file is closed
+        sensorThread.quitSafely();
         try {
-            fOut.close();
+            sensorThread.join();
+            templateAdapter.close();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        //the sensor thread has finished, save the state of the detector for the next session
+        saveState();
+        try {
+            if (templateStore != null) {
+                templateStore.close();
+            }
+        }
+        catch (IOException e) {
+            Log.d("Error","Could not write the template store");
+        }
+
+        //write the remaining samples and close the file
+        try {
+            if (sampleLog != null) {
+                sampleLog.close();
+            }
         }
         catch (Exception e) {
             Log.d("Error","Could not close the file where data was written");
@@ -110,211 +279,177 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     //when start button is clicked
     public void startStepDetection(View view) {
         Log.d("message", "Step Detector started");
-        //start obtaining the accelerometer data
-        mSensorManager.registerListener(this, mAccelerometer,
-                SensorManager.SENSOR_DELAY_NORMAL);
 
         //read the threshold provided by the user
         EditText et         = findViewById(R.id.thresholdInput);
         String thresholdVal = et.getText().toString();
-        detectorThreshold   = Double.parseDouble(thresholdVal);
+        final double detectorThreshold = Double.parseDouble(thresholdVal);
+        sensorHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                stepEngine.setDetectorThreshold(detectorThreshold);
+            }
+        });
+
+        //start obtaining the accelerometer data on the sensor thread, batched by the sensor FIFO
+        synchronized (registrationLock) {
+            detecting = true;
+            registerAccelerometer(accelerometerSource.getSamplingPeriodUs());
+        }
+    }
+
+    //registers for samples every periodUs on the sensor thread, callers hold registrationLock
+    private void registerAccelerometer(int periodUs) {
+        mSensorManager.registerListener(this, mAccelerometer, periodUs, MAX_REPORT_LATENCY_US, sensorHandler);
     }
 
     //when stop button is clicked
     public void stopStepDetection(View view) {
         Log.d("message", "Step Detector stopped");
         //de-register listener
-        mSensorManager.unregisterListener(this,mAccelerometer);
+        synchronized (registrationLock) {
+            detecting = false;
+            mSensorManager.unregisterListener(this,mAccelerometer);
+        }
+
+        //reset the detection session once the queued events are processed
+        sensorHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                saveState();
+                stepEngine.reset();
+                rateController.reset();
+                Log.d("Metrics", metrics.report());
+                metrics.restart();
+                writeTrace();
+                latestSnapshot.clear();
+                if (sampleLog != null) {
+                    sampleLog.flush();
+                }
+            }
+        });
 
         //reset accelerometer and count view
-        mXAccelerationTextView = findViewById(R.id.accOutput);
         float[] eventZero = {0f,0f,0f};
         mXAccelerationTextView.setText(Arrays.toString(eventZero));
-
-        TextView countResults = (TextView)findViewById(R.id.countResults);
-        countStep = 0;
-        countResults.setText(String.valueOf(countStep));
-
-        //reset counter of sensor data
-        countSensorData = 0;
+        countResults.setText(String.valueOf(0));
+        shownDetectionCount = 0;
     }
 
-    //adapted from https://www.geeksforgeeks.org/program-find-correlation-coefficient/
-    double correlationCoefficient(Double X[], Double Y[])
-    {
-        double sum_X = 0, sum_Y = 0, sum_XY = 0;
-        double squareSum_X = 0, squareSum_Y = 0;
-        int n = X.length;
-
-        for (int i = 0; i < n; i++)
-        {
-            // sum of elements of array X.
-            sum_X = sum_X + X[i];
-
-            // sum of elements of array Y.
-            sum_Y = sum_Y + Y[i];
-
-            // sum of X[i] * Y[i].
-            sum_XY = sum_XY + X[i] * Y[i];
-
-            // sum of square of array elements.
-            squareSum_X = squareSum_X + X[i] * X[i];
-            squareSum_Y = squareSum_Y + Y[i] * Y[i];
+    //Function called when sensor values change, runs on the sensor thread
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        Sensor sensor = event.sensor;
+        if (sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
+            //a FIFO batch arrives as a burst of calls in one looper message, so processing is
+            //posted behind it and then runs once for the whole burst
+            int k = 3 * batchCount;
+            batchXyz[k]     = event.values[0];
+            batchXyz[k + 1] = event.values[1];
+            batchXyz[k + 2] = event.values[2];
+            batchTimestamps[batchCount] = event.timestamp;
+            batchCount = batchCount + 1;
+
+            if (batchCount == BATCH_CAPACITY) {
+                processSensorBatch();
+            }
+            else if (!batchPosted) {
+                batchPosted = true;
+                sensorHandler.post(processBatch);
+            }
         }
-
-        // use formula for calculating correlation coefficient.
-        double corr = (double)(n * sum_XY - sum_X * sum_Y)
-                / Math.sqrt((n * squareSum_X - sum_X * sum_X)
-                * (n * squareSum_Y - sum_Y * sum_Y));
-
-        return corr;
     }
 
-    //function to compute correlation
-    public double computeCorrelation( ) {
-        Object[] speedTemplateObj = speedTemplateDeque.toArray();
-        Double[] speedTemplate     = new Double[speedTemplateDeque.size()];
-        for(int i=0;i<speedTemplateDeque.size();i++){
-            speedTemplate[i] = (Double) (speedTemplateObj[i]);
+    //writes the recorded samples of the session to the trace file, runs on the sensor thread
+    private void writeTrace() {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(traceFile), StandardCharsets.UTF_8)) {
+            traceRecorder.dump(writer);
         }
-        Log.d("Debug",Arrays.toString(speedTemplate));
-
-        //compute correlation between speedTemplate and templateSignal
-        double currCorrelation = correlationCoefficient(speedTemplate,
-                                            templateSignal);
-        return currCorrelation;
+        catch (IOException e) {
+            Log.d("Error","Could not write the trace file");
+        }
+        traceRecorder.clear();
     }
 
-    public double rangeSpeed() {
-        Object[] speedTemplateObj = speedTemplateDeque.toArray();
-        Double[] speedTemplate     = new Double[speedTemplateDeque.size()];
-        for(int i=0;i<speedTemplateDeque.size();i++){
-            speedTemplate[i] = (Double) (speedTemplateObj[i]);
+    //queues the templates and the warm state of the detector for the template store, runs on the
+    //sensor thread; if the store is still writing the previous saves it is tried after the next batch
+    private void saveState() {
+        if (templateStore == null) {
+            return;
+        }
+        DetectorState state = templateStore.obtain();
+        if (state != null) {
+            stepEngine.saveState(state);
+            templateStore.save(state);
+            savedTemplateVersion = state.getTemplateVersion();
         }
-        double minSpeed = Collections.min(Arrays.asList(speedTemplate));
-        double maxSpeed = Collections.max(Arrays.asList(speedTemplate));
-        double speedRange = maxSpeed - minSpeed;
-        return speedRange;
     }
 
-    //Function called when sensor values change
-    @Override
-    public void onSensorChanged(SensorEvent event) {
-        Sensor sensor = event.sensor;
-        if (sensor.getType() == Sensor.TYPE_ACCELEROMETER)
-        {
-            if (sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-                countSensorData = countSensorData + 1;
-                float acc_x = event.values[0];
-                float acc_y = event.values[1];
-                float acc_z = event.values[2];
-                float acc_mag = (float)(java.lang.Math.sqrt(acc_x*acc_x + acc_y*acc_y + acc_z*acc_z));
-                float acc_mag_abs = acc_mag - (float)(9.8);
-                long event_time = event.timestamp;
-                String event_time_str = String.valueOf(event_time);
-                //Log.d("acc mag:", Float.toString(acc_mag));
-                mXAccelerationTextView = findViewById(R.id.accOutput);
-                mXAccelerationTextView.setText(Arrays.toString(event.values));
-
-                //logic for step detection
-                if(countSensorData==1){
-                    currSpeed = 0.0;
-                }
-                else {
-                    double pastAcc = (double) accDeque.getLast();
-                    long pastTime = (long) timeDeque.getLast();
-                    double timeFactor = ((event_time - pastTime) / (Math.pow(10, 9)));
-                    currSpeed = (acc_mag_abs - pastAcc) * timeFactor;
-                }
+    //runs the collected samples through the detector, runs on the sensor thread
+    private void processSensorBatch() {
+        batchPosted = false;
+        if (batchCount == 0) {
+            return;
+        }
 
-                //add new data to deques
-                accDeque.add((double)(acc_mag_abs));
-                timeDeque.add(event_time);
-                speedDeque.add(currSpeed);
-
-                //remove the first elements
-                accDeque.removeFirst();
-                timeDeque.removeFirst();
-                speedDeque.removeFirst();
-
-                Object[] speedObj = speedDeque.toArray();
-                double speedSum = 0;
-                for(int i=0;i<numElements;i++){
-                    double speed = (double) speedObj[i];
-                    speedSum = speedSum + speed;
-                }
-                double speedSmooth = speedSum/numElements;
-                //Log.d("Algo","Speed smooth is "+String.valueOf(speedSmooth)+" Threshold is "+String.valueOf(detectorThreshold));
-                int currDecision = 0;
-
-                //add speedSmooth to the deque
-                speedTemplateDeque.add(speedSmooth);
-                speedTemplateDeque.removeFirst();
-
-                double currCorrelation = computeCorrelation();
-                Log.d("Debug","Correlation is "+String.valueOf(currCorrelation));
-                float currentDecision = 0;
-
-                if(currCorrelation > templateCorrelationThreshold){
-                    double currentSpeedRange = rangeSpeed();
-                    if(currentSpeedRange < detectorThreshold) {
-                        currentDecision = 0;
-                    }
-                    else {
-                        currentDecision = 1;
-                        countStep = countStep + 1;
-
-                        //update template signal
-                        Object[] speedTemplateObj = speedTemplateDeque.toArray();
-                        Double[] speedTemplate     = new Double[speedTemplateDeque.size()];
-                        for(int i=0;i<speedTemplateDeque.size();i++){
-                            speedTemplate[i] = (Double) (speedTemplateObj[i]);
-                        }
-                        for (int i=0;i<templatePoints;i++) {
-                            templateSignal[i] = templateSignal[i] + 0.2*speedTemplate[i];
-                        }
-
-                        for(int i=0;i<templatePoints;i++){
-                            speedTemplateDeque.add(0.0);
-                            speedTemplateDeque.removeFirst();
-                        }
-                    }
-                }
-                else {
-                    currentDecision = 0;
-                }
+        //logic for step detection
+        //samples taken while the device lies still, or still at the idle rate after it moved, are only logged
+        for (int i = 0, j = 0; i < batchCount; i++, j += 3) {
+            float accMagAbs = SignalFrontEnd.magnitude(batchXyz[j], batchXyz[j + 1], batchXyz[j + 2]);
+            batchMagnitudes[i] = accMagAbs;
+            int state = rateController.onSample(accMagAbs, batchTimestamps[i]);
+            if (state == SamplingRateController.RESUMED) {
+                stepEngine.resume();
+            }
+            if (state != SamplingRateController.IDLE) {
+                stepEngine.processMagnitude(accMagAbs, batchTimestamps[i]);
+            }
+        }
 
+        metrics.endBatch(batchTimestamps, batchCount, SystemClock.elapsedRealtimeNanos());
 
-                //update the view elements with the step detection results
-                TextView countResults = (TextView)findViewById(R.id.countResults);
-                countResults.setText(String.valueOf(countStep));
+        //keep the adapted templates, written by the store thread
+        if (stepEngine.getTemplateVersion() != savedTemplateVersion) {
+            saveState();
+        }
 
-                String stepDetectionString;
-                if(currentDecision == 1){
-                    stepDetectionString = "Step";
-                }
-                else {
-                    stepDetectionString = "No Step";
-                }
-                TextView stepResult = (TextView)findViewById(R.id.stepDecision);
-                stepResult.setText(stepDetectionString);
-
-                //write to file
-                try {
-                    fOut.write((String.valueOf(acc_mag_abs)+ ','+ event_time_str+'\n').getBytes());
-                    fOut.flush();
-                    //Log.d("Success", "Files written");
-                }
-                catch (Exception e){
-                    e.printStackTrace();
-                    //Log.d("Error","Could not write to file");
-                }
+        //hand the result of the last sample to the UI, at most one update per frame
+        int last = batchCount - 1;
+        latestSnapshot.publish(batchXyz[3 * last], batchXyz[3 * last + 1], batchXyz[3 * last + 2],
+                batchTimestamps[last], stepEngine);
+        if (latestSnapshot.requestFrame()) {
+            mainHandler.post(scheduleFrame);
+        }
 
+        //append to the file log, written in blocks by the log writer thread
+        if (sampleLog != null) {
+            long start = System.nanoTime();
+            for (int i = 0; i < batchCount; i++) {
+                sampleLog.append(batchMagnitudes[i], batchTimestamps[i]);
             }
+            metrics.record(PipelineMetrics.Stage.LOG_IO, System.nanoTime() - start);
+        }
+        batchCount = 0;
+    }
+
+    //update the view elements with the step detection results, runs once per frame
+    private void updateViews(DetectionSnapshot snapshot) {
+        float[] values = {snapshot.getX(), snapshot.getY(), snapshot.getZ()};
+        mXAccelerationTextView.setText(Arrays.toString(values));
+        countResults.setText(String.valueOf(snapshot.getDetectionCount()));
+
+        String stepDetectionString;
+        if(snapshot.getDetectionCount() != shownDetectionCount){
+            stepDetectionString = "Step";
+        }
+        else {
+            stepDetectionString = "No Step";
         }
+        stepResult.setText(stepDetectionString);
+        shownDetectionCount = snapshot.getDetectionCount();
     }
 
     @Override
     public void onAccuracyChanged(Sensor sensor, int accuracy) {}
 
-}
+}
\ No newline at end of file